@@ -0,0 +1,180 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+/**
+ * Builds just enough of the plugin to drive the managers outside a server.
+ * The plugin instance is allocated without running JavaPlugin's constructor,
+ * which refuses to work outside a plugin class loader, and is given a
+ * ConfigManager backed by the bundled config.yml plus overrides.
+ */
+final class BenchmarkPlugin {
+    
+    private BenchmarkPlugin() {
+    }
+    
+    static ChatManagement2 create(Map<String, Object> overrides) {
+        YamlConfiguration config = bundledConfig();
+        
+        // Auto-mute needs storage
+        config.set("auto-mute.enabled", false);
+        return create(config, overrides, Clock.systemUTC());
+    }
+    
+    /**
+     * Create a plugin from the given config with logging turned off, reading
+     * the time from the given clock
+     */
+    static ChatManagement2 create(YamlConfiguration config, Map<String, Object> overrides, Clock clock) {
+        // Logging would dominate the measurements
+        config.set("settings.debug", false);
+        config.set("settings.verbose", false);
+        for (Map.Entry<String, Object> entry : overrides.entrySet()) {
+            config.set(entry.getKey(), entry.getValue());
+        }
+        
+        try {
+            Field unsafeField = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            Object unsafe = unsafeField.get(null);
+            ChatManagement2 plugin = (ChatManagement2) unsafe.getClass()
+                    .getMethod("allocateInstance", Class.class)
+                    .invoke(unsafe, ChatManagement2.class);
+            
+            setField(plugin, "configManager", new ConfigManager(plugin, config));
+            setField(plugin, "clock", clock);
+            return plugin;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create benchmark plugin", e);
+        }
+    }
+    
+    /**
+     * Give the plugin the managers that public chat goes through. Nothing is
+     * started, so there is no storage, no audit log and no scheduled task, and
+     * the plugin reports itself as ready.
+     */
+    static void wireChatPipeline(ChatManagement2 plugin) {
+        installServer();
+        try {
+            setField(plugin, "statsManager", new StatsManager());
+            setField(plugin, "auditManager", new AuditManager(plugin));
+            setField(plugin, "muteManager", new MuteManager(plugin));
+            setField(plugin, "spamDetectionManager", new SpamDetectionManager(plugin));
+            setField(plugin, "spamScoreManager", new SpamScoreManager(plugin));
+            BlockedWordsManager blockedWords = new BlockedWordsManager(plugin);
+            setField(plugin, "blockedWordsManager", blockedWords);
+            RuleManager rules = new RuleManager(plugin);
+            setField(plugin, "ruleManager", rules);
+            AdvertisingManager advertising = new AdvertisingManager(plugin);
+            setField(plugin, "advertisingManager", advertising);
+            ShapeFilterManager shapeFilters = new ShapeFilterManager(plugin);
+            setField(plugin, "shapeFilterManager", shapeFilters);
+            setField(plugin, "readyLatch", new CountDownLatch(0));
+            blockedWords.reload();
+            rules.reload();
+            advertising.reload();
+            shapeFilters.reload();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not wire chat pipeline", e);
+        }
+    }
+    
+    static YamlConfiguration bundledConfig() {
+        try (InputStream in = BenchmarkPlugin.class.getResourceAsStream("/config.yml")) {
+            if (in == null) {
+                return new YamlConfiguration();
+            }
+            return YamlConfiguration.loadConfiguration(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not read config.yml", e);
+        }
+    }
+    
+    /**
+     * A player with no permissions that only knows its name and UUID
+     */
+    static Player player(String name) {
+        return player(UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)), name);
+    }
+    
+    /**
+     * A player with no permissions that only knows its name and UUID.
+     * Messages and kicks sent to it are dropped.
+     */
+    static Player player(UUID uuid, String name) {
+        return ChatBenchManager.fakePlayer(uuid, name, null);
+    }
+    
+    /**
+     * Install a server with nobody online, so lookups like Bukkit.getPlayer
+     * work. Only done once per JVM, as Bukkit refuses a second server.
+     */
+    private static synchronized void installServer() {
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+        
+        Logger logger = Logger.getLogger("ChatManagement2-Benchmark");
+        Server server = (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[]{Server.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getLogger":
+                            return logger;
+                        case "getName":
+                        case "getVersion":
+                        case "getBukkitVersion":
+                            return "benchmark";
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchmarkServer";
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+        Bukkit.setServer(server);
+    }
+    
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        if (type == float.class) {
+            return 0.0f;
+        }
+        return null;
+    }
+    
+    private static void setField(ChatManagement2 plugin, String name, Object value) throws ReflectiveOperationException {
+        Field field = ChatManagement2.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(plugin, value);
+    }
+}
@@ -0,0 +1,76 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BlockedWordsManager.containsBlockedWord across wordlist sizes, message
+ * lengths and clean vs. obfuscated text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockedWordsBenchmark {
+    
+    // Power of two so the message index can wrap with a mask
+    private static final int MESSAGES = 256;
+    
+    @Param({"10", "100", "1000", "10000", "50000"})
+    public int wordlistSize;
+    
+    @Param({"5", "32", "128", "256"})
+    public int messageLength;
+    
+    @Param({"clean", "obfuscated"})
+    public String text;
+    
+    @Param({"false", "true"})
+    public boolean partialMatches;
+    
+    private BlockedWordsManager manager;
+    private String[] messages;
+    private int next;
+    
+    @Setup
+    public void setup() {
+        List<String> words = ChatCorpus.blockedWords(wordlistSize, 42);
+        ChatManagement2 plugin = BenchmarkPlugin.create(Map.of(
+                "blocked-words.enabled", true,
+                "blocked-words.word-list", words,
+                "blocked-words.block-partial-matches", partialMatches));
+        
+        manager = new BlockedWordsManager(plugin);
+        manager.reload();
+        
+        Random random = new Random(7);
+        messages = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = text.equals("clean")
+                    ? ChatCorpus.cleanMessage(random, messageLength)
+                    : ChatCorpus.obfuscatedMessage(random, words.get(random.nextInt(words.size())), messageLength);
+        }
+    }
+    
+    @Benchmark
+    public boolean containsBlockedWord() {
+        return manager.containsBlockedWord(messages[next++ & (MESSAGES - 1)]);
+    }
+}
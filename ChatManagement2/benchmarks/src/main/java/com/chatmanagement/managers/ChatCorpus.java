@@ -0,0 +1,108 @@
+package com.chatmanagement.managers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Deterministic synthetic chat text for the benchmarks.
+ * Blocked words are built from syllables that ordinary chat rarely
+ * contains, so clean messages stay clean as the wordlist grows.
+ */
+final class ChatCorpus {
+    
+    private static final String[] CHAT_WORDS = {
+            "hey", "anyone", "want", "to", "trade", "diamonds", "for", "iron", "lol", "where", "is", "spawn",
+            "how", "do", "i", "get", "back", "home", "the", "server", "lagging", "again", "gg", "nice",
+            "build", "can", "someone", "help", "me", "with", "this", "farm", "thanks", "brb", "dinner",
+            "who", "wants", "team", "up", "nether", "fortress", "found", "village", "near", "base", "selling",
+            "enchanted", "books", "cheap", "pm", "me", "what", "time", "event", "start", "today", "ok", "sure"
+    };
+    private static final String LEET_FROM = "aeiost";
+    private static final String LEET_TO = "@310$7";
+    private static final String[] SYLLABLES = {
+            "zq", "xv", "kro", "vex", "qua", "zyl", "thr", "grub", "vok", "jiz", "wuk", "xor", "plo", "fen", "dru"
+    };
+    
+    private ChatCorpus() {
+    }
+    
+    /**
+     * A wordlist of the given size, without duplicates
+     */
+    static List<String> blockedWords(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> words = new ArrayList<>(count);
+        Set<String> seen = new HashSet<>();
+        while (words.size() < count) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 2 + random.nextInt(3);
+            for (int i = 0; i < syllables; i++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            if (seen.add(word.toString())) {
+                words.add(word.toString());
+            }
+        }
+        return words;
+    }
+    
+    /**
+     * Ordinary chat of roughly the given length
+     */
+    static String cleanMessage(Random random, int length) {
+        StringBuilder message = new StringBuilder(length + 16);
+        while (message.length() < length) {
+            if (message.length() > 0) {
+                message.append(' ');
+            }
+            message.append(CHAT_WORDS[random.nextInt(CHAT_WORDS.length)]);
+        }
+        message.setLength(length);
+        return message.toString();
+    }
+    
+    /**
+     * Ordinary chat with a leetspeak, separator-padded copy of the word in it
+     */
+    static String obfuscatedMessage(Random random, String word, int length) {
+        String hidden = obfuscate(random, word);
+        if (hidden.length() >= length) {
+            return hidden;
+        }
+        
+        String filler = cleanMessage(random, length - hidden.length());
+        int split = random.nextInt(filler.length() + 1);
+        return filler.substring(0, split) + " " + hidden + " " + filler.substring(split);
+    }
+    
+    static String obfuscate(Random random, String word) {
+        StringBuilder out = new StringBuilder(word.length() * 2);
+        for (int i = 0; i < word.length(); i++) {
+            if (i > 0 && random.nextInt(3) == 0) {
+                out.append(random.nextBoolean() ? '.' : ' ');
+            }
+            char c = word.charAt(i);
+            int leet = LEET_FROM.indexOf(c);
+            if (leet >= 0 && random.nextBoolean()) {
+                c = LEET_TO.charAt(leet);
+            }
+            out.append(c);
+        }
+        return out.toString();
+    }
+    
+    /**
+     * A copy of the message with about a tenth of its characters changed
+     */
+    static String nearDuplicate(Random random, String message) {
+        char[] chars = message.toCharArray();
+        int edits = Math.max(1, chars.length / 10);
+        for (int i = 0; i < edits; i++) {
+            chars[random.nextInt(chars.length)] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,373 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.listeners.ChatListener;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Replays a recorded chat log through the real moderation checks as fast as
+ * they will go, with the clock following the log's timestamps. Used to try
+ * out similarity thresholds, spam limits and word lists against real traffic
+ * before changing them on a server.
+ * <p>
+ * The log is tab separated, one message per line: timestamp (epoch millis or
+ * ISO-8601), player UUID, message. Lines starting with # are skipped.
+ * Logs carry no permissions, so every player is checked as a normal player.
+ */
+public final class ChatReplay {
+    
+    private static final String USAGE = "Usage: ChatReplay <chat.tsv> [--config file.yml] [--set key=value]..."
+            + " [--baseline decisions.tsv] [--out decisions.tsv] [--warmup]";
+    private static final int MAX_EXAMPLES = 20;
+    
+    private ChatReplay() {
+    }
+    
+    /**
+     * One recorded chat message
+     */
+    private static final class Entry {
+        final long time;
+        final UUID uuid;
+        final String message;
+        
+        Entry(long time, UUID uuid, String message) {
+            this.time = time;
+            this.uuid = uuid;
+            this.message = message;
+        }
+    }
+    
+    /**
+     * What happened to each message, plus the stats collected on the way
+     */
+    private static final class Result {
+        final String[] decisions;
+        final StatsManager stats;
+        final long wallNanos;
+        
+        Result(String[] decisions, StatsManager stats, long wallNanos) {
+            this.decisions = decisions;
+            this.stats = stats;
+            this.wallNanos = wallNanos;
+        }
+    }
+    
+    public static void main(String[] args) throws IOException {
+        Path log = null;
+        Path configFile = null;
+        Path baseline = null;
+        Path out = null;
+        boolean warmup = false;
+        Map<String, Object> overrides = new LinkedHashMap<>();
+        
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--config":
+                    configFile = Paths.get(value(args, ++i));
+                    break;
+                case "--set":
+                    String setting = value(args, ++i);
+                    int eq = setting.indexOf('=');
+                    if (eq <= 0) {
+                        fail("Expected key=value after --set, got " + setting);
+                    }
+                    overrides.put(setting.substring(0, eq), parseValue(setting.substring(eq + 1)));
+                    break;
+                case "--baseline":
+                    baseline = Paths.get(value(args, ++i));
+                    break;
+                case "--out":
+                    out = Paths.get(value(args, ++i));
+                    break;
+                case "--warmup":
+                    warmup = true;
+                    break;
+                default:
+                    if (args[i].startsWith("--") || log != null) {
+                        fail("Unknown argument " + args[i]);
+                    }
+                    log = Paths.get(args[i]);
+            }
+        }
+        if (log == null) {
+            fail("No chat log given");
+        }
+        
+        List<Entry> entries = readLog(log);
+        if (entries.isEmpty()) {
+            fail("No messages in " + log);
+        }
+        
+        // A full untimed pass lets the JIT settle before the measured one
+        if (warmup) {
+            replay(entries, loadConfig(configFile), overrides);
+        }
+        Result result = replay(entries, loadConfig(configFile), overrides);
+        
+        report(entries, result);
+        
+        if (out != null) {
+            writeDecisions(out, result.decisions);
+            System.out.println("Decisions written to " + out);
+        }
+        if (baseline != null) {
+            diff(entries, readDecisions(baseline), result.decisions);
+        }
+    }
+    
+    /**
+     * Push every entry through a fresh pipeline and record its decision
+     */
+    private static Result replay(List<Entry> entries, YamlConfiguration config, Map<String, Object> overrides) {
+        SimulatedClock clock = new SimulatedClock(entries.get(0).time);
+        ChatManagement2 plugin = BenchmarkPlugin.create(config, overrides, clock);
+        BenchmarkPlugin.wireChatPipeline(plugin);
+        
+        ChatListener listener = new ChatListener(plugin);
+        StatsManager stats = plugin.getStatsManager();
+        MuteManager muteManager = plugin.getMuteManager();
+        SpamDetectionManager spamDetection = plugin.getSpamDetectionManager();
+        
+        Map<UUID, Player> players = new HashMap<>();
+        Set<UUID> kicked = new HashSet<>();
+        String[] decisions = new String[entries.size()];
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            // Never let the clock run backwards on an out-of-order line
+            clock.set(Math.max(clock.millis(), entry.time));
+            
+            UUID uuid = entry.uuid;
+            Player player = players.computeIfAbsent(uuid,
+                    id -> ChatBenchManager.fakePlayer(id, id.toString().substring(0, 8), () -> kicked.add(id)));
+            
+            // A kicked player's next message means they have rejoined
+            if (kicked.remove(uuid)) {
+                muteManager.handleReconnect(uuid);
+            }
+            
+            long mutesBefore = stats.get(StatsManager.Counter.MUTES);
+            long messageStart = System.nanoTime();
+            stats.increment(StatsManager.Counter.CHAT_MESSAGES);
+            ChatListener.Verdict verdict = listener.moderate(player, entry.message);
+            stats.recordSince(StatsManager.Stage.CHAT_TOTAL, messageStart);
+            boolean muted = stats.get(StatsManager.Counter.MUTES) > mutesBefore;
+            
+            // Same cleanup as the quit event that follows a kick, whichever check kicked them
+            if (kicked.contains(uuid)) {
+                muteManager.handleDisconnect(uuid);
+                spamDetection.clearPlayerData(uuid);
+                plugin.getSpamScoreManager().reset(uuid);
+            }
+            
+            decisions[i] = muted ? verdict.getLabel() + "+mute" : verdict.getLabel();
+        }
+        long wallNanos = System.nanoTime() - start;
+        
+        return new Result(decisions, stats, wallNanos);
+    }
+    
+    private static void report(List<Entry> entries, Result result) {
+        Set<UUID> players = new HashSet<>();
+        for (Entry entry : entries) {
+            players.add(entry.uuid);
+        }
+        long spanMillis = entries.get(entries.size() - 1).time - entries.get(0).time;
+        double seconds = result.wallNanos / 1_000_000_000.0;
+        
+        System.out.println("Messages:       " + entries.size() + " from " + players.size() + " players");
+        System.out.println("Simulated span: " + formatSpan(spanMillis));
+        System.out.printf("Wall time:      %.3f s (%,.0f msg/s)%n", seconds, entries.size() / seconds);
+        
+        Map<String, Integer> counts = new TreeMap<>();
+        for (String decision : result.decisions) {
+            counts.merge(decision, 1, Integer::sum);
+        }
+        System.out.println();
+        System.out.println("Decisions:");
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            System.out.printf("  %-20s %8d%n", count.getKey(), count.getValue());
+        }
+        System.out.println("  Mutes:               " + result.stats.get(StatsManager.Counter.MUTES));
+        
+        System.out.println();
+        System.out.printf("  %-16s %10s %10s %10s %10s%n", "Stage", "count", "p50", "p99", "max");
+        for (StatsManager.Stage stage : StatsManager.Stage.values()) {
+            LatencyHistogram histogram = result.stats.getHistogram(stage);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            System.out.printf("  %-16s %10d %10s %10s %10s%n", stage.getLabel(), histogram.getCount(),
+                    formatNanos(histogram.getPercentile(50)), formatNanos(histogram.getPercentile(99)),
+                    formatNanos(histogram.getPercentile(100)));
+        }
+    }
+    
+    /**
+     * Count how decisions moved between the baseline and this run, with the
+     * first few changed messages as examples
+     */
+    private static void diff(List<Entry> entries, Map<Integer, String> baseline, String[] decisions) {
+        Map<String, Integer> transitions = new TreeMap<>();
+        List<String> examples = new ArrayList<>();
+        int missing = 0;
+        
+        for (int i = 0; i < decisions.length; i++) {
+            String before = baseline.get(i);
+            if (before == null) {
+                missing++;
+                continue;
+            }
+            if (before.equals(decisions[i])) {
+                continue;
+            }
+            
+            transitions.merge(before + " -> " + decisions[i], 1, Integer::sum);
+            if (examples.size() < MAX_EXAMPLES) {
+                examples.add("  #" + i + " " + before + " -> " + decisions[i] + ": " + entries.get(i).message);
+            }
+        }
+        
+        System.out.println();
+        if (transitions.isEmpty()) {
+            System.out.println("No changes against the baseline");
+        } else {
+            System.out.println("Changes against the baseline:");
+            for (Map.Entry<String, Integer> transition : transitions.entrySet()) {
+                System.out.printf("  %-40s %8d%n", transition.getKey(), transition.getValue());
+            }
+            System.out.println();
+            System.out.println("Examples:");
+            examples.forEach(System.out::println);
+        }
+        if (missing > 0) {
+            System.out.println(missing + " messages were not in the baseline");
+        }
+    }
+    
+    private static List<Entry> readLog(Path log) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            
+            String[] parts = line.split("\t", 3);
+            if (parts.length < 3) {
+                fail(log + ":" + lineNumber + ": expected timestamp, UUID and message separated by tabs");
+            }
+            try {
+                entries.add(new Entry(parseTime(parts[0].trim()), UUID.fromString(parts[1].trim()), parts[2]));
+            } catch (RuntimeException e) {
+                fail(log + ":" + lineNumber + ": " + e.getMessage());
+            }
+        }
+        return entries;
+    }
+    
+    private static Map<Integer, String> readDecisions(Path file) throws IOException {
+        Map<Integer, String> decisions = new HashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] parts = line.split("\t", 3);
+            if (parts.length >= 2) {
+                decisions.put(Integer.parseInt(parts[0]), parts[1]);
+            }
+        }
+        return decisions;
+    }
+    
+    private static void writeDecisions(Path file, String[] decisions) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < decisions.length; i++) {
+                writer.write(i + "\t" + decisions[i]);
+                writer.newLine();
+            }
+        }
+    }
+    
+    private static YamlConfiguration loadConfig(Path configFile) {
+        if (configFile == null) {
+            return BenchmarkPlugin.bundledConfig();
+        }
+        return YamlConfiguration.loadConfiguration(new File(configFile.toString()));
+    }
+    
+    private static long parseTime(String value) {
+        if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(value);
+        }
+        return Instant.parse(value).toEpochMilli();
+    }
+    
+    /**
+     * Read a --set value as a boolean or number where it looks like one, so
+     * typed config getters see the right type
+     */
+    private static Object parseValue(String value) {
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+            return Boolean.parseBoolean(value);
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ignored) {
+            // Not an integer
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ignored) {
+            // Not a number
+        }
+        return value;
+    }
+    
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            fail("Missing value after " + args[index - 1]);
+        }
+        return args[index];
+    }
+    
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " ns";
+        }
+        if (nanos < 1_000_000) {
+            return String.format("%.1f us", nanos / 1_000.0);
+        }
+        return String.format("%.2f ms", nanos / 1_000_000.0);
+    }
+    
+    private static String formatSpan(long millis) {
+        long seconds = millis / 1000;
+        return String.format("%dh %02dm %02ds", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+    
+    private static void fail(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+}
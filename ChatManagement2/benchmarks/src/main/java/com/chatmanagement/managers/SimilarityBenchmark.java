@@ -0,0 +1,72 @@
+package com.chatmanagement.managers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The duplicate detector's string comparison on its own: raw Levenshtein
+ * distance and the full isSimilar check, for near-duplicates and for
+ * unrelated messages of the same length.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimilarityBenchmark {
+    
+    // Power of two so the pair index can wrap with a mask
+    private static final int PAIRS = 256;
+    
+    @Param({"5", "32", "128", "256"})
+    public int messageLength;
+    
+    @Param({"near", "different"})
+    public String pair;
+    
+    private SpamDetectionManager manager;
+    private String[] left;
+    private String[] right;
+    private int next;
+    
+    @Setup
+    public void setup() {
+        manager = new SpamDetectionManager(BenchmarkPlugin.create(Map.of()));
+        
+        Random random = new Random(7);
+        left = new String[PAIRS];
+        right = new String[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            left[i] = ChatCorpus.cleanMessage(random, messageLength);
+            right[i] = pair.equals("near")
+                    ? ChatCorpus.nearDuplicate(random, left[i])
+                    : ChatCorpus.cleanMessage(random, messageLength);
+        }
+    }
+    
+    @Benchmark
+    public int levenshteinDistance() {
+        int i = next++ & (PAIRS - 1);
+        return manager.levenshteinDistance(left[i], right[i]);
+    }
+    
+    @Benchmark
+    public boolean isSimilar() {
+        int i = next++ & (PAIRS - 1);
+        return manager.isSimilar(left[i], right[i]);
+    }
+}
@@ -0,0 +1,44 @@
+package com.chatmanagement.managers;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A UTC clock that only moves when told to, so recorded chat can be
+ * replayed faster than it happened with the same spam windows and mute
+ * expiry
+ */
+final class SimulatedClock extends Clock {
+    
+    private volatile long millis;
+    
+    SimulatedClock(long millis) {
+        this.millis = millis;
+    }
+    
+    void set(long millis) {
+        this.millis = millis;
+    }
+    
+    @Override
+    public long millis() {
+        return millis;
+    }
+    
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+    
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+    
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+}
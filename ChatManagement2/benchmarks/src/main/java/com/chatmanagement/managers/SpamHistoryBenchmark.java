@@ -0,0 +1,81 @@
+package com.chatmanagement.managers;
+
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-player history checks as chat sees them: isRapidSpam with a
+ * timestamp list that fills to the kick threshold, and isDuplicateSpam
+ * comparing each message against a full history that never blocks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpamHistoryBenchmark {
+    
+    // Power of two so the message index can wrap with a mask
+    private static final int MESSAGES = 1024;
+    
+    @Param({"5", "10", "50", "200"})
+    public int historySize;
+    
+    @Param({"32", "128"})
+    public int messageLength;
+    
+    private SpamDetectionManager manager;
+    private Player player;
+    private String[] messages;
+    private int next;
+    
+    @Setup
+    public void setup() {
+        manager = new SpamDetectionManager(BenchmarkPlugin.create(Map.of(
+                "anti-spam-kick.enabled", true,
+                "anti-spam-kick.message-threshold", historySize,
+                "anti-spam-kick.time-window-seconds", 3600,
+                "settings.message-history-size", historySize,
+                "duplicate-messages.cooldown-seconds", 3600,
+                // Compare against the whole history without ever blocking
+                "duplicate-messages.max-repeats", Integer.MAX_VALUE)));
+        player = BenchmarkPlugin.player("BenchPlayer");
+        
+        Random random = new Random(7);
+        messages = new String[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = ChatCorpus.cleanMessage(random, messageLength);
+        }
+        
+        // Start from a full history
+        for (int i = 0; i < historySize; i++) {
+            manager.isDuplicateSpam(player, messages[i]);
+        }
+        next = historySize;
+    }
+    
+    @Benchmark
+    public boolean isRapidSpam() {
+        return manager.isRapidSpam(player);
+    }
+    
+    @Benchmark
+    public boolean isDuplicateSpam() {
+        return manager.isDuplicateSpam(player, messages[next++ & (MESSAGES - 1)]);
+    }
+}
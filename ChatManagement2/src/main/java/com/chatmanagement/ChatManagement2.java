@@ -1,24 +1,55 @@
 package com.chatmanagement;
 
 import com.chatmanagement.commands.ChatManagementCommand;
+import com.chatmanagement.commands.IgnoreCommand;
 import com.chatmanagement.commands.MessageCommand;
 import com.chatmanagement.commands.ReplyCommand;
+import com.chatmanagement.commands.SocialSpyCommand;
 import com.chatmanagement.listeners.ChatListener;
 import com.chatmanagement.managers.*;
 import com.chatmanagement.storage.DatabaseManager;
+import com.chatmanagement.storage.IgnoreStorage;
+import com.chatmanagement.storage.JournalStorage;
+import com.chatmanagement.storage.MappedStorage;
+import com.chatmanagement.storage.MuteStorage;
+import com.chatmanagement.storage.YAMLIgnoreStorage;
 import com.chatmanagement.storage.YAMLStorage;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 public class ChatManagement2 extends JavaPlugin {
     
     private static ChatManagement2 instance;
     private ConfigManager configManager;
-    private DatabaseManager databaseManager;
+    private volatile DatabaseManager databaseManager;
     private YAMLStorage yamlStorage;
+    private volatile MuteStorage muteStorage;
+    private volatile IgnoreStorage ignoreStorage;
     private SpamDetectionManager spamDetectionManager;
+    private SpamScoreManager spamScoreManager;
     private MuteManager muteManager;
     private PrivateMessageManager privateMessageManager;
     private BlockedWordsManager blockedWordsManager;
+    private RuleManager ruleManager;
+    private AdvertisingManager advertisingManager;
+    private ShapeFilterManager shapeFilterManager;
+    private IgnoreManager ignoreManager;
+    private PlayerNameIndex playerNameIndex;
+    private AuditManager auditManager;
+    private ChatArchiveManager chatArchiveManager;
+    private StatsManager statsManager;
+    private MetricsManager metricsManager;
+    private ChatBenchManager chatBenchManager;
+    private ShadowManager shadowManager;
+    private final CountDownLatch readyLatch = new CountDownLatch(1);
+    private final Clock clock = Clock.systemUTC();
+    private CompletableFuture<Void> startup;
     
     @Override
     public void onEnable() {
@@ -27,27 +58,45 @@ public class ChatManagement2 extends JavaPlugin {
         // Save default config
         saveDefaultConfig();
         
-        // Initialize managers
-        configManager = new ConfigManager(this);
-        
-        // Initialize storage based on config
-        if (configManager.isDatabaseEnabled()) {
-            databaseManager = new DatabaseManager(this);
-            if (databaseManager.connect()) {
-                getLogger().info("Database connection established successfully");
-            } else {
-                getLogger().warning("Failed to connect to database, falling back to YAML storage");
-                yamlStorage = new YAMLStorage(this);
-            }
-        } else {
-            yamlStorage = new YAMLStorage(this);
+        // Ship the JFR profile next to the config so it can be passed to jcmd
+        if (!new File(getDataFolder(), "chatmanagement.jfc").exists()) {
+            saveResource("chatmanagement.jfc", false);
         }
         
-        // Initialize other managers
+        // Initialize managers
+        configManager = new ConfigManager(this);
+        statsManager = new StatsManager();
+        auditManager = new AuditManager(this);
+        auditManager.start();
+        chatArchiveManager = new ChatArchiveManager(this);
+        chatArchiveManager.start();
         blockedWordsManager = new BlockedWordsManager(this);
+        ruleManager = new RuleManager(this);
+        advertisingManager = new AdvertisingManager(this);
+        advertisingManager.reload();
+        shapeFilterManager = new ShapeFilterManager(this);
+        shapeFilterManager.reload();
         muteManager = new MuteManager(this);
         spamDetectionManager = new SpamDetectionManager(this);
+        spamScoreManager = new SpamScoreManager(this);
         privateMessageManager = new PrivateMessageManager(this);
+        ignoreManager = new IgnoreManager(this);
+        playerNameIndex = new PlayerNameIndex();
+        
+        // Index players already online (e.g. after a plugin reload)
+        for (Player player : getServer().getOnlinePlayers()) {
+            playerNameIndex.add(player);
+        }
+        
+        // Expose stats to Prometheus and JMX if configured
+        metricsManager = new MetricsManager(this);
+        metricsManager.start();
+        
+        chatBenchManager = new ChatBenchManager(this);
+        
+        // Compare candidate detection engines on sampled chat if configured
+        shadowManager = new ShadowManager(this);
+        shadowManager.start();
         
         // Register listeners
         getServer().getPluginManager().registerEvents(new ChatListener(this), this);
@@ -56,10 +105,12 @@ public class ChatManagement2 extends JavaPlugin {
         getCommand("chatmanagement").setExecutor(new ChatManagementCommand(this));
         getCommand("cm").setExecutor(new ChatManagementCommand(this));
         
-        // Register PM commands dynamically
+        // Register PM commands dynamically, sharing one executor for tab completion
+        MessageCommand messageCommand = new MessageCommand(this);
         for (String cmd : configManager.getPMCommands()) {
             if (getCommand(cmd) != null) {
-                getCommand(cmd).setExecutor(new MessageCommand(this));
+                getCommand(cmd).setExecutor(messageCommand);
+                getCommand(cmd).setTabCompleter(messageCommand);
             }
         }
         
@@ -71,38 +122,202 @@ public class ChatManagement2 extends JavaPlugin {
             getCommand("reply").setExecutor(new ReplyCommand(this));
         }
         
+        // Register ignore command
+        if (getCommand("ignore") != null) {
+            getCommand("ignore").setExecutor(new IgnoreCommand(this));
+        }
+        
+        // Register social spy command
+        if (getCommand("socialspy") != null) {
+            getCommand("socialspy").setExecutor(new SocialSpyCommand(this));
+        }
+        
+        // Connect storage and compile filters in parallel off the main thread
+        // Chat stays blocked until both have finished
+        long start = System.nanoTime();
+        startup = CompletableFuture.allOf(
+                runStartupTask("storage", this::initializeStorage),
+                runStartupTask("blocked words", blockedWordsManager::reload),
+                runStartupTask("rules", ruleManager::reload)
+        ).whenComplete((result, error) -> {
+            if (error != null) {
+                getLogger().severe("Startup failed, chat will stay blocked: " + error.getMessage());
+                return;
+            }
+            
+            // Players who joined before mutes were loaded still need their timers resumed
+            for (Player player : getServer().getOnlinePlayers()) {
+                muteManager.handleReconnect(player.getUniqueId());
+            }
+            
+            readyLatch.countDown();
+            getLogger().info("ChatManagement 2 is ready (" + (System.nanoTime() - start) / 1_000_000 + " ms)");
+        });
+        
         getLogger().info("ChatManagement 2 has been enabled!");
     }
     
+    /**
+     * Initialize storage based on config and load mutes and ignore lists from it
+     */
+    private void initializeStorage() {
+        if (configManager.isDatabaseEnabled()) {
+            databaseManager = new DatabaseManager(this);
+            if (databaseManager.connect()) {
+                getLogger().info("Database connection established successfully");
+                muteStorage = databaseManager;
+                ignoreStorage = databaseManager;
+            } else {
+                getLogger().warning("Failed to connect to database, falling back to file storage");
+                muteStorage = createFileStorage();
+                ignoreStorage = new YAMLIgnoreStorage(this);
+            }
+        } else {
+            muteStorage = createFileStorage();
+            ignoreStorage = new YAMLIgnoreStorage(this);
+        }
+        
+        muteManager.loadMutes();
+        ignoreManager.loadIgnores();
+        
+        // The unmute checker and change sync read storage, so they start once it exists
+        muteManager.start();
+    }
+    
+    /**
+     * Run one startup step on the async scheduler
+     */
+    private CompletableFuture<Void> runStartupTask(String name, Runnable step) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        getServer().getAsyncScheduler().runNow(this, (task) -> {
+            long start = System.nanoTime();
+            try {
+                step.run();
+                future.complete(null);
+            } catch (Throwable e) {
+                getLogger().severe("Error during startup (" + name + "): " + e.getMessage());
+                future.completeExceptionally(e);
+            }
+            
+            if (configManager.isDebugEnabled()) {
+                getLogger().info("Startup step '" + name + "' took " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Time source for spam windows and mute expiry
+     */
+    public Clock getClock() {
+        return clock;
+    }
+    
+    /**
+     * Whether storage and filters have finished loading; chat is blocked until then
+     */
+    public boolean isReady() {
+        return readyLatch.getCount() == 0;
+    }
+    
     @Override
     public void onDisable() {
-        // Save all data before shutdown
+        // Let an unfinished startup settle so storage is not closed underneath it
+        if (startup != null && !startup.isDone()) {
+            try {
+                startup.get(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                getLogger().warning("Startup did not finish before shutdown: " + e.getMessage());
+            }
+        }
+        
+        // Each step runs even if an earlier one fails, so a storage error
+        // can't leave threads running or the metrics port bound
+        
+        // Stop any running benchmark before the managers it uses go away
+        if (chatBenchManager != null) {
+            runShutdownStep("benchmark", chatBenchManager::shutdown);
+        }
+        
+        // Save mutes to file storage; the database already has every change
         if (muteManager != null) {
-            muteManager.saveMutes();
+            runShutdownStep("saving mutes", muteManager::saveMutes);
+        }
+        
+        if (muteStorage != null) {
+            runShutdownStep("closing storage", muteStorage::close);
+        }
+        
+        // Write out queued audit events last so shutdown mutes are included
+        if (auditManager != null) {
+            runShutdownStep("audit log", auditManager::shutdown);
+        }
+        
+        if (chatArchiveManager != null) {
+            runShutdownStep("chat archive", chatArchiveManager::shutdown);
         }
         
-        if (databaseManager != null) {
-            databaseManager.disconnect();
+        if (metricsManager != null) {
+            runShutdownStep("metrics", metricsManager::shutdown);
+        }
+        
+        if (shadowManager != null) {
+            runShutdownStep("shadow mode", shadowManager::shutdown);
         }
         
         getLogger().info("ChatManagement 2 has been disabled!");
     }
     
+    /**
+     * Run one shutdown step, logging a failure instead of skipping the steps after it
+     */
+    private void runShutdownStep(String name, Runnable step) {
+        try {
+            step.run();
+        } catch (RuntimeException e) {
+            getLogger().severe("Error during shutdown (" + name + "): " + e.getMessage());
+        }
+    }
+    
     public void reload() {
+        if (!isReady()) {
+            throw new IllegalStateException("ChatManagement 2 is still starting up");
+        }
+        
         // Reload config
         reloadConfig();
         configManager.reload();
         
         // Reload managers
         blockedWordsManager.reload();
+        ruleManager.reload();
+        advertisingManager.reload();
+        shapeFilterManager.reload();
         spamDetectionManager.reload();
+        auditManager.reload();
+        chatArchiveManager.reload();
+        metricsManager.reload();
+        shadowManager.reload();
         
-        // Reload mutes from storage
-        if (databaseManager != null && databaseManager.isConnected()) {
-            muteManager.loadMutesFromDatabase();
-        } else if (yamlStorage != null) {
-            muteManager.loadMutesFromYAML();
+        // Every mute change is written as it happens, so storage is already up to date;
+        // flushing memory here would overwrite other servers' unmutes on shared storage
+        muteStorage.reload();
+        muteManager.loadMutes();
+    }
+    
+    /**
+     * Create the file-based mute storage selected by storage.file-format
+     */
+    private MuteStorage createFileStorage() {
+        String format = configManager.getFileStorageFormat().toLowerCase();
+        if (format.equals("journal")) {
+            return new JournalStorage(this);
+        } else if (format.equals("mapped")) {
+            return new MappedStorage(this);
         }
+        
+        yamlStorage = new YAMLStorage(this);
+        return yamlStorage;
     }
     
     // Getters
@@ -122,10 +337,22 @@ public class ChatManagement2 extends JavaPlugin {
         return yamlStorage;
     }
     
+    public MuteStorage getMuteStorage() {
+        return muteStorage;
+    }
+    
+    public IgnoreStorage getIgnoreStorage() {
+        return ignoreStorage;
+    }
+    
     public SpamDetectionManager getSpamDetectionManager() {
         return spamDetectionManager;
     }
     
+    public SpamScoreManager getSpamScoreManager() {
+        return spamScoreManager;
+    }
+    
     public MuteManager getMuteManager() {
         return muteManager;
     }
@@ -137,4 +364,48 @@ public class ChatManagement2 extends JavaPlugin {
     public BlockedWordsManager getBlockedWordsManager() {
         return blockedWordsManager;
     }
+    
+    public RuleManager getRuleManager() {
+        return ruleManager;
+    }
+    
+    public AdvertisingManager getAdvertisingManager() {
+        return advertisingManager;
+    }
+    
+    public ShapeFilterManager getShapeFilterManager() {
+        return shapeFilterManager;
+    }
+    
+    public IgnoreManager getIgnoreManager() {
+        return ignoreManager;
+    }
+    
+    public PlayerNameIndex getPlayerNameIndex() {
+        return playerNameIndex;
+    }
+    
+    public AuditManager getAuditManager() {
+        return auditManager;
+    }
+    
+    public StatsManager getStatsManager() {
+        return statsManager;
+    }
+    
+    public MetricsManager getMetricsManager() {
+        return metricsManager;
+    }
+    
+    public ShadowManager getShadowManager() {
+        return shadowManager;
+    }
+    
+    public ChatBenchManager getChatBenchManager() {
+        return chatBenchManager;
+    }
+    
+    public ChatArchiveManager getChatArchiveManager() {
+        return chatArchiveManager;
+    }
 }
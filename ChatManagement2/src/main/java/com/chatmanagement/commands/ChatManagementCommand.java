@@ -1,12 +1,26 @@
 package com.chatmanagement.commands;
 
 import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.managers.ChatBenchManager;
+import com.chatmanagement.managers.ConfigManager;
+import com.chatmanagement.managers.LatencyHistogram;
+import com.chatmanagement.managers.ShadowManager;
+import com.chatmanagement.managers.StatsManager;
+import com.chatmanagement.storage.DatabaseManager;
+import com.chatmanagement.storage.MuteStorage;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 public class ChatManagementCommand implements CommandExecutor {
     
     private final ChatManagement2 plugin;
@@ -39,6 +53,15 @@ public class ChatManagementCommand implements CommandExecutor {
             case "help":
                 sendHelp(sender);
                 break;
+            case "search":
+                handleSearch(sender, args);
+                break;
+            case "stats":
+                handleStats(sender, args);
+                break;
+            case "bench":
+                handleBench(sender, args);
+                break;
             case "version":
             case "ver":
                 sender.sendMessage(serializer.deserialize("&aChatManagement 2 &7v1.0.0"));
@@ -73,6 +96,267 @@ public class ChatManagementCommand implements CommandExecutor {
         }
     }
     
+    /**
+     * Handle search command: /cm search <player|text> [since]
+     */
+    private void handleSearch(CommandSender sender, String[] args) {
+        // The archive holds private messages, so reading it needs its own permission
+        if (!sender.hasPermission(plugin.getConfigManager().getSearchPermission())) {
+            sender.sendMessage(serializer.deserialize(plugin.getConfigManager().getMessage("no-permission")));
+            return;
+        }
+        
+        if (!plugin.getConfigManager().isChatArchiveEnabled()) {
+            sender.sendMessage(serializer.deserialize("&cThe chat archive is disabled."));
+            return;
+        }
+        
+        if (args.length < 2) {
+            sender.sendMessage(serializer.deserialize("&cUsage: /cm search <player|text> [since, e.g. 12h, 7d]"));
+            return;
+        }
+        
+        // A trailing duration limits how far back to look
+        int end = args.length;
+        long window = parseDuration(args[end - 1]);
+        if (window > 0 && end > 2) {
+            end--;
+        } else {
+            window = parseDuration(plugin.getConfigManager().getChatArchiveDefaultSearchWindow());
+        }
+        if (window <= 0) {
+            window = TimeUnit.DAYS.toMillis(7);
+        }
+        long since = System.currentTimeMillis() - window;
+        
+        // A single known player name searches that player's lines, anything else is text
+        if (end == 2) {
+            String name = args[1];
+            Player online = plugin.getPlayerNameIndex().getExact(name);
+            OfflinePlayer target = online != null ? online : Bukkit.getOfflinePlayerIfCached(name);
+            if (target != null) {
+                String targetName = target.getName() != null ? target.getName() : name;
+                plugin.getChatArchiveManager().search(sender, target.getUniqueId(), targetName, null, since);
+                return;
+            }
+        }
+        
+        String text = String.join(" ", Arrays.copyOfRange(args, 1, end));
+        plugin.getChatArchiveManager().search(sender, null, null, text, since);
+    }
+    
+    /**
+     * Handle stats command: /cm stats [reset|shadow]
+     */
+    private void handleStats(CommandSender sender, String[] args) {
+        StatsManager stats = plugin.getStatsManager();
+        ShadowManager shadow = plugin.getShadowManager();
+        
+        if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+            stats.reset();
+            shadow.reset();
+            sender.sendMessage(serializer.deserialize("&aStatistics have been reset."));
+            return;
+        }
+        
+        if (args.length > 1 && args[1].equalsIgnoreCase("shadow")) {
+            sendShadowExamples(sender, shadow);
+            return;
+        }
+        
+        long elapsed = System.currentTimeMillis() - stats.getSince();
+        sender.sendMessage(serializer.deserialize("&8&m---------------&r &aChatManagement Stats &8&m---------------"));
+        sender.sendMessage(serializer.deserialize("&7Collected over the last &f" + formatDuration(elapsed)));
+        
+        // Counters
+        for (StatsManager.Counter counter : StatsManager.Counter.values()) {
+            if (counter == StatsManager.Counter.NAME_LOOKUP_HITS || counter == StatsManager.Counter.NAME_LOOKUP_MISSES) {
+                continue;
+            }
+            sender.sendMessage(serializer.deserialize("&a" + counter.getLabel() + ": &f" + stats.get(counter)));
+        }
+        
+        long hits = stats.get(StatsManager.Counter.NAME_LOOKUP_HITS);
+        long lookups = hits + stats.get(StatsManager.Counter.NAME_LOOKUP_MISSES);
+        String hitRate = lookups > 0 ? String.format("%.1f%%", hits * 100.0 / lookups) : "-";
+        sender.sendMessage(serializer.deserialize("&aName lookups: &f" + lookups + " &7(hit rate " + hitRate + ")"));
+        
+        // Latencies
+        sender.sendMessage(serializer.deserialize("&7Latency (p50 / p99 / max, count):"));
+        for (StatsManager.Stage stage : StatsManager.Stage.values()) {
+            LatencyHistogram histogram = stats.getHistogram(stage);
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+            sender.sendMessage(serializer.deserialize("&a" + stage.getLabel() + ": &f"
+                    + LatencyHistogram.formatNanos(histogram.getPercentile(50)) + " &7/ &f"
+                    + LatencyHistogram.formatNanos(histogram.getPercentile(99)) + " &7/ &f"
+                    + LatencyHistogram.formatNanos(histogram.getPercentile(100)) + " &7(" + count + ")"));
+        }
+        
+        // Candidate engines running in shadow mode
+        if (shadow.isEnabled()) {
+            sender.sendMessage(serializer.deserialize("&7Shadow mode (" + String.format("%.1f%%", shadow.getSampleRate() * 100)
+                    + " sampled, " + shadow.getDropped() + " dropped, cost p50 / p99 active vs candidate):"));
+            for (ShadowManager.Check check : ShadowManager.Check.values()) {
+                ShadowManager.Comparison comparison = shadow.getComparison(check);
+                if (comparison.getCandidate() == null) {
+                    continue;
+                }
+                sender.sendMessage(serializer.deserialize("&a" + check.getLabel() + " &7[" + comparison.getCandidate() + "]: &f"
+                        + comparison.getCompared() + " &7compared, &f" + comparison.getActiveOnly() + " &7active only, &f"
+                        + comparison.getCandidateOnly() + " &7candidate only, &f"
+                        + LatencyHistogram.formatNanos(comparison.getActiveCost().getPercentile(50)) + " &7/ &f"
+                        + LatencyHistogram.formatNanos(comparison.getActiveCost().getPercentile(99)) + " &7vs &f"
+                        + LatencyHistogram.formatNanos(comparison.getCandidateCost().getPercentile(50)) + " &7/ &f"
+                        + LatencyHistogram.formatNanos(comparison.getCandidateCost().getPercentile(99))));
+            }
+        }
+        
+        // Queues
+        MuteStorage storage = plugin.getMuteStorage();
+        if (storage != null) {
+            String pending = storage instanceof DatabaseManager
+                    ? ", " + ((DatabaseManager) storage).getPendingWrites() + " pending writes"
+                    : "";
+            sender.sendMessage(serializer.deserialize("&aStorage: &f" + storage.getName() + pending));
+        }
+        sender.sendMessage(serializer.deserialize("&aAudit queue: &f" + plugin.getAuditManager().getQueueSize()
+                + " &7(" + plugin.getAuditManager().getDroppedEvents() + " dropped)"));
+        sender.sendMessage(serializer.deserialize("&aArchive queue: &f" + plugin.getChatArchiveManager().getQueueSize()
+                + " &7(" + plugin.getChatArchiveManager().getDroppedLines() + " dropped)"));
+        
+        // Per-player state
+        sender.sendMessage(serializer.deserialize("&aMuted players: &f" + plugin.getMuteManager().getMutedCount()));
+        sender.sendMessage(serializer.deserialize("&aSpam tracking: &f" + plugin.getSpamDetectionManager().getTrackedPlayers()
+                + " players, ~" + (plugin.getSpamDetectionManager().estimateMemoryBytes() / 1024) + " KB"));
+        sender.sendMessage(serializer.deserialize("&8&m------------------------------------------------"));
+    }
+    
+    /**
+     * Show the most recent messages where shadow engines disagreed
+     */
+    private void sendShadowExamples(CommandSender sender, ShadowManager shadow) {
+        if (!shadow.isEnabled()) {
+            sender.sendMessage(serializer.deserialize("&cShadow mode is disabled."));
+            return;
+        }
+        
+        for (ShadowManager.Check check : ShadowManager.Check.values()) {
+            ShadowManager.Comparison comparison = shadow.getComparison(check);
+            if (comparison.getCandidate() == null) {
+                continue;
+            }
+            
+            List<String> examples = comparison.getExamples();
+            sender.sendMessage(serializer.deserialize("&a" + check.getLabel() + " &7[" + comparison.getCandidate() + "]: "
+                    + (examples.isEmpty() ? "no disagreements" : "recent disagreements")));
+            for (String example : examples) {
+                sender.sendMessage(serializer.deserialize("&7- &f" + example));
+            }
+        }
+    }
+    
+    /**
+     * Handle bench command: /cm bench [rate] [seconds] [threads] or /cm bench stop
+     */
+    private void handleBench(CommandSender sender, String[] args) {
+        // A run loads the live server, so starting or stopping one needs its own permission
+        if (!sender.hasPermission(plugin.getConfigManager().getBenchPermission())) {
+            sender.sendMessage(serializer.deserialize(plugin.getConfigManager().getMessage("no-permission")));
+            return;
+        }
+        
+        ChatBenchManager bench = plugin.getChatBenchManager();
+        
+        if (args.length > 1 && args[1].equalsIgnoreCase("stop")) {
+            if (bench.stop()) {
+                sender.sendMessage(serializer.deserialize("&eStopping the chat benchmark..."));
+            } else {
+                sender.sendMessage(serializer.deserialize("&cNo chat benchmark is running."));
+            }
+            return;
+        }
+        
+        if (!plugin.isReady()) {
+            sender.sendMessage(serializer.deserialize("&cChatManagement 2 is still starting up."));
+            return;
+        }
+        
+        ConfigManager config = plugin.getConfigManager();
+        int rate = config.getBenchRate();
+        int seconds = config.getBenchDurationSeconds();
+        int threads = config.getBenchThreads();
+        try {
+            if (args.length > 1) {
+                rate = Integer.parseInt(args[1]);
+            }
+            if (args.length > 2) {
+                seconds = Integer.parseInt(args[2]);
+            }
+            if (args.length > 3) {
+                threads = Integer.parseInt(args[3]);
+            }
+        } catch (NumberFormatException e) {
+            sender.sendMessage(serializer.deserialize("&cUsage: /cm bench [rate] [seconds] [threads] or /cm bench stop"));
+            return;
+        }
+        
+        int maxRate = Math.max(1, config.getBenchMaxRate());
+        if (rate < 1 || rate > maxRate || seconds < 1 || seconds > 300 || threads < 1 || threads > 64) {
+            sender.sendMessage(serializer.deserialize("&cRate must be 1-" + maxRate + ", seconds 1-300 and threads 1-64."));
+            return;
+        }
+        
+        if (!bench.start(sender, rate, seconds, threads)) {
+            sender.sendMessage(serializer.deserialize("&cA chat benchmark is already running. Use /cm bench stop to end it."));
+            return;
+        }
+        sender.sendMessage(serializer.deserialize("&eBenchmarking chat at &f" + rate + " &emsg/s for &f" + seconds
+                + "s &eon &f" + threads + " &ethreads. Results will follow; /cm bench stop ends it early."));
+    }
+    
+    private static String formatDuration(long millis) {
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(millis);
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        if (seconds < 3600) {
+            return (seconds / 60) + "m " + (seconds % 60) + "s";
+        }
+        return (seconds / 3600) + "h " + (seconds % 3600 / 60) + "m";
+    }
+    
+    /**
+     * Parse a duration such as 30m, 12h, 7d or 2w, returning -1 if it is not one
+     */
+    private long parseDuration(String value) {
+        if (value.length() < 2) {
+            return -1;
+        }
+        
+        long amount;
+        try {
+            amount = Long.parseLong(value.substring(0, value.length() - 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        
+        switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+            case 'm':
+                return TimeUnit.MINUTES.toMillis(amount);
+            case 'h':
+                return TimeUnit.HOURS.toMillis(amount);
+            case 'd':
+                return TimeUnit.DAYS.toMillis(amount);
+            case 'w':
+                return TimeUnit.DAYS.toMillis(amount * 7);
+            default:
+                return -1;
+        }
+    }
+    
     /**
      * Send help message
      */
@@ -81,6 +365,9 @@ public class ChatManagementCommand implements CommandExecutor {
         sender.sendMessage(serializer.deserialize("&a/cm reload &7- Reload the configuration"));
         sender.sendMessage(serializer.deserialize("&a/cm help &7- Show this help message"));
         sender.sendMessage(serializer.deserialize("&a/cm version &7- Show plugin version"));
+        sender.sendMessage(serializer.deserialize("&a/cm search <player|text> [since] &7- Search the chat archive"));
+        sender.sendMessage(serializer.deserialize("&a/cm stats [reset|shadow] &7- Show live chat statistics"));
+        sender.sendMessage(serializer.deserialize("&a/cm bench [rate] [seconds] [threads] &7- Benchmark chat checks with fake players"));
         sender.sendMessage(serializer.deserialize(""));
         sender.sendMessage(serializer.deserialize("&7Private Message Commands:"));
         sender.sendMessage(serializer.deserialize("&a/msg <player> <message> &7- Send a private message"));
@@ -0,0 +1,150 @@
+package com.chatmanagement.commands;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.managers.StatsManager;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.UUID;
+
+public class IgnoreCommand implements CommandExecutor {
+    
+    private final ChatManagement2 plugin;
+    private final LegacyComponentSerializer serializer = LegacyComponentSerializer.legacyAmpersand();
+    
+    public IgnoreCommand(ChatManagement2 plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+        // Check if ignoring is enabled
+        if (!plugin.getConfigManager().isIgnoreEnabled()) {
+            sender.sendMessage(serializer.deserialize("&cIgnoring players is currently disabled."));
+            return true;
+        }
+        
+        // Must be a player
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(serializer.deserialize("&cThis command can only be used by players."));
+            return true;
+        }
+        
+        Player player = (Player) sender;
+        
+        // Check arguments
+        if (args.length < 1) {
+            sender.sendMessage(serializer.deserialize("&cUsage: /" + label + " <player|list>"));
+            return true;
+        }
+        
+        if (args[0].equalsIgnoreCase("list")) {
+            sendIgnoreList(player);
+            return true;
+        }
+        
+        UUID uuid = player.getUniqueId();
+        String targetName = args[0];
+        
+        // Players already ignored can be removed by name or UUID even when offline,
+        // and even if they have since become staff
+        UUID ignored = findIgnored(uuid, targetName);
+        if (ignored != null && plugin.getIgnoreManager().removeIgnore(uuid, ignored)) {
+            OfflinePlayer offline = Bukkit.getOfflinePlayer(ignored);
+            String name = offline.getName() != null ? offline.getName() : ignored.toString();
+            sender.sendMessage(serializer.deserialize("&aYou are no longer ignoring &e" + name + "&a."));
+            return true;
+        }
+        
+        // Get target player
+        Player target = plugin.getPlayerNameIndex().getPlayer(targetName);
+        plugin.getStatsManager().increment(target != null
+                ? StatsManager.Counter.NAME_LOOKUP_HITS : StatsManager.Counter.NAME_LOOKUP_MISSES);
+        
+        if (target == null || !target.isOnline()) {
+            sender.sendMessage(serializer.deserialize("&cPlayer '" + targetName + "' is not online."));
+            return true;
+        }
+        
+        // Already ignored under a name the cache no longer matches
+        if (plugin.getIgnoreManager().removeIgnore(uuid, target.getUniqueId())) {
+            sender.sendMessage(serializer.deserialize("&aYou are no longer ignoring &e" + target.getName() + "&a."));
+            return true;
+        }
+        
+        // Can't ignore yourself
+        if (target.equals(player)) {
+            sender.sendMessage(serializer.deserialize("&cYou cannot ignore yourself."));
+            return true;
+        }
+        
+        // Staff can always be heard
+        if (target.hasPermission(plugin.getConfigManager().getBypassPermission())) {
+            sender.sendMessage(serializer.deserialize("&cYou cannot ignore that player."));
+            return true;
+        }
+        
+        switch (plugin.getIgnoreManager().addIgnore(uuid, target.getUniqueId())) {
+            case ADDED:
+                sender.sendMessage(serializer.deserialize("&aYou are now ignoring &e" + target.getName() + "&a."));
+                break;
+            case ALREADY_IGNORED:
+                // Another command added them between the remove and the add
+                sender.sendMessage(serializer.deserialize("&cYou are already ignoring &e" + target.getName() + "&c."));
+                break;
+            default:
+                sender.sendMessage(serializer.deserialize("&cYour ignore list is full."));
+                break;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Find an entry in the player's ignore list by UUID or last known name
+     */
+    private UUID findIgnored(UUID player, String nameOrUuid) {
+        List<UUID> ignoring = plugin.getIgnoreManager().getIgnoring(player);
+        if (ignoring.isEmpty()) {
+            return null;
+        }
+        
+        for (UUID ignored : ignoring) {
+            if (ignored.toString().equalsIgnoreCase(nameOrUuid)) {
+                return ignored;
+            }
+        }
+        
+        OfflinePlayer cached = Bukkit.getOfflinePlayerIfCached(nameOrUuid);
+        return cached != null && ignoring.contains(cached.getUniqueId()) ? cached.getUniqueId() : null;
+    }
+    
+    /**
+     * Show the players this player is ignoring
+     */
+    private void sendIgnoreList(Player player) {
+        List<UUID> ignoring = plugin.getIgnoreManager().getIgnoring(player.getUniqueId());
+        if (ignoring.isEmpty()) {
+            player.sendMessage(serializer.deserialize("&7You are not ignoring anyone."));
+            return;
+        }
+        
+        StringBuilder names = new StringBuilder();
+        for (UUID uuid : ignoring) {
+            if (names.length() > 0) {
+                names.append("&7, ");
+            }
+            OfflinePlayer offline = Bukkit.getOfflinePlayer(uuid);
+            names.append("&e").append(offline.getName() != null ? offline.getName() : uuid.toString());
+        }
+        
+        player.sendMessage(serializer.deserialize("&7Ignoring (" + ignoring.size() + "): " + names));
+    }
+}
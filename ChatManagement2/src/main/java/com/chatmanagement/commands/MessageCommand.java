@@ -1,15 +1,21 @@
 package com.chatmanagement.commands;
 
 import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.managers.StatsManager;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
-import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
-import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
-public class MessageCommand implements CommandExecutor {
+import java.util.Collections;
+import java.util.List;
+
+public class MessageCommand implements TabExecutor {
+    
+    // Most names offered for one completion request
+    private static final int MAX_COMPLETIONS = 100;
     
     private final ChatManagement2 plugin;
     private final LegacyComponentSerializer serializer = LegacyComponentSerializer.legacyAmpersand();
@@ -42,9 +48,12 @@ public class MessageCommand implements CommandExecutor {
         
         // Get target player
         String targetName = args[0];
-        Player target = Bukkit.getPlayer(targetName);
+        Player target = plugin.getPlayerNameIndex().getPlayer(targetName);
+        plugin.getStatsManager().increment(target != null
+                ? StatsManager.Counter.NAME_LOOKUP_HITS : StatsManager.Counter.NAME_LOOKUP_MISSES);
         
-        if (target == null || !target.isOnline()) {
+        // Hidden players are reported as offline so vanish is not given away
+        if (target == null || !target.isOnline() || plugin.getPrivateMessageManager().isHidden(player, target)) {
             sender.sendMessage(serializer.deserialize("&cPlayer '" + targetName + "' is not online."));
             return true;
         }
@@ -70,4 +79,16 @@ public class MessageCommand implements CommandExecutor {
         
         return true;
     }
+    
+    @Override
+    public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+        // Only the target name is completed, the rest is free text
+        if (args.length != 1 || !(sender instanceof Player) || !plugin.getConfigManager().isPMEnabled()) {
+            return Collections.emptyList();
+        }
+        
+        Player player = (Player) sender;
+        return plugin.getPlayerNameIndex().complete(args[0],
+                target -> plugin.getPrivateMessageManager().isSuggestable(player, target), MAX_COMPLETIONS);
+    }
 }
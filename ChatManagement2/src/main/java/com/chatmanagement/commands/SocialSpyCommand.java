@@ -0,0 +1,43 @@
+package com.chatmanagement.commands;
+
+import com.chatmanagement.ChatManagement2;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+public class SocialSpyCommand implements CommandExecutor {
+    
+    private final ChatManagement2 plugin;
+    private final LegacyComponentSerializer serializer = LegacyComponentSerializer.legacyAmpersand();
+    
+    public SocialSpyCommand(ChatManagement2 plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+        // Check permission
+        if (!sender.hasPermission(plugin.getConfigManager().getSocialSpyPermission())) {
+            sender.sendMessage(serializer.deserialize(plugin.getConfigManager().getMessage("no-permission")));
+            return true;
+        }
+        
+        // Must be a player
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(serializer.deserialize("&cThis command can only be used by players."));
+            return true;
+        }
+        
+        Player player = (Player) sender;
+        if (plugin.getAuditManager().toggleSpy(player.getUniqueId())) {
+            sender.sendMessage(serializer.deserialize("&aSocial spy enabled."));
+        } else {
+            sender.sendMessage(serializer.deserialize("&cSocial spy disabled."));
+        }
+        
+        return true;
+    }
+}
@@ -0,0 +1,43 @@
+package com.chatmanagement.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One public chat message going through moderation.
+ * Disabled unless a recording turns it on, e.g. with chatmanagement.jfc.
+ */
+@Name("com.chatmanagement.ChatMessage")
+@Label("Chat Message")
+@Description("A public chat message checked by ChatManagement2")
+@Category({"ChatManagement2", "Chat"})
+@Enabled(false)
+@StackTrace(false)
+public class ChatMessageEvent extends Event {
+    
+    @Label("Player")
+    String player;
+    
+    @Label("Verdict")
+    String verdict;
+    
+    @Label("Message Length")
+    int messageLength;
+    
+    /**
+     * Commit the event if the recording wants it
+     */
+    public void finish(String player, String verdict, int messageLength) {
+        if (shouldCommit()) {
+            this.player = player;
+            this.verdict = verdict;
+            this.messageLength = messageLength;
+            commit();
+        }
+    }
+}
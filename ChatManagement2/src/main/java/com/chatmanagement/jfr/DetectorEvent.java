@@ -0,0 +1,48 @@
+package com.chatmanagement.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One run of a spam or blocked word detector.
+ * Disabled unless a recording turns it on, e.g. with chatmanagement.jfc.
+ */
+@Name("com.chatmanagement.Detector")
+@Label("Detector")
+@Description("A single spam or blocked word check")
+@Category({"ChatManagement2", "Detectors"})
+@Enabled(false)
+@StackTrace(false)
+public class DetectorEvent extends Event {
+    
+    @Label("Detector")
+    String detector;
+    
+    @Label("Player")
+    @Description("Empty for detectors that only see the message")
+    String player;
+    
+    @Label("Verdict")
+    String verdict;
+    
+    @Label("Message Length")
+    int messageLength;
+    
+    /**
+     * Commit the event if the recording wants it
+     */
+    public void finish(String detector, String player, String verdict, int messageLength) {
+        if (shouldCommit()) {
+            this.detector = detector;
+            this.player = player;
+            this.verdict = verdict;
+            this.messageLength = messageLength;
+            commit();
+        }
+    }
+}
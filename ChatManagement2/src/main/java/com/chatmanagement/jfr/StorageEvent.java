@@ -0,0 +1,49 @@
+package com.chatmanagement.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One call into mute or ignore storage.
+ * Disabled unless a recording turns it on, e.g. with chatmanagement.jfc.
+ */
+@Name("com.chatmanagement.Storage")
+@Label("Storage Call")
+@Description("A call into the SQLite or YAML storage backend")
+@Category({"ChatManagement2", "Storage"})
+@Enabled(false)
+@StackTrace(false)
+public class StorageEvent extends Event {
+    
+    @Label("Backend")
+    String backend;
+    
+    @Label("Operation")
+    String operation;
+    
+    @Label("Player")
+    @Description("UUID of the player the call is about, empty for bulk operations")
+    String player;
+    
+    @Label("Records")
+    @Description("Rows or entries written or read, 1 for single-player calls")
+    int records;
+    
+    /**
+     * Commit the event if the recording wants it
+     */
+    public void finish(String backend, String operation, Object player, int records) {
+        if (shouldCommit()) {
+            this.backend = backend;
+            this.operation = operation;
+            this.player = player != null ? player.toString() : null;
+            this.records = records;
+            commit();
+        }
+    }
+}
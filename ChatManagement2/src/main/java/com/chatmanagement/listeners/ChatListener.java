@@ -1,10 +1,22 @@
 package com.chatmanagement.listeners;
 
 import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.jfr.ChatMessageEvent;
+import com.chatmanagement.managers.AuditManager;
+import com.chatmanagement.managers.ConfigManager;
+import com.chatmanagement.managers.IgnoreManager;
+import com.chatmanagement.managers.MuteManager;
+import com.chatmanagement.managers.RuleManager;
+import com.chatmanagement.managers.ShapeFilterManager;
+import com.chatmanagement.managers.ShadowManager;
+import com.chatmanagement.managers.SpamDetectionManager;
+import com.chatmanagement.managers.SpamScoreManager;
+import com.chatmanagement.managers.StatsManager;
 import io.papermc.paper.event.player.AsyncChatEvent;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -17,54 +29,166 @@ import java.util.UUID;
 public class ChatListener implements Listener {
     
     private final ChatManagement2 plugin;
+    private final StatsManager stats;
+    private final AuditManager audit;
+    private final MuteManager muteManager;
+    private final SpamDetectionManager spamDetection;
+    private final SpamScoreManager spamScore;
+    private final ShadowManager shadow;
     private final LegacyComponentSerializer serializer = LegacyComponentSerializer.legacyAmpersand();
     
     public ChatListener(ChatManagement2 plugin) {
+        this(plugin, plugin.getStatsManager(), plugin.getAuditManager(), plugin.getMuteManager(),
+                plugin.getSpamDetectionManager(), plugin.getSpamScoreManager(), plugin.getShadowManager());
+    }
+    
+    /**
+     * Listener that keeps its spam and mute state in, and reports to, the
+     * given managers instead of the plugin's. Config and blocked words are
+     * always the plugin's. Shadow comparisons are skipped if shadow is null.
+     */
+    public ChatListener(ChatManagement2 plugin, StatsManager stats, AuditManager audit,
+                        MuteManager muteManager, SpamDetectionManager spamDetection, SpamScoreManager spamScore,
+                        ShadowManager shadow) {
         this.plugin = plugin;
+        this.stats = stats;
+        this.audit = audit;
+        this.muteManager = muteManager;
+        this.spamDetection = spamDetection;
+        this.spamScore = spamScore;
+        this.shadow = shadow;
+    }
+    
+    /**
+     * Outcome of moderating one chat message
+     */
+    public enum Verdict {
+        ALLOWED(false),
+        BYPASS(false),
+        STARTING_UP(true),
+        MUTED(true),
+        RAPID_SPAM(true),
+        BLOCKED_WORD(true),
+        ADVERTISING(true),
+        RULE(true),
+        SHAPE(true),
+        DUPLICATE(true),
+        SPAM_SCORE(true);
+        
+        private final boolean blocked;
+        
+        Verdict(boolean blocked) {
+            this.blocked = blocked;
+        }
+        
+        public boolean isBlocked() {
+            return blocked;
+        }
+        
+        /**
+         * Name used in profiling events and reports, e.g. blocked-word
+         */
+        public String getLabel() {
+            return name().toLowerCase().replace('_', '-');
+        }
     }
     
     @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = false)
     public void onAsyncChat(AsyncChatEvent event) {
+        ChatMessageEvent profile = new ChatMessageEvent();
+        profile.begin();
+        long start = System.nanoTime();
+        stats.increment(StatsManager.Counter.CHAT_MESSAGES);
+        
         Player player = event.getPlayer();
         
         // Convert Component to plain text
         String message = PlainTextComponentSerializer.plainText().serialize(event.message());
         
+        Verdict verdict = null;
+        try {
+            verdict = moderate(player, message);
+            if (verdict.isBlocked()) {
+                event.setCancelled(true);
+            } else {
+                deliver(event, player, message, verdict);
+            }
+        } finally {
+            stats.recordSince(StatsManager.Stage.CHAT_TOTAL, start);
+            profile.finish(player.getName(), verdict != null ? verdict.getLabel() : "error", message.length());
+        }
+    }
+    
+    /**
+     * Run the moderation checks on a message, notifying or kicking the sender
+     * as needed. Leaves the chat event alone, so the same checks can be driven
+     * without a server.
+     */
+    public Verdict moderate(Player player, String message) {
+        Verdict verdict = check(player, message);
+        switch (verdict) {
+            case BYPASS:
+            case STARTING_UP:
+            case MUTED:
+                return verdict;
+            default:
+                return plugin.getConfigManager().isSpamScoreEnabled() ? score(player, message, verdict) : verdict;
+        }
+    }
+    
+    private Verdict check(Player player, String message) {
         // Bypass permission check
         if (player.hasPermission(plugin.getConfigManager().getBypassPermission())) {
-            // Still apply color prefix if enabled
-            if (plugin.getConfigManager().isChatColorsEnabled()) {
-                String colored = applyColorPrefix(message);
-                if (!colored.equals(message)) {
-                    event.message(serializer.deserialize(colored));
-                }
-            }
-            return;
+            return Verdict.BYPASS;
+        }
+        
+        // Fail closed until mutes and filters have loaded
+        if (!plugin.isReady()) {
+            stats.increment(StatsManager.Counter.BLOCKED_NOT_READY);
+            player.sendMessage(serializer.deserialize(plugin.getConfigManager().getStartingUpMessage()));
+            return Verdict.STARTING_UP;
         }
         
         // Check if player is muted
-        if (plugin.getMuteManager().isMuted(player.getUniqueId())) {
-            event.setCancelled(true);
-            int remaining = plugin.getMuteManager().getRemainingTime(player.getUniqueId());
+        long stageStart = System.nanoTime();
+        boolean muted = muteManager.isMuted(player.getUniqueId());
+        stats.recordSince(StatsManager.Stage.MUTE_CHECK, stageStart);
+        if (muted) {
+            stats.increment(StatsManager.Counter.BLOCKED_MUTED);
+            int remaining = muteManager.getRemainingTime(player.getUniqueId());
             String muteMsg = plugin.getConfigManager().getMuteMessage()
                     .replace("{time}", String.valueOf(remaining));
             player.sendMessage(serializer.deserialize(muteMsg));
-            return;
+            return Verdict.MUTED;
         }
         
         // Check for rapid spam (kick check)
-        if (plugin.getSpamDetectionManager().isRapidSpam(player)) {
-            event.setCancelled(true);
+        stageStart = System.nanoTime();
+        boolean rapidSpam = spamDetection.isRapidSpam(player);
+        stats.recordSince(StatsManager.Stage.RAPID_SPAM, stageStart);
+        if (rapidSpam) {
+            stats.increment(StatsManager.Counter.SPAM_KICKS);
+            
+            audit.record(AuditManager.Type.SPAM_KICK, player, null, message, "rapid spam");
             
             // Kick player
             String kickMsg = plugin.getConfigManager().getSpamKickMessage();
             player.kick(serializer.deserialize(kickMsg));
-            return;
+            return Verdict.RAPID_SPAM;
+        }
+        
+        // Let shadow mode compare candidate engines on a sample, off this thread
+        if (shadow != null) {
+            shadow.sample(spamDetection, player.getUniqueId(), message);
         }
         
         // Check for blocked words
-        if (plugin.getBlockedWordsManager().containsBlockedWord(message)) {
-            event.setCancelled(true);
+        stageStart = System.nanoTime();
+        boolean blockedWord = plugin.getBlockedWordsManager().containsBlockedWord(message);
+        stats.recordSince(StatsManager.Stage.BLOCKED_WORD, stageStart);
+        if (blockedWord) {
+            stats.increment(StatsManager.Counter.BLOCKED_WORD);
+            audit.record(AuditManager.Type.BLOCKED_WORD, player, null, message, "public chat");
             
             if (plugin.getConfigManager().shouldNotifyBlocked()) {
                 player.sendMessage(serializer.deserialize(plugin.getConfigManager().getBlockedMessageNotification()));
@@ -73,12 +197,60 @@ public class ChatListener implements Listener {
             if (plugin.getConfigManager().isDebugEnabled()) {
                 plugin.getLogger().info("Blocked message from " + player.getName() + " (blocked word): " + message);
             }
-            return;
+            return Verdict.BLOCKED_WORD;
+        }
+        
+        // Check for links and server addresses
+        stageStart = System.nanoTime();
+        String advertisement = plugin.getAdvertisingManager().findAdvertisement(message);
+        stats.recordSince(StatsManager.Stage.ADVERTISING, stageStart);
+        if (advertisement != null) {
+            stats.increment(StatsManager.Counter.BLOCKED_ADVERTISING);
+            audit.record(AuditManager.Type.ADVERTISING, player, null, message, advertisement);
+            
+            if (plugin.getConfigManager().shouldNotifyAdvertising()) {
+                player.sendMessage(serializer.deserialize(plugin.getConfigManager().getAdvertisingMessage()));
+            }
+            
+            if (plugin.getConfigManager().isDebugEnabled()) {
+                plugin.getLogger().info("Blocked message from " + player.getName() + " (advertising " + advertisement + "): " + message);
+            }
+            return Verdict.ADVERTISING;
+        }
+        
+        // Check the custom rules
+        stageStart = System.nanoTime();
+        RuleManager.Rule rule = plugin.getRuleManager().match(message);
+        stats.recordSince(StatsManager.Stage.RULES, stageStart);
+        if (rule != null && applyRule(player, message, rule)) {
+            return Verdict.RULE;
+        }
+        
+        // Check caps, character floods, zalgo and symbol spam
+        stageStart = System.nanoTime();
+        ShapeFilterManager.Filter shape = plugin.getShapeFilterManager().findBlocked(message);
+        stats.recordSince(StatsManager.Stage.SHAPE, stageStart);
+        if (shape != null) {
+            stats.increment(StatsManager.Counter.BLOCKED_SHAPE);
+            audit.record(AuditManager.Type.SHAPE, player, null, message, shape.getLabel());
+            
+            if (plugin.getConfigManager().shouldNotifyShapeFilters()) {
+                player.sendMessage(serializer.deserialize(plugin.getConfigManager().getShapeFiltersMessage()));
+            }
+            
+            if (plugin.getConfigManager().isDebugEnabled()) {
+                plugin.getLogger().info("Blocked message from " + player.getName() + " (" + shape.getLabel() + "): " + message);
+            }
+            return Verdict.SHAPE;
         }
         
         // Check for duplicate spam
-        if (plugin.getSpamDetectionManager().isDuplicateSpam(player, message)) {
-            event.setCancelled(true);
+        stageStart = System.nanoTime();
+        boolean duplicate = spamDetection.isDuplicateSpam(player, message);
+        stats.recordSince(StatsManager.Stage.DUPLICATE, stageStart);
+        if (duplicate) {
+            stats.increment(StatsManager.Counter.BLOCKED_DUPLICATE);
+            audit.record(AuditManager.Type.DUPLICATE, player, null, message, "public chat");
             
             if (plugin.getConfigManager().shouldNotifyBlocked()) {
                 player.sendMessage(serializer.deserialize(plugin.getConfigManager().getBlockedMessageNotification()));
@@ -87,9 +259,151 @@ public class ChatListener implements Listener {
             if (plugin.getConfigManager().isDebugEnabled()) {
                 plugin.getLogger().info("Blocked message from " + player.getName() + " (duplicate): " + message);
             }
-            return;
+            return Verdict.DUPLICATE;
+        }
+        
+        return Verdict.ALLOWED;
+    }
+    
+    /**
+     * Add this message's signals to the sender's spam score and escalate if
+     * it has passed a threshold. Kicks and mutes apply even when a check has
+     * already blocked the message.
+     */
+    private Verdict score(Player player, String message, Verdict verdict) {
+        ConfigManager config = plugin.getConfigManager();
+        double weight = 0;
+        switch (verdict) {
+            case RAPID_SPAM:
+                weight += config.getSpamScoreWeight("rapid-spam", 5.0);
+                break;
+            case DUPLICATE:
+                weight += config.getSpamScoreWeight("duplicate", 3.0);
+                break;
+            case BLOCKED_WORD:
+                weight += config.getSpamScoreWeight("blocked-word", 4.0);
+                break;
+            case ADVERTISING:
+                weight += config.getSpamScoreWeight("advertising", 5.0);
+                break;
+            case RULE:
+                weight += config.getSpamScoreWeight("rule", 3.0);
+                break;
+            default:
+                break;
+        }
+        
+        // Shouting and floods count whether their filters block or rewrite
+        ShapeFilterManager shapes = plugin.getShapeFilterManager();
+        if (shapes.fires(ShapeFilterManager.Filter.CAPS, message)) {
+            weight += config.getSpamScoreWeight("caps", 1.0);
+        }
+        if (shapes.fires(ShapeFilterManager.Filter.CHARACTER_FLOOD, message)
+                || shapes.fires(ShapeFilterManager.Filter.COMBINING_MARKS, message)
+                || shapes.fires(ShapeFilterManager.Filter.SYMBOLS, message)) {
+            weight += config.getSpamScoreWeight("flood", 1.0);
+        }
+        
+        UUID uuid = player.getUniqueId();
+        double before = spamScore.get(uuid);
+        double score = spamScore.addMessage(uuid, weight, config.getSpamScoreWeight("rate", 0.5));
+        String detail = "spam score " + String.format("%.1f", score);
+        
+        double mute = config.getSpamScoreMuteThreshold();
+        if (mute > 0 && score >= mute) {
+            spamScore.reset(uuid);
+            audit.record(AuditManager.Type.SPAM_SCORE_MUTE, player, null, message, detail);
+            muteManager.mutePlayer(uuid, config.getSpamScoreMuteSeconds());
+            return Verdict.SPAM_SCORE;
+        }
+        
+        // A rapid spam verdict has already kicked the player
+        double kick = config.getSpamScoreKickThreshold();
+        if (kick > 0 && score >= kick && verdict != Verdict.RAPID_SPAM) {
+            stats.increment(StatsManager.Counter.SPAM_KICKS);
+            audit.record(AuditManager.Type.SPAM_KICK, player, null, message, detail);
+            player.kick(serializer.deserialize(config.getSpamKickMessage()));
+            spamDetection.trackSpamKick(uuid);
+            return Verdict.SPAM_SCORE;
+        }
+        
+        if (verdict.isBlocked()) {
+            return verdict;
+        }
+        
+        double block = config.getSpamScoreBlockThreshold();
+        if (block > 0 && score >= block) {
+            stats.increment(StatsManager.Counter.BLOCKED_SPAM_SCORE);
+            audit.record(AuditManager.Type.SPAM_SCORE, player, null, message, detail);
+            player.sendMessage(serializer.deserialize(config.getSpamScoreBlockMessage()));
+            
+            if (config.isDebugEnabled()) {
+                plugin.getLogger().info("Blocked message from " + player.getName() + " (" + detail + "): " + message);
+            }
+            return Verdict.SPAM_SCORE;
+        }
+        
+        // Warn once on the way up rather than on every message above the line
+        double warn = config.getSpamScoreWarnThreshold();
+        if (warn > 0 && score >= warn && before < warn) {
+            stats.increment(StatsManager.Counter.SPAM_SCORE_WARNINGS);
+            player.sendMessage(serializer.deserialize(config.getSpamScoreWarnMessage()));
+        }
+        return verdict;
+    }
+    
+    /**
+     * Carry out a matched rule's action, returning whether the message is blocked
+     */
+    private boolean applyRule(Player player, String message, RuleManager.Rule rule) {
+        if (!rule.getMessage().isEmpty()) {
+            player.sendMessage(serializer.deserialize(rule.getMessage()));
+        }
+        
+        if (plugin.getConfigManager().isDebugEnabled()) {
+            plugin.getLogger().info("Rule '" + rule.getName() + "' matched message from " + player.getName()
+                    + " (" + rule.getAction().name().toLowerCase() + "): " + message);
+        }
+        
+        if (rule.getAction() == RuleManager.Action.WARN) {
+            return false;
+        }
+        
+        stats.increment(StatsManager.Counter.BLOCKED_RULE);
+        audit.record(AuditManager.Type.RULE, player, null, message, rule.getName());
+        
+        if (rule.getAction() == RuleManager.Action.KICK) {
+            player.kick(serializer.deserialize(rule.getMessage().isEmpty()
+                    ? plugin.getConfigManager().getSpamKickMessage() : rule.getMessage()));
+        } else if (rule.getAction() == RuleManager.Action.MUTE) {
+            muteManager.mutePlayer(player.getUniqueId(), rule.getMuteSeconds());
+        }
+        return true;
+    }
+    
+    /**
+     * Let a message through: hide it from players ignoring the sender,
+     * archive it and apply the color prefix
+     */
+    private void deliver(AsyncChatEvent event, Player player, String message, Verdict verdict) {
+        // Hide the message from players ignoring the sender
+        if (verdict != Verdict.BYPASS && plugin.getConfigManager().isIgnoreEnabled()) {
+            removeIgnoringViewers(event, player);
+        }
+        
+        // Lowercase shouting and cut floods down to the configured limits
+        if (verdict != Verdict.BYPASS) {
+            String shaped = plugin.getShapeFilterManager().rewrite(message);
+            if (shaped != message) {
+                stats.increment(StatsManager.Counter.REWRITTEN_SHAPE);
+                message = shaped;
+                event.message(Component.text(shaped));
+            }
         }
         
+        // Archive the line for /cm search
+        plugin.getChatArchiveManager().recordChat(player, message);
+        
         // Apply color prefix if enabled
         if (plugin.getConfigManager().isChatColorsEnabled()) {
             String colored = applyColorPrefix(message);
@@ -103,8 +417,11 @@ public class ChatListener implements Listener {
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
         
+        // Make the player resolvable by name for PMs
+        plugin.getPlayerNameIndex().add(player);
+        
         // Resume mute timer if player was muted
-        plugin.getMuteManager().handleReconnect(player.getUniqueId());
+        muteManager.handleReconnect(player.getUniqueId());
     }
     
     @EventHandler
@@ -112,16 +429,41 @@ public class ChatListener implements Listener {
         Player player = event.getPlayer();
         UUID uuid = player.getUniqueId();
         
+        // Drop the player from name lookups
+        plugin.getPlayerNameIndex().remove(player);
+        
         // Pause mute timer if player is muted
-        plugin.getMuteManager().handleDisconnect(uuid);
+        muteManager.handleDisconnect(uuid);
         
         // Clear spam detection data
-        plugin.getSpamDetectionManager().clearPlayerData(uuid);
+        spamDetection.clearPlayerData(uuid);
+        
+        // Clear spam score
+        spamScore.reset(uuid);
         
         // Clear PM conversation data
         plugin.getPrivateMessageManager().clearPlayerData(uuid);
     }
     
+    /**
+     * Remove every viewer who ignores the sender.
+     * Walks the sender's "ignored by" list rather than every viewer, so the
+     * usual case of nobody ignoring them costs a single map lookup.
+     */
+    private void removeIgnoringViewers(AsyncChatEvent event, Player sender) {
+        long[] ignoredBy = plugin.getIgnoreManager().getIgnoredBy(sender.getUniqueId());
+        if (ignoredBy.length == 0) {
+            return;
+        }
+        
+        for (int i = 0; i < ignoredBy.length / 2; i++) {
+            Player viewer = Bukkit.getPlayer(IgnoreManager.uuidAt(ignoredBy, i));
+            if (viewer != null) {
+                event.viewers().remove(viewer);
+            }
+        }
+    }
+    
     /**
      * Apply color prefix to message if it starts with the configured prefix
      */
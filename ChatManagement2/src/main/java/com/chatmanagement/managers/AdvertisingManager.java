@@ -0,0 +1,301 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.jfr.DetectorEvent;
+
+import java.util.Set;
+
+/**
+ * Finds links and server addresses in chat: URLs, bare domains, dots
+ * written out or spaced apart ("play dot example dot net", "example (.) net")
+ * and IPv4 addresses with or without a port. The message is read once, left
+ * to right, collecting runs of labels joined by dots; each run is checked
+ * against the allowed hosts when it ends.
+ */
+public class AdvertisingManager {
+    
+    /**
+     * Top-level domains that make a dotted word a domain. Links with a
+     * scheme or starting with www count whatever their TLD.
+     */
+    private static final Set<String> TLDS = Set.of(
+            "com", "net", "org", "gg", "io", "me", "co", "us", "uk", "eu", "de", "fr", "nl", "be", "es", "it",
+            "pl", "ru", "ua", "cz", "se", "no", "dk", "fi", "at", "ch", "pt", "ro", "hu", "tr", "gr", "ca",
+            "au", "nz", "br", "ar", "mx", "cl", "in", "jp", "kr", "cn", "tw", "hk", "sg", "id", "ph", "vn",
+            "za", "xyz", "club", "online", "site", "fun", "pro", "info", "biz", "cc", "ws", "ly", "to", "sh",
+            "tv", "fm", "gl", "pw", "top", "live", "network", "host", "games", "world", "space", "store",
+            "shop", "app", "dev", "tk", "ml", "ga", "cf", "su", "nu", "mc", "link", "red", "one", "lol"
+    );
+    
+    /**
+     * TLDs that are also everyday words or chat abbreviations ("yes.it works",
+     * "idk.lol", "no.no"). A host ending in one only counts as a link with
+     * stronger evidence: a scheme, www, a port or path, or a subdomain.
+     */
+    private static final Set<String> WORD_TLDS = Set.of(
+            "me", "co", "us", "it", "no", "in", "id", "to", "at", "be", "so", "gg", "sh", "tv", "fm", "gl",
+            "cc", "ws", "ly", "es", "de", "se", "nu", "su", "ml", "ga", "fun", "pro", "club", "online", "site",
+            "live", "world", "space", "store", "shop", "app", "dev", "top", "link", "red", "one", "lol",
+            "games", "host", "network", "info"
+    );
+    private static final int MAX_LABELS = 16;
+    
+    private final ChatManagement2 plugin;
+    private volatile DomainTrie allowed;
+    
+    public AdvertisingManager(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        this.allowed = new DomainTrie();
+    }
+    
+    /**
+     * Rebuild the allowed hosts from the config
+     */
+    public void reload() {
+        DomainTrie trie = new DomainTrie();
+        for (String entry : plugin.getConfigManager().getAdvertisingAllowedDomains()) {
+            trie.add(entry);
+        }
+        allowed = trie;
+        
+        if (plugin.getConfigManager().isDebugEnabled()) {
+            plugin.getLogger().info("Loaded " + trie.size() + " allowed domains");
+        }
+    }
+    
+    /**
+     * The first link or address in the message that is not allowed, or null
+     */
+    public String findAdvertisement(String message) {
+        if (!plugin.getConfigManager().isAdvertisingEnabled()) {
+            return null;
+        }
+        
+        DetectorEvent event = new DetectorEvent();
+        event.begin();
+        String found = new Scan(message, allowed, plugin.getConfigManager()).run();
+        event.finish("advertising", null, found != null ? "blocked" : "allowed", message.length());
+        return found;
+    }
+    
+    /**
+     * One pass over one message
+     */
+    private static final class Scan {
+        private final String text;
+        private final DomainTrie allowed;
+        private final boolean detectObfuscated;
+        private final boolean blockIps;
+        private final int[] starts = new int[MAX_LABELS];
+        private final int[] ends = new int[MAX_LABELS];
+        private int count;
+        private boolean explicit;
+        
+        Scan(String text, DomainTrie allowed, ConfigManager config) {
+            this.text = text;
+            this.allowed = allowed;
+            this.detectObfuscated = config.isAdvertisingObfuscationEnabled();
+            this.blockIps = config.shouldBlockIpAddresses();
+        }
+        
+        String run() {
+            int n = text.length();
+            int i = skipToLabel(0);
+            while (i < n) {
+                int end = i;
+                while (end < n && isLabelChar(text.charAt(end))) {
+                    end++;
+                }
+                
+                // A scheme marks what follows as a link, whatever its TLD
+                if (count == 0 && text.startsWith("://", end)
+                        && (isWord(i, end, "http") || isWord(i, end, "https"))) {
+                    explicit = true;
+                    i = skipToLabel(end + 3);
+                    continue;
+                }
+                addLabel(i, end);
+                
+                int next = dotAfter(end);
+                if (next >= 0) {
+                    i = next;
+                    continue;
+                }
+                
+                // The run has ended: take any port and path, then judge it
+                String port = null;
+                if (end + 1 < n && text.charAt(end) == ':' && Character.isDigit(text.charAt(end + 1))) {
+                    int portStart = end + 1;
+                    end = portStart;
+                    while (end < n && Character.isDigit(text.charAt(end))) {
+                        end++;
+                    }
+                    port = text.substring(portStart, end);
+                }
+                String path = "";
+                boolean hasPath = end < n && text.charAt(end) == '/';
+                if (hasPath) {
+                    int pathStart = end + 1;
+                    while (end < n && !Character.isWhitespace(text.charAt(end))) {
+                        end++;
+                    }
+                    path = text.substring(Math.min(pathStart, end), end);
+                }
+                
+                String found = judge(port, path, hasPath);
+                if (found != null) {
+                    return found;
+                }
+                count = 0;
+                explicit = false;
+                i = skipToLabel(end);
+            }
+            return null;
+        }
+        
+        private void addLabel(int start, int end) {
+            if (count == MAX_LABELS) {
+                // Only the labels nearest the TLD matter
+                System.arraycopy(starts, 1, starts, 0, MAX_LABELS - 1);
+                System.arraycopy(ends, 1, ends, 0, MAX_LABELS - 1);
+                count--;
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+        
+        /**
+         * Start of the next label if a dot joins it to the one ending at
+         * end, or -1. Besides a plain dot, a dot or the word "dot" set apart
+         * by spaces or brackets counts when obfuscation detection is on; a
+         * dot followed only by a space is just the end of a sentence.
+         */
+        private int dotAfter(int end) {
+            int n = text.length();
+            if (end + 1 < n && isDot(text.charAt(end)) && isLabelChar(text.charAt(end + 1))) {
+                return end + 1;
+            }
+            if (!detectObfuscated) {
+                return -1;
+            }
+            
+            int i = skipFiller(end);
+            boolean filled = i > end;
+            if (i < n && isDot(text.charAt(i))) {
+                i++;
+            } else if (filled && text.regionMatches(true, i, "dot", 0, 3)
+                    && (i + 3 == n || !isLabelChar(text.charAt(i + 3)))) {
+                i += 3;
+            } else {
+                return -1;
+            }
+            
+            if (!filled) {
+                return -1;
+            }
+            i = skipFiller(i);
+            return i < n && isLabelChar(text.charAt(i)) ? i : -1;
+        }
+        
+        /**
+         * The host or address of the current run if it is a link that is
+         * not allowed, or null
+         */
+        private String judge(String port, String path, boolean hasPath) {
+            if (count < 2) {
+                return null;
+            }
+            
+            String[] labels = new String[count];
+            for (int i = 0; i < count; i++) {
+                labels[i] = label(starts[i], ends[i]);
+            }
+            
+            boolean address = count == 4;
+            for (int i = 0; address && i < count; i++) {
+                address = isOctet(labels[i]);
+            }
+            
+            if (address) {
+                if (!blockIps) {
+                    return null;
+                }
+            } else {
+                String tld = labels[count - 1];
+                boolean link = explicit || labels[0].equals("www") || (TLDS.contains(tld)
+                        && (!WORD_TLDS.contains(tld) || count > 2 || port != null || hasPath));
+                if (!link || isOctet(tld)) {
+                    return null;
+                }
+            }
+            
+            if (allowed.isAllowed(labels, count, path)) {
+                return null;
+            }
+            String host = String.join(".", labels);
+            return port != null ? host + ":" + port : host;
+        }
+        
+        /**
+         * A label in lowercase ASCII where it can be, so fullwidth
+         * letters match the TLDs and allowed hosts
+         */
+        private String label(int start, int end) {
+            StringBuilder label = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c >= '\uFF01' && c <= '\uFF5E') {
+                    c = (char) (c - 0xFEE0);
+                }
+                label.append(Character.toLowerCase(c));
+            }
+            return label.toString();
+        }
+        
+        private int skipToLabel(int i) {
+            while (i < text.length() && !isLabelChar(text.charAt(i))) {
+                i++;
+            }
+            return i;
+        }
+        
+        /**
+         * Skip spaces and brackets around an obfuscated dot
+         */
+        private int skipFiller(int i) {
+            int limit = Math.min(text.length(), i + 4);
+            while (i < limit && " ([{}])".indexOf(text.charAt(i)) >= 0) {
+                i++;
+            }
+            return i;
+        }
+        
+        private boolean isWord(int start, int end, String word) {
+            return end - start == word.length() && text.regionMatches(true, start, word, 0, word.length());
+        }
+        
+        private static boolean isLabelChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '-';
+        }
+        
+        /**
+         * ASCII, ideographic, fullwidth and halfwidth full stops
+         */
+        private static boolean isDot(char c) {
+            return c == '.' || c == '。' || c == '．' || c == '｡';
+        }
+        
+        private static boolean isOctet(String label) {
+            if (label.isEmpty() || label.length() > 3) {
+                return false;
+            }
+            for (int i = 0; i < label.length(); i++) {
+                if (label.charAt(i) < '0' || label.charAt(i) > '9') {
+                    return false;
+                }
+            }
+            return Integer.parseInt(label) <= 255;
+        }
+    }
+}
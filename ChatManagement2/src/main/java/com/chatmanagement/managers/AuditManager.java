@@ -0,0 +1,312 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.storage.AuditLogWriter;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moderation and private message audit trail.
+ * Chat threads only push an event into a lock-free ring buffer; a single
+ * background thread drains it in batches, appends them to the audit log
+ * and forwards them to staff with social spy enabled.
+ */
+public class AuditManager {
+    
+    // Upper bound on events handled per writer pass
+    private static final int MAX_BATCH = 1024;
+    
+    private final ChatManagement2 plugin;
+    private final LegacyComponentSerializer serializer = LegacyComponentSerializer.legacyAmpersand();
+    private final Set<UUID> spies;
+    private volatile AuditRingBuffer<AuditEvent> buffer;
+    private AuditLogWriter writer;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile boolean restarting;
+    private volatile boolean logEnabled;
+    private volatile boolean logPrivateMessages;
+    
+    public enum Type {
+        PRIVATE_MESSAGE,
+        BLOCKED_WORD,
+        DUPLICATE,
+        ADVERTISING,
+        RULE,
+        SHAPE,
+        SPAM_SCORE,
+        SPAM_SCORE_MUTE,
+        PM_BLOCKED,
+        SPAM_KICK,
+        MUTE,
+        UNMUTE
+    }
+    
+    public AuditManager(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        this.spies = ConcurrentHashMap.newKeySet();
+    }
+    
+    /**
+     * Start the background writer using the current config
+     */
+    public void start() {
+        start(null);
+    }
+    
+    /**
+     * Start the writer, first handing it whatever is left in a previous buffer
+     */
+    private void start(AuditRingBuffer<AuditEvent> carryOver) {
+        ConfigManager config = plugin.getConfigManager();
+        logEnabled = config.isAuditLogEnabled();
+        logPrivateMessages = config.shouldAuditPrivateMessages();
+        buffer = new AuditRingBuffer<>(config.getAuditBufferSize());
+        writer = logEnabled
+                ? new AuditLogWriter(plugin, config.getAuditMaxFileSizeMb() * 1024L * 1024L, config.getAuditRetentionDays())
+                : null;
+        
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(10, config.getAuditFlushIntervalMillis()));
+        running = true;
+        thread = new Thread(() -> run(intervalNanos, carryOver), "ChatManagement2-Audit-Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Write out everything still queued and stop the writer thread
+     */
+    public void shutdown() {
+        stopWriter();
+    }
+    
+    /**
+     * Stop the writer thread, returning whether it finished
+     */
+    private boolean stopWriter() {
+        if (thread == null) {
+            return true;
+        }
+        
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        boolean finished = !thread.isAlive();
+        if (!finished) {
+            plugin.getLogger().warning("Audit writer did not finish, " + buffer.size() + " events were not written");
+        }
+        thread = null;
+        return finished;
+    }
+    
+    /**
+     * Restart the writer so changed settings take effect. Events recorded
+     * while it restarts stay in the old buffer and the new writer drains
+     * them before its own.
+     */
+    public void reload() {
+        AuditRingBuffer<AuditEvent> previous = buffer;
+        restarting = true;
+        try {
+            // A writer that is still running keeps the old buffer to itself
+            boolean finished = stopWriter();
+            start(finished ? previous : null);
+        } finally {
+            restarting = false;
+        }
+    }
+    
+    /**
+     * Record an event. Never blocks; the event is dropped if the buffer is full.
+     */
+    public void record(Type type, Player actor, Player target, String message, String detail) {
+        record(type, actor != null ? actor.getUniqueId() : null, actor != null ? actor.getName() : null,
+                target != null ? target.getUniqueId() : null, target != null ? target.getName() : null, message, detail);
+    }
+    
+    public void record(Type type, UUID actor, String actorName, UUID target, String targetName, String message, String detail) {
+        AuditRingBuffer<AuditEvent> current = buffer;
+        if (current == null || !(running || restarting)) {
+            return;
+        }
+        
+        // Skip the allocation entirely when nothing would consume the event
+        boolean logged = logEnabled && (type != Type.PRIVATE_MESSAGE || logPrivateMessages);
+        if (!logged && spies.isEmpty()) {
+            return;
+        }
+        
+        current.offer(new AuditEvent(System.currentTimeMillis(), type, actor, actorName, target, targetName, message, detail));
+    }
+    
+    /**
+     * Toggle social spy for a player. Returns true if it is now enabled.
+     */
+    public boolean toggleSpy(UUID uuid) {
+        if (spies.remove(uuid)) {
+            return false;
+        }
+        spies.add(uuid);
+        return true;
+    }
+    
+    public boolean isSpying(UUID uuid) {
+        return spies.contains(uuid);
+    }
+    
+    /**
+     * Events waiting to be written
+     */
+    public int getQueueSize() {
+        AuditRingBuffer<AuditEvent> current = buffer;
+        return current != null ? current.size() : 0;
+    }
+    
+    /**
+     * Events dropped because the buffer was full
+     */
+    public long getDroppedEvents() {
+        AuditRingBuffer<AuditEvent> current = buffer;
+        return current != null ? current.getDropped() : 0;
+    }
+    
+    private void run(long intervalNanos, AuditRingBuffer<AuditEvent> carryOver) {
+        AuditRingBuffer<AuditEvent> source = buffer;
+        AuditLogWriter target = writer;
+        List<AuditEvent> batch = new ArrayList<>(MAX_BATCH);
+        List<AuditEvent> logged = new ArrayList<>(MAX_BATCH);
+        
+        while (true) {
+            boolean stopping = !running;
+            
+            AuditEvent event;
+            while (batch.size() < MAX_BATCH && (event = next(carryOver, source)) != null) {
+                batch.add(event);
+            }
+            
+            if (!batch.isEmpty()) {
+                try {
+                    if (target != null) {
+                        for (AuditEvent e : batch) {
+                            if (e.type != Type.PRIVATE_MESSAGE || logPrivateMessages) {
+                                logged.add(e);
+                            }
+                        }
+                        target.write(logged);
+                    }
+                    notifySpies(batch);
+                } catch (RuntimeException e) {
+                    plugin.getLogger().severe("Error handling audit events: " + e.getMessage());
+                }
+                
+                boolean full = batch.size() == MAX_BATCH;
+                batch.clear();
+                logged.clear();
+                if (full) {
+                    continue;
+                }
+            }
+            
+            if (stopping) {
+                break;
+            }
+            // Let events accumulate so each flush covers a whole batch
+            LockSupport.parkNanos(this, intervalNanos);
+        }
+        
+        if (target != null) {
+            target.close();
+        }
+    }
+    
+    /**
+     * The next event, taking any left over from before a reload first
+     */
+    private static AuditEvent next(AuditRingBuffer<AuditEvent> carryOver, AuditRingBuffer<AuditEvent> source) {
+        AuditEvent event = carryOver != null ? carryOver.poll() : null;
+        return event != null ? event : source.poll();
+    }
+    
+    /**
+     * Forward events to online staff with social spy enabled
+     */
+    private void notifySpies(List<AuditEvent> batch) {
+        if (spies.isEmpty()) {
+            return;
+        }
+        
+        ConfigManager config = plugin.getConfigManager();
+        String permission = config.getSocialSpyPermission();
+        
+        for (UUID uuid : spies) {
+            Player spy = Bukkit.getPlayer(uuid);
+            if (spy == null || !spy.hasPermission(permission)) {
+                continue;
+            }
+            
+            for (AuditEvent event : batch) {
+                // Staff already see their own conversations
+                if (uuid.equals(event.actor) || uuid.equals(event.target)) {
+                    continue;
+                }
+                
+                String format = event.type == Type.PRIVATE_MESSAGE
+                        ? config.getSocialSpyFormat()
+                        : config.getSocialSpyModerationFormat();
+                spy.sendMessage(serializer.deserialize(format
+                        .replace("{type}", event.type.name().toLowerCase().replace('_', ' '))
+                        .replace("{sender}", displayName(event.actor, event.actorName))
+                        .replace("{receiver}", displayName(event.target, event.targetName))
+                        .replace("{detail}", event.detail != null ? event.detail : "")
+                        .replace("{message}", event.message != null ? event.message : "")));
+            }
+        }
+    }
+    
+    private static String displayName(UUID uuid, String name) {
+        if (name != null) {
+            return name;
+        }
+        return uuid != null ? uuid.toString() : "-";
+    }
+    
+    /**
+     * A single audited action
+     */
+    public static class AuditEvent {
+        public final long timestamp;
+        public final Type type;
+        public final UUID actor;
+        public final String actorName;
+        public final UUID target;
+        public final String targetName;
+        public final String message;
+        public final String detail;
+        
+        public AuditEvent(long timestamp, Type type, UUID actor, String actorName, UUID target, String targetName,
+                          String message, String detail) {
+            this.timestamp = timestamp;
+            this.type = type;
+            this.actor = actor;
+            this.actorName = actorName;
+            this.target = target;
+            this.targetName = targetName;
+            this.message = message;
+            this.detail = detail;
+        }
+    }
+}
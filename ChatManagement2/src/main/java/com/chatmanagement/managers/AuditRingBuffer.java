@@ -0,0 +1,95 @@
+package com.chatmanagement.managers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded lock-free queue with many producers and a single consumer.
+ * Each slot carries a sequence number, so producers claim a slot with one
+ * CAS and publish it by advancing the sequence; nothing ever blocks.
+ * When the buffer is full the event is dropped and counted instead of
+ * making a chat thread wait for the disk.
+ */
+class AuditRingBuffer<T> {
+    
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private final LongAdder dropped;
+    private volatile long head; // Only advanced by the consumer
+    
+    AuditRingBuffer(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.slots = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.tail = new AtomicLong();
+        this.dropped = new LongAdder();
+        
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+    
+    /**
+     * Add an element from any thread. Returns false if the buffer was full.
+     */
+    boolean offer(T element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = element;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.increment();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+    
+    /**
+     * Take the oldest element, or null if none is ready. Consumer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        
+        T element = (T) slots[index];
+        slots[index] = null;
+        sequences.lazySet(index, head + slots.length);
+        head++;
+        return element;
+    }
+    
+    /**
+     * Approximate number of queued elements
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+    
+    int capacity() {
+        return slots.length;
+    }
+    
+    /**
+     * Elements dropped because the buffer was full
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+}
@@ -0,0 +1,59 @@
+package com.chatmanagement.managers;
+
+import java.util.Arrays;
+
+/**
+ * Candidate similarity engine for shadow mode.
+ * Scores two messages by the share of character pairs they have in common
+ * (the Dice coefficient), which is linear after sorting and ignores word
+ * order, unlike edit distance.
+ */
+public class BigramSimilarityEngine implements SimilarityEngine {
+    
+    private final int threshold;
+    
+    public BigramSimilarityEngine(int threshold) {
+        this.threshold = threshold;
+    }
+    
+    @Override
+    public boolean isSimilar(String message, String previous) {
+        if (message.equals(previous)) {
+            return true;
+        }
+        if (message.length() < 2 || previous.length() < 2) {
+            return false;
+        }
+        
+        int[] a = bigrams(message);
+        int[] b = bigrams(previous);
+        
+        // Count pairs present in both, walking the sorted arrays together
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        
+        int similarity = 200 * shared / (a.length + b.length);
+        return similarity >= threshold;
+    }
+    
+    private static int[] bigrams(String text) {
+        int[] bigrams = new int[text.length() - 1];
+        for (int i = 0; i < bigrams.length; i++) {
+            bigrams[i] = (text.charAt(i) << 16) | text.charAt(i + 1);
+        }
+        Arrays.sort(bigrams);
+        return bigrams;
+    }
+}
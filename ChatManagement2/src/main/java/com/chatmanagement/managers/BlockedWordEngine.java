@@ -0,0 +1,10 @@
+package com.chatmanagement.managers;
+
+/**
+ * A way of deciding whether a chat message contains a blocked word.
+ * Implementations must be safe to call from several threads at once.
+ */
+public interface BlockedWordEngine {
+    
+    boolean containsBlockedWord(String message);
+}
@@ -1,6 +1,7 @@
 package com.chatmanagement.managers;
 
 import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.jfr.DetectorEvent;
 
 import java.util.*;
 import java.util.regex.Pattern;
@@ -19,7 +20,8 @@ public class BlockedWordsManager {
         this.blockedPatterns = new HashSet<>();
         
         initializeSubstitutions();
-        reload();
+        
+        // Patterns are compiled by the plugin's startup task, see reload()
     }
     
     public void reload() {
@@ -67,6 +69,14 @@ public class BlockedWordsManager {
      * Returns true if message should be blocked
      */
     public boolean containsBlockedWord(String message) {
+        DetectorEvent event = new DetectorEvent();
+        event.begin();
+        boolean blocked = matchesBlockedWord(message);
+        event.finish("blocked-words", null, blocked ? "blocked" : "allowed", message.length());
+        return blocked;
+    }
+    
+    boolean matchesBlockedWord(String message) {
         if (!plugin.getConfigManager().isBlockedWordsEnabled()) {
             return false;
         }
@@ -0,0 +1,85 @@
+package com.chatmanagement.managers;
+
+/**
+ * Candidate similarity engine for shadow mode.
+ * Gives the same answers as SpamDetectionManager.isSimilar, but keeps only
+ * two rows of the Levenshtein table and stops as soon as every cell in a row
+ * is over the distance the threshold allows.
+ */
+public class BoundedLevenshteinEngine implements SimilarityEngine {
+    
+    private final int threshold;
+    
+    public BoundedLevenshteinEngine(int threshold) {
+        this.threshold = threshold;
+    }
+    
+    @Override
+    public boolean isSimilar(String message, String previous) {
+        if (message.equals(previous)) {
+            return true;
+        }
+        
+        int maxLength = Math.max(message.length(), previous.length());
+        if (Math.abs(message.length() - previous.length()) > maxLength * 0.3) {
+            return false;
+        }
+        
+        int limit = maxDistance(maxLength);
+        return limit >= 0 && distanceWithin(message, previous, limit);
+    }
+    
+    /**
+     * Largest edit distance that still counts as similar, using the same
+     * rounding as the active check
+     */
+    private int maxDistance(int maxLength) {
+        int limit = maxLength * (100 - threshold) / 100;
+        while (limit < maxLength && similarity(limit + 1, maxLength) >= threshold) {
+            limit++;
+        }
+        while (limit >= 0 && similarity(limit, maxLength) < threshold) {
+            limit--;
+        }
+        return limit;
+    }
+    
+    private static int similarity(int distance, int maxLength) {
+        return (int) (((double) (maxLength - distance) / maxLength) * 100);
+    }
+    
+    /**
+     * Whether the Levenshtein distance between the strings is at most limit
+     */
+    private static boolean distanceWithin(String s1, String s2, int limit) {
+        int len1 = s1.length();
+        int len2 = s2.length();
+        int[] previous = new int[len2 + 1];
+        int[] current = new int[len2 + 1];
+        
+        for (int j = 0; j <= len2; j++) {
+            previous[j] = j;
+        }
+        
+        for (int i = 1; i <= len1; i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= len2; j++) {
+                int cost = s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            
+            // Distances never shrink from one row to the next
+            if (rowMin > limit) {
+                return false;
+            }
+            
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        
+        return previous[len2] <= limit;
+    }
+}
@@ -0,0 +1,404 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.storage.ChatArchiveSegment;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Searchable archive of public chat and private messages.
+ * Lines are queued from the chat thread into a lock-free ring buffer and a
+ * background thread appends them to one segment file per hour (UTC).
+ * Searches run on the async scheduler and use each segment's index to skip
+ * hours that cannot match.
+ */
+public class ChatArchiveManager {
+    
+    private static final int MAX_BATCH = 1024;
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final String PREFIX = "chat-";
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneOffset.UTC);
+    
+    private final ChatManagement2 plugin;
+    private final LegacyComponentSerializer serializer = LegacyComponentSerializer.legacyAmpersand();
+    private final Path directory;
+    private final Object indexLock = new Object();
+    private AuditRingBuffer<ArchiveEntry> buffer;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile boolean includePrivateMessages;
+    private volatile long activeHour = -1;
+    
+    public ChatArchiveManager(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), "archive").toPath();
+    }
+    
+    /**
+     * Start the archive writer if the archive is enabled
+     */
+    public void start() {
+        ConfigManager config = plugin.getConfigManager();
+        if (!config.isChatArchiveEnabled()) {
+            return;
+        }
+        
+        includePrivateMessages = config.shouldArchivePrivateMessages();
+        buffer = new AuditRingBuffer<>(config.getChatArchiveBufferSize());
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(10, config.getChatArchiveFlushIntervalMillis()));
+        int retentionDays = config.getChatArchiveRetentionDays();
+        
+        running = true;
+        thread = new Thread(() -> run(intervalNanos, retentionDays), "ChatManagement2-Archive-Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Write out queued lines, close the current segment and stop the writer
+     */
+    public void shutdown() {
+        if (thread == null) {
+            return;
+        }
+        
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        if (thread.isAlive()) {
+            plugin.getLogger().warning("Chat archive writer did not finish, " + buffer.size() + " lines were not written");
+        }
+        thread = null;
+        buffer = null;
+    }
+    
+    public void reload() {
+        shutdown();
+        start();
+    }
+    
+    /**
+     * Archive a public chat line
+     */
+    public void recordChat(Player sender, String message) {
+        offer(new ArchiveEntry(System.currentTimeMillis(), ArchiveEntry.CHAT,
+                sender.getUniqueId(), sender.getName(), null, null, message));
+    }
+    
+    /**
+     * Archive a delivered private message
+     */
+    public void recordPrivateMessage(Player sender, Player receiver, String message) {
+        if (!includePrivateMessages) {
+            return;
+        }
+        offer(new ArchiveEntry(System.currentTimeMillis(), ArchiveEntry.PRIVATE_MESSAGE,
+                sender.getUniqueId(), sender.getName(), receiver.getUniqueId(), receiver.getName(), message));
+    }
+    
+    private void offer(ArchiveEntry entry) {
+        AuditRingBuffer<ArchiveEntry> current = buffer;
+        if (current != null && running) {
+            current.offer(entry);
+        }
+    }
+    
+    /**
+     * Lines waiting to be written
+     */
+    public int getQueueSize() {
+        AuditRingBuffer<ArchiveEntry> current = buffer;
+        return current != null ? current.size() : 0;
+    }
+    
+    /**
+     * Lines dropped because the buffer was full
+     */
+    public long getDroppedLines() {
+        AuditRingBuffer<ArchiveEntry> current = buffer;
+        return current != null ? current.getDropped() : 0;
+    }
+    
+    private void run(long intervalNanos, int retentionDays) {
+        AuditRingBuffer<ArchiveEntry> source = buffer;
+        ChatArchiveSegment segment = null;
+        long segmentHour = -1;
+        
+        while (true) {
+            boolean stopping = !running;
+            int handled = 0;
+            
+            try {
+                ArchiveEntry entry;
+                while (handled < MAX_BATCH && (entry = source.poll()) != null) {
+                    long hour = entry.timestamp / HOUR_MILLIS;
+                    if (segment == null || hour != segmentHour) {
+                        if (segment != null) {
+                            segment.close();
+                        }
+                        Files.createDirectories(directory);
+                        
+                        // Opening drops the hour's index; mark it active first, under the
+                        // lock searches load indexes with, so none rebuilds a stale one
+                        synchronized (indexLock) {
+                            activeHour = hour;
+                            segment = ChatArchiveSegment.open(segmentFile(hour), hour);
+                        }
+                        segmentHour = hour;
+                        deleteExpired(retentionDays);
+                    }
+                    segment.append(entry);
+                    handled++;
+                }
+                
+                if (segment != null && handled > 0) {
+                    segment.flush();
+                }
+            } catch (IOException e) {
+                plugin.getLogger().severe("Could not write chat archive: " + e.getMessage());
+                segment = closeQuietly(segment);
+            }
+            
+            if (handled == MAX_BATCH) {
+                continue;
+            }
+            if (stopping) {
+                break;
+            }
+            LockSupport.parkNanos(this, intervalNanos);
+        }
+        
+        closeQuietly(segment);
+        activeHour = -1;
+    }
+    
+    private ChatArchiveSegment closeQuietly(ChatArchiveSegment segment) {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                plugin.getLogger().severe("Could not close chat archive segment: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Remove segments older than the retention period
+     */
+    private void deleteExpired(int retentionDays) {
+        if (retentionDays <= 0) {
+            return;
+        }
+        
+        long cutoffHour = (System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays)) / HOUR_MILLIS;
+        for (Long hour : listSegments().headMap(cutoffHour).keySet()) {
+            Path data = segmentFile(hour);
+            try {
+                Files.deleteIfExists(ChatArchiveSegment.indexFile(data));
+                Files.deleteIfExists(data);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Could not delete old chat archive " + data.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Search the archive in the background and stream matches to the sender, newest first.
+     * Give either a player or text; text matches lines containing every word.
+     */
+    public void search(CommandSender sender, UUID player, String playerName, String text, long since) {
+        plugin.getServer().getAsyncScheduler().runNow(plugin, (task) -> {
+            try {
+                runSearch(sender, player, playerName, text, since);
+            } catch (RuntimeException e) {
+                sender.sendMessage(serializer.deserialize("&cSearch failed: " + e.getMessage()));
+                plugin.getLogger().severe("Error searching chat archive: " + e.getMessage());
+            }
+        });
+    }
+    
+    private void runSearch(CommandSender sender, UUID player, String playerName, String text, long since) {
+        long start = System.nanoTime();
+        int limit = plugin.getConfigManager().getChatArchiveMaxResults();
+        
+        Set<Long> queryTokens = new HashSet<>();
+        if (text != null) {
+            ChatArchiveSegment.tokenize(text, queryTokens::add);
+            if (queryTokens.isEmpty()) {
+                sender.sendMessage(serializer.deserialize("&cSearch text must contain at least one word of 2 or more letters."));
+                return;
+            }
+        }
+        
+        sender.sendMessage(serializer.deserialize("&7Searching chat archive for &e"
+                + (player != null ? playerName : "\"" + text + "\"") + "&7..."));
+        
+        TreeMap<Long, Path> segments = listSegments();
+        int searched = 0;
+        int skipped = 0;
+        int found = 0;
+        
+        for (Long hour : segments.descendingKeySet()) {
+            if ((hour + 1) * HOUR_MILLIS <= since || found >= limit) {
+                break;
+            }
+            
+            Path data = segments.get(hour);
+            List<ArchiveEntry> matches = new ArrayList<>();
+            try {
+                int[] offsets = null;
+                
+                // The hour being written has no index yet, so it is always scanned
+                ChatArchiveSegment.Index index = null;
+                synchronized (indexLock) {
+                    if (hour != activeHour) {
+                        index = ChatArchiveSegment.loadIndex(data);
+                    }
+                }
+                if (index != null) {
+                    if (player != null) {
+                        offsets = index.getOffsets(player);
+                        if (offsets == null) {
+                            skipped++;
+                            continue;
+                        }
+                    } else if (!mightContainAll(index, queryTokens)) {
+                        skipped++;
+                        continue;
+                    }
+                }
+                
+                searched++;
+                ChatArchiveSegment.read(data, offsets, entry -> {
+                    if (entry.timestamp >= since && matches(entry, player, queryTokens)) {
+                        matches.add(entry);
+                    }
+                });
+            } catch (IOException e) {
+                plugin.getLogger().warning("Could not search chat archive " + data.getFileName() + ": " + e.getMessage());
+                continue;
+            }
+            
+            for (int i = matches.size() - 1; i >= 0 && found < limit; i--, found++) {
+                sender.sendMessage(format(matches.get(i)));
+            }
+        }
+        
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        sender.sendMessage(serializer.deserialize("&7Found &e" + found + (found >= limit ? "+" : "") + " &7lines in &e"
+                + searched + " &7hours (&e" + skipped + " &7skipped by index, " + millis + " ms)"));
+    }
+    
+    private static boolean mightContainAll(ChatArchiveSegment.Index index, Set<Long> tokens) {
+        for (long token : tokens) {
+            if (!index.mightContain(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean matches(ArchiveEntry entry, UUID player, Set<Long> queryTokens) {
+        if (player != null) {
+            return player.equals(entry.sender) || player.equals(entry.receiver);
+        }
+        
+        Set<Long> words = new HashSet<>();
+        ChatArchiveSegment.tokenize(entry.message, words::add);
+        return words.containsAll(queryTokens);
+    }
+    
+    private Component format(ArchiveEntry entry) {
+        String time = TIME_FORMAT.format(Instant.ofEpochMilli(entry.timestamp));
+        String prefix = entry.kind == ArchiveEntry.PRIVATE_MESSAGE
+                ? "&8[" + time + "] &d" + entry.senderName + " &8-> &d" + entry.receiverName + "&8: &7"
+                : "&8[" + time + "] &e" + entry.senderName + "&8: &f";
+        // Archived text is shown as written, not parsed for color codes
+        return serializer.deserialize(prefix).append(Component.text(entry.message));
+    }
+    
+    /**
+     * Segment files by epoch hour
+     */
+    private TreeMap<Long, Path> listSegments() {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + ChatArchiveSegment.DATA_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String stamp = name.substring(PREFIX.length(), name.length() - ChatArchiveSegment.DATA_SUFFIX.length());
+                try {
+                    long hour = LocalDateTime.parse(stamp, HOUR_FORMAT).toEpochSecond(ZoneOffset.UTC) / 3600;
+                    segments.put(hour, file);
+                } catch (DateTimeParseException ignored) {
+                    // Not one of ours
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not list chat archive: " + e.getMessage());
+        }
+        return segments;
+    }
+    
+    private Path segmentFile(long hour) {
+        String stamp = HOUR_FORMAT.format(LocalDateTime.ofEpochSecond(hour * 3600, 0, ZoneOffset.UTC));
+        return directory.resolve(PREFIX + stamp + ChatArchiveSegment.DATA_SUFFIX);
+    }
+    
+    /**
+     * A single archived line
+     */
+    public static class ArchiveEntry {
+        public static final byte CHAT = 0;
+        public static final byte PRIVATE_MESSAGE = 1;
+        
+        public final long timestamp;
+        public final byte kind;
+        public final UUID sender;
+        public final String senderName;
+        public final UUID receiver;
+        public final String receiverName;
+        public final String message;
+        
+        public ArchiveEntry(long timestamp, byte kind, UUID sender, String senderName, UUID receiver, String receiverName, String message) {
+            this.timestamp = timestamp;
+            this.kind = kind;
+            this.sender = sender;
+            this.senderName = senderName;
+            this.receiver = receiver;
+            this.receiverName = receiverName;
+            this.message = message;
+        }
+    }
+}
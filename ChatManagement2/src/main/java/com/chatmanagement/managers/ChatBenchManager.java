@@ -0,0 +1,427 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.listeners.ChatListener;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Synthetic chat load for /cm bench.
+ * Fake player sessions send a configurable mix of clean, spam and obfuscated
+ * messages at a fixed rate from several threads, through the same checks as
+ * real chat. Each run keeps its own stats, spam history and in-memory mutes,
+ * and has no audit log, so nothing it does reaches storage, staff or
+ * /cm stats. No events are fired and no packets are sent.
+ */
+public class ChatBenchManager {
+    
+    private static final String[] WORDS = {
+            "hey", "anyone", "want", "to", "trade", "diamonds", "for", "iron", "lol", "where", "is", "spawn",
+            "how", "do", "i", "get", "back", "home", "the", "server", "lagging", "again", "gg", "nice",
+            "build", "can", "someone", "help", "me", "with", "this", "farm", "thanks", "brb", "dinner",
+            "who", "wants", "team", "up", "nether", "fortress", "found", "village", "near", "base", "selling"
+    };
+    private static final String[] ADVERTS = {
+            "JOIN MY SERVER best pvp no lag!!!",
+            "selling cheap ranks pm me now",
+            "free diamonds at my base come quick"
+    };
+    private static final String LEET_FROM = "aeiost";
+    private static final String LEET_TO = "@310$7";
+    
+    private final ChatManagement2 plugin;
+    private final LegacyComponentSerializer serializer = LegacyComponentSerializer.legacyAmpersand();
+    private volatile Run current;
+    
+    public ChatBenchManager(ChatManagement2 plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * One fake player, only ever used by the thread that owns it
+     */
+    private static final class Session {
+        final Player player;
+        String lastMessage;
+        boolean kicked;
+        
+        Session(UUID uuid, String name) {
+            this.player = fakePlayer(uuid, name, () -> kicked = true);
+        }
+    }
+    
+    /**
+     * State of a single benchmark run
+     */
+    private static final class Run {
+        final StatsManager stats = new StatsManager();
+        final LatencyHistogram responseTimes = new LatencyHistogram();
+        final AtomicLongArray verdicts = new AtomicLongArray(ChatListener.Verdict.values().length);
+        final MuteManager muteManager;
+        final SpamDetectionManager spamDetection;
+        final SpamScoreManager spamScore;
+        final ChatListener listener;
+        final List<Thread> workers = new ArrayList<>();
+        Thread coordinator;
+        volatile boolean stopped;
+        volatile boolean stoppedEarly;
+        
+        Run(ChatManagement2 plugin) {
+            // Never started, so every audit record is dropped
+            AuditManager audit = new AuditManager(plugin);
+            this.muteManager = new MuteManager(plugin, stats, audit, false);
+            this.spamDetection = new SpamDetectionManager(plugin, muteManager);
+            this.spamScore = new SpamScoreManager(plugin);
+            this.listener = new ChatListener(plugin, stats, audit, muteManager, spamDetection, spamScore, null);
+        }
+    }
+    
+    public boolean isRunning() {
+        return current != null;
+    }
+    
+    /**
+     * Start a run in the background and report to the sender when it ends.
+     * Returns false if a run is already in progress.
+     */
+    public synchronized boolean start(CommandSender sender, int rate, int seconds, int threads) {
+        if (current != null) {
+            return false;
+        }
+        
+        ConfigManager config = plugin.getConfigManager();
+        int players = Math.max(1, config.getBenchPlayers());
+        threads = Math.min(threads, players);
+        
+        Run run = new Run(plugin);
+        List<List<Session>> sessionsByThread = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            sessionsByThread.add(new ArrayList<>());
+        }
+        for (int i = 0; i < players; i++) {
+            String name = "bench-" + i;
+            UUID uuid = UUID.nameUUIDFromBytes(("ChatManagement2-bench:" + i).getBytes(StandardCharsets.UTF_8));
+            sessionsByThread.get(i % threads).add(new Session(uuid, name));
+        }
+        
+        current = run;
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(seconds);
+        for (int i = 0; i < threads; i++) {
+            double threadRate = (double) rate / threads;
+            List<Session> sessions = sessionsByThread.get(i);
+            Thread worker = new Thread(() -> runWorker(run, sessions, threadRate, startNanos, endNanos),
+                    "ChatManagement2-Bench-" + i);
+            worker.setDaemon(true);
+            run.workers.add(worker);
+        }
+        
+        run.coordinator = new Thread(() -> coordinate(run, sender, rate, players, startNanos),
+                "ChatManagement2-Bench");
+        run.coordinator.setDaemon(true);
+        run.coordinator.start();
+        return true;
+    }
+    
+    /**
+     * Ask the current run to stop early; it still reports what it measured
+     */
+    public boolean stop() {
+        Run run = current;
+        if (run == null) {
+            return false;
+        }
+        run.stoppedEarly = true;
+        run.stopped = true;
+        return true;
+    }
+    
+    /**
+     * Stop the current run and wait for its threads
+     */
+    public void shutdown() {
+        Run run = current;
+        if (run == null) {
+            return;
+        }
+        
+        run.stopped = true;
+        try {
+            run.coordinator.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Start the workers, sample tick time while they run, then report
+     */
+    private void coordinate(Run run, CommandSender sender, int rate, int players, long startNanos) {
+        double tickBefore = sampleTickMillis();
+        double tickPeak = tickBefore;
+        double tickSum = 0;
+        int tickSamples = 0;
+        
+        try {
+            for (Thread worker : run.workers) {
+                worker.start();
+            }
+            
+            for (Thread worker : run.workers) {
+                while (worker.isAlive()) {
+                    worker.join(1000);
+                    double tick = sampleTickMillis();
+                    if (tick >= 0) {
+                        tickPeak = Math.max(tickPeak, tick);
+                        tickSum += tick;
+                        tickSamples++;
+                    }
+                }
+            }
+            
+            long elapsedNanos = System.nanoTime() - startNanos;
+            double tickAverage = tickSamples > 0 ? tickSum / tickSamples : -1;
+            report(run, sender, rate, players, elapsedNanos, tickBefore, tickAverage, tickPeak);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            plugin.getLogger().severe("Chat benchmark failed: " + e.getMessage());
+            sender.sendMessage(serializer.deserialize("&cChat benchmark failed: " + e.getMessage()));
+        } finally {
+            run.stopped = true;
+            current = null;
+        }
+    }
+    
+    /**
+     * Send messages from this thread's sessions on a fixed schedule until
+     * the end time. Response time is measured from when a message was due,
+     * so time spent behind schedule shows up in the tail.
+     */
+    private void runWorker(Run run, List<Session> sessions, double rate, long startNanos, long endNanos) {
+        try {
+            sendMessages(run, sessions, rate, startNanos, endNanos);
+        } catch (Exception e) {
+            plugin.getLogger().severe("Chat benchmark worker failed: " + e.getMessage());
+            run.stopped = true;
+        }
+    }
+    
+    private void sendMessages(Run run, List<Session> sessions, double rate, long startNanos, long endNanos) {
+        long interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ConfigManager config = plugin.getConfigManager();
+        List<String> blockedWords = config.getBlockedWords();
+        int clean = Math.max(0, config.getBenchCleanPercent());
+        int spam = Math.max(0, config.getBenchSpamPercent());
+        int obfuscated = blockedWords.isEmpty() ? 0 : Math.max(0, config.getBenchObfuscatedPercent());
+        int total = Math.max(1, clean + spam + obfuscated);
+        
+        // Start each thread at a random point in its first interval so they don't fire in lockstep
+        long due = startNanos + random.nextLong(interval);
+        int next = 0;
+        
+        while (!run.stopped && due < endNanos) {
+            long now = System.nanoTime();
+            if (now < due) {
+                LockSupport.parkNanos(due - now);
+                continue;
+            }
+            
+            Session session = sessions.get(next);
+            next = (next + 1) % sessions.size();
+            
+            int pick = random.nextInt(total);
+            String message;
+            if (pick < clean) {
+                message = cleanMessage(random);
+            } else if (pick < clean + spam) {
+                message = spamMessage(session, random);
+            } else {
+                message = obfuscatedMessage(blockedWords.get(random.nextInt(blockedWords.size())), random);
+            }
+            
+            // A kicked session rejoins with its next message
+            if (session.kicked) {
+                session.kicked = false;
+                run.muteManager.handleReconnect(session.player.getUniqueId());
+            }
+            
+            long start = System.nanoTime();
+            run.stats.increment(StatsManager.Counter.CHAT_MESSAGES);
+            ChatListener.Verdict verdict = run.listener.moderate(session.player, message);
+            run.stats.recordSince(StatsManager.Stage.CHAT_TOTAL, start);
+            run.responseTimes.record(System.nanoTime() - due);
+            run.verdicts.incrementAndGet(verdict.ordinal());
+            
+            // Same cleanup as the quit event that follows a kick, whichever
+            // check kicked them (rapid spam, spam score or a kick rule)
+            if (session.kicked) {
+                UUID uuid = session.player.getUniqueId();
+                run.muteManager.handleDisconnect(uuid);
+                run.spamDetection.clearPlayerData(uuid);
+                run.spamScore.reset(uuid);
+            }
+            
+            session.lastMessage = message;
+            due += interval;
+        }
+    }
+    
+    private void report(Run run, CommandSender sender, int rate, int players, long elapsedNanos,
+                        double tickBefore, double tickAverage, double tickPeak) {
+        LatencyHistogram service = run.stats.getHistogram(StatsManager.Stage.CHAT_TOTAL);
+        long sent = service.getCount();
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        
+        sender.sendMessage(serializer.deserialize("&8&m---------------&r &aChatManagement Bench &8&m---------------"));
+        sender.sendMessage(serializer.deserialize("&7" + sent + " messages from " + players + " fake players on "
+                + run.workers.size() + " threads in " + String.format("%.1f", seconds) + "s"
+                + (run.stoppedEarly ? " &e(stopped early)" : "")));
+        sender.sendMessage(serializer.deserialize("&aThroughput: &f" + String.format("%.0f", sent / seconds)
+                + " msg/s &7(target " + rate + ")"));
+        sender.sendMessage(serializer.deserialize("&aCheck time: &f"
+                + LatencyHistogram.formatNanos(service.getPercentile(50)) + " &7/ &f"
+                + LatencyHistogram.formatNanos(service.getPercentile(99)) + " &7/ &f"
+                + LatencyHistogram.formatNanos(service.getPercentile(99.9)) + " &7/ &f"
+                + LatencyHistogram.formatNanos(service.getPercentile(100)) + " &7(p50 / p99 / p99.9 / max)"));
+        sender.sendMessage(serializer.deserialize("&aResponse time: &f"
+                + LatencyHistogram.formatNanos(run.responseTimes.getPercentile(99)) + " &7/ &f"
+                + LatencyHistogram.formatNanos(run.responseTimes.getPercentile(99.9)) + " &7/ &f"
+                + LatencyHistogram.formatNanos(run.responseTimes.getPercentile(100))
+                + " &7(p99 / p99.9 / max, including time behind schedule)"));
+        
+        // Per-stage tails show which check is responsible for the total
+        StringBuilder stages = new StringBuilder("&aStage p99:");
+        for (StatsManager.Stage stage : StatsManager.Stage.values()) {
+            LatencyHistogram histogram = run.stats.getHistogram(stage);
+            if (stage != StatsManager.Stage.CHAT_TOTAL && histogram.getCount() > 0) {
+                stages.append(" &7").append(stage.getLabel()).append(" &f")
+                        .append(LatencyHistogram.formatNanos(histogram.getPercentile(99)));
+            }
+        }
+        sender.sendMessage(serializer.deserialize(stages.toString()));
+        
+        StringBuilder verdicts = new StringBuilder("&aVerdicts:");
+        for (ChatListener.Verdict verdict : ChatListener.Verdict.values()) {
+            long count = run.verdicts.get(verdict.ordinal());
+            if (count > 0) {
+                verdicts.append(" &7").append(verdict.getLabel()).append(" &f").append(count);
+            }
+        }
+        verdicts.append(" &7mutes &f").append(run.stats.get(StatsManager.Counter.MUTES));
+        sender.sendMessage(serializer.deserialize(verdicts.toString()));
+        
+        if (tickBefore >= 0 && tickAverage >= 0) {
+            sender.sendMessage(serializer.deserialize("&aTick time: &f" + String.format("%.2f", tickBefore)
+                    + "ms &7before, &f" + String.format("%.2f", tickAverage) + "ms &7average and &f"
+                    + String.format("%.2f", tickPeak) + "ms &7peak during the run"));
+        } else {
+            sender.sendMessage(serializer.deserialize("&aTick time: &7not available on this server"));
+        }
+        
+        if (plugin.getConfigManager().isDebugEnabled()) {
+            sender.sendMessage(serializer.deserialize("&eDebug logging is on, so the timings include logging."));
+        }
+        sender.sendMessage(serializer.deserialize("&8&m------------------------------------------------"));
+    }
+    
+    /**
+     * Average time of recent ticks in milliseconds, or -1 where the server
+     * has no single tick (Folia)
+     */
+    private double sampleTickMillis() {
+        try {
+            return Bukkit.getAverageTickTime();
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+    
+    private static String cleanMessage(ThreadLocalRandom random) {
+        int words = 3 + random.nextInt(8);
+        StringBuilder message = new StringBuilder(words * 6);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                message.append(' ');
+            }
+            message.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return message.toString();
+    }
+    
+    /**
+     * The session's last message again, or a stock advert
+     */
+    private static String spamMessage(Session session, ThreadLocalRandom random) {
+        if (session.lastMessage != null && random.nextBoolean()) {
+            return session.lastMessage;
+        }
+        return ADVERTS[random.nextInt(ADVERTS.length)];
+    }
+    
+    /**
+     * Clean chat with a leetspeak, separator-padded blocked word in it
+     */
+    private static String obfuscatedMessage(String word, ThreadLocalRandom random) {
+        StringBuilder hidden = new StringBuilder(word.length() * 2);
+        for (int i = 0; i < word.length(); i++) {
+            if (i > 0 && random.nextInt(3) == 0) {
+                hidden.append(random.nextBoolean() ? '.' : ' ');
+            }
+            char c = word.charAt(i);
+            int leet = LEET_FROM.indexOf(c);
+            hidden.append(leet >= 0 && random.nextBoolean() ? LEET_TO.charAt(leet) : c);
+        }
+        return cleanMessage(random) + " " + hidden + " " + WORDS[random.nextInt(WORDS.length)];
+    }
+    
+    /**
+     * A player that exists only for the benchmark. It has no permissions and
+     * messages sent to it go nowhere; a kick runs onKick, if given. Shared
+     * with the offline benchmarks.
+     */
+    static Player fakePlayer(UUID uuid, String name, Runnable onKick) {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUniqueId":
+                            return uuid;
+                        case "getName":
+                            return name;
+                        case "hasPermission":
+                        case "isOp":
+                            return false;
+                        case "isOnline":
+                            return true;
+                        case "sendMessage":
+                            return null;
+                        case "kick":
+                            if (onKick != null) {
+                                onKick.run();
+                            }
+                            return null;
+                        case "hashCode":
+                            return uuid.hashCode();
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchPlayer{" + name + "}";
+                        default:
+                            throw new UnsupportedOperationException("Benchmark players do not support " + method.getName());
+                    }
+                });
+    }
+}
@@ -1,6 +1,7 @@
 package com.chatmanagement.managers;
 
 import com.chatmanagement.ChatManagement2;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
 import java.util.List;
@@ -15,6 +16,14 @@ public class ConfigManager {
         this.config = plugin.getConfig();
     }
     
+    /**
+     * Use a given configuration instead of the plugin's, for running outside a server
+     */
+    ConfigManager(ChatManagement2 plugin, FileConfiguration config) {
+        this.plugin = plugin;
+        this.config = config;
+    }
+    
     public void reload() {
         this.config = plugin.getConfig();
     }
@@ -65,6 +74,43 @@ public class ConfigManager {
         return config.getString("database.mysql.password", "");
     }
     
+    public String getSQLiteFile() {
+        return config.getString("database.sqlite.file", "chatmanagement.db");
+    }
+    
+    public int getSQLiteGroupCommitMillis() {
+        return config.getInt("database.sqlite.group-commit-ms", 5);
+    }
+    
+    public int getBreakerFailureThreshold() {
+        return config.getInt("database.circuit-breaker.failure-threshold", 3);
+    }
+    
+    public int getBreakerBufferSize() {
+        return config.getInt("database.circuit-breaker.buffer-size", 10000);
+    }
+    
+    public int getBreakerMaxBackoffSeconds() {
+        return config.getInt("database.circuit-breaker.max-backoff-seconds", 60);
+    }
+    
+    public boolean isMuteSyncEnabled() {
+        return config.getBoolean("database.sync.enabled", false);
+    }
+    
+    public int getMuteSyncIntervalMillis() {
+        return config.getInt("database.sync.poll-interval-ms", 1000);
+    }
+    
+    public int getMuteSyncRetentionMinutes() {
+        return config.getInt("database.sync.retention-minutes", 60);
+    }
+    
+    // File Storage
+    public String getFileStorageFormat() {
+        return config.getString("storage.file-format", "yaml");
+    }
+    
     // Duplicate Message Detection
     public int getMaxRepeats() {
         return config.getInt("duplicate-messages.max-repeats", 2);
@@ -95,6 +141,112 @@ public class ConfigManager {
         return config.getInt("blocked-words.min-word-length", 4);
     }
     
+    // Anti-Advertising
+    public boolean isAdvertisingEnabled() {
+        return config.getBoolean("anti-advertising.enabled", false);
+    }
+    
+    public boolean isAdvertisingObfuscationEnabled() {
+        return config.getBoolean("anti-advertising.detect-obfuscated", true);
+    }
+    
+    public boolean shouldBlockIpAddresses() {
+        return config.getBoolean("anti-advertising.block-ip-addresses", true);
+    }
+    
+    public boolean shouldNotifyAdvertising() {
+        return config.getBoolean("anti-advertising.notify-player", true);
+    }
+    
+    public String getAdvertisingMessage() {
+        return config.getString("anti-advertising.message", "&cPlease don't advertise other servers in chat.");
+    }
+    
+    public List<String> getAdvertisingAllowedDomains() {
+        return config.getStringList("anti-advertising.allowed-domains");
+    }
+    
+    // Shape Filters
+    public boolean isShapeFiltersEnabled() {
+        return config.getBoolean("shape-filters.enabled", true);
+    }
+    
+    public boolean shouldNotifyShapeFilters() {
+        return config.getBoolean("shape-filters.notify-player", true);
+    }
+    
+    public String getShapeFiltersMessage() {
+        return config.getString("shape-filters.message", "&cPlease don't spam the chat.");
+    }
+    
+    public boolean isCapsFilterEnabled() {
+        return config.getBoolean("shape-filters.caps.enabled", true);
+    }
+    
+    public int getCapsMinLetters() {
+        return config.getInt("shape-filters.caps.min-letters", 8);
+    }
+    
+    public int getCapsMaxPercent() {
+        return config.getInt("shape-filters.caps.max-percent", 70);
+    }
+    
+    public String getCapsAction() {
+        return config.getString("shape-filters.caps.action", "detect");
+    }
+    
+    public boolean isCharacterFloodFilterEnabled() {
+        return config.getBoolean("shape-filters.character-flood.enabled", true);
+    }
+    
+    public int getCharacterFloodMaxRun() {
+        return config.getInt("shape-filters.character-flood.max-run", 6);
+    }
+    
+    public String getCharacterFloodAction() {
+        return config.getString("shape-filters.character-flood.action", "detect");
+    }
+    
+    public boolean isCombiningMarksFilterEnabled() {
+        return config.getBoolean("shape-filters.combining-marks.enabled", true);
+    }
+    
+    public int getCombiningMarksMaxPercent() {
+        return config.getInt("shape-filters.combining-marks.max-percent", 50);
+    }
+    
+    public String getCombiningMarksAction() {
+        return config.getString("shape-filters.combining-marks.action", "block");
+    }
+    
+    public boolean isSymbolsFilterEnabled() {
+        return config.getBoolean("shape-filters.symbols.enabled", true);
+    }
+    
+    public int getSymbolsMaxCount() {
+        return config.getInt("shape-filters.symbols.max-symbols", 8);
+    }
+    
+    public int getSymbolsMaxPercent() {
+        return config.getInt("shape-filters.symbols.max-percent", 60);
+    }
+    
+    public String getSymbolsAction() {
+        return config.getString("shape-filters.symbols.action", "detect");
+    }
+    
+    // Rules
+    public boolean isRulesEnabled() {
+        return config.getBoolean("rules.enabled", false);
+    }
+    
+    /**
+     * The rules.list section, one subsection per named rule, or null if missing
+     */
+    public ConfigurationSection getRulesSection() {
+        return config.getConfigurationSection("rules.list");
+    }
+    
     // Anti-Spam Kick
     public boolean isAntiSpamKickEnabled() {
         return config.getBoolean("anti-spam-kick.enabled", true);
@@ -149,6 +301,50 @@ public class ConfigManager {
         return config.getString("auto-mute.mute-notification", "&cYou have been muted for {duration} seconds for repeated spamming.");
     }
     
+    // Spam Score
+    public boolean isSpamScoreEnabled() {
+        return config.getBoolean("spam-score.enabled", false);
+    }
+    
+    public double getSpamScoreHalfLifeSeconds() {
+        return config.getDouble("spam-score.half-life-seconds", 20.0);
+    }
+    
+    /**
+     * Weight a signal adds to the score, e.g. duplicate or blocked-word
+     */
+    public double getSpamScoreWeight(String signal, double def) {
+        return config.getDouble("spam-score.weights." + signal, def);
+    }
+    
+    public double getSpamScoreWarnThreshold() {
+        return config.getDouble("spam-score.thresholds.warn", 6.0);
+    }
+    
+    public double getSpamScoreBlockThreshold() {
+        return config.getDouble("spam-score.thresholds.block", 10.0);
+    }
+    
+    public double getSpamScoreKickThreshold() {
+        return config.getDouble("spam-score.thresholds.kick", 15.0);
+    }
+    
+    public double getSpamScoreMuteThreshold() {
+        return config.getDouble("spam-score.thresholds.mute", 20.0);
+    }
+    
+    public int getSpamScoreMuteSeconds() {
+        return config.getInt("spam-score.mute-seconds", getMuteDuration());
+    }
+    
+    public String getSpamScoreWarnMessage() {
+        return config.getString("spam-score.warn-message", "&eSlow down, you're close to being muted for spam.");
+    }
+    
+    public String getSpamScoreBlockMessage() {
+        return config.getString("spam-score.block-message", "&cYou're sending too much spam, wait a moment before chatting.");
+    }
+    
     // Messages
     public String getMessage(String key) {
         return config.getString("messages." + key, "");
@@ -162,6 +358,10 @@ public class ConfigManager {
         return config.getString("messages.blocked-message-notification", "&cYour message was blocked.");
     }
     
+    public String getStartingUpMessage() {
+        return config.getString("messages.starting-up", "&cChat is still starting up, please try again in a moment.");
+    }
+    
     // Private Messaging
     public boolean isPMEnabled() {
         return config.getBoolean("private-messaging.enabled", true);
@@ -183,6 +383,194 @@ public class ConfigManager {
         return config.getString("private-messaging.received-format", "&7[&d{sender} &7-> &dYou&7] &r{message}");
     }
     
+    // Private Message Spam
+    public boolean isPMSpamEnabled() {
+        return config.getBoolean("private-message-spam.enabled", true);
+    }
+    
+    public int getPMRateLimit() {
+        return config.getInt("private-message-spam.max-messages", 8);
+    }
+    
+    public int getPMRateWindow() {
+        return config.getInt("private-message-spam.time-window-seconds", 10);
+    }
+    
+    public int getPMMaxRecipients() {
+        return config.getInt("private-message-spam.max-recipients", 5);
+    }
+    
+    public int getPMRecipientWindow() {
+        return config.getInt("private-message-spam.recipient-window-seconds", 60);
+    }
+    
+    public int getPMMaxRepeats() {
+        return config.getInt("private-message-spam.max-repeats", 3);
+    }
+    
+    public int getPMDuplicateCooldown() {
+        return config.getInt("private-message-spam.cooldown-seconds", 30);
+    }
+    
+    public int getPMHistorySize() {
+        return config.getInt("private-message-spam.history-size", 20);
+    }
+    
+    public boolean shouldPMCountTowardKick() {
+        return config.getBoolean("private-message-spam.count-toward-kick", true);
+    }
+    
+    public String getPMRateLimitMessage() {
+        return config.getString("private-message-spam.rate-limit-message", "&cYou are sending private messages too quickly.");
+    }
+    
+    // Ignore Lists
+    public boolean isIgnoreEnabled() {
+        return config.getBoolean("ignore.enabled", true);
+    }
+    
+    public int getMaxIgnores() {
+        return config.getInt("ignore.max-entries", 200);
+    }
+    
+    // Audit Log
+    public boolean isAuditLogEnabled() {
+        return config.getBoolean("audit-log.enabled", true);
+    }
+    
+    public boolean shouldAuditPrivateMessages() {
+        return config.getBoolean("audit-log.log-private-messages", true);
+    }
+    
+    public int getAuditBufferSize() {
+        return config.getInt("audit-log.buffer-size", 8192);
+    }
+    
+    public int getAuditFlushIntervalMillis() {
+        return config.getInt("audit-log.flush-interval-ms", 250);
+    }
+    
+    public int getAuditMaxFileSizeMb() {
+        return config.getInt("audit-log.max-file-size-mb", 16);
+    }
+    
+    public int getAuditRetentionDays() {
+        return config.getInt("audit-log.retention-days", 30);
+    }
+    
+    // Chat Archive
+    public boolean isChatArchiveEnabled() {
+        return config.getBoolean("chat-archive.enabled", true);
+    }
+    
+    public boolean shouldArchivePrivateMessages() {
+        return config.getBoolean("chat-archive.include-private-messages", false);
+    }
+    
+    public int getChatArchiveBufferSize() {
+        return config.getInt("chat-archive.buffer-size", 16384);
+    }
+    
+    public int getChatArchiveFlushIntervalMillis() {
+        return config.getInt("chat-archive.flush-interval-ms", 1000);
+    }
+    
+    public int getChatArchiveRetentionDays() {
+        return config.getInt("chat-archive.retention-days", 30);
+    }
+    
+    public int getChatArchiveMaxResults() {
+        return config.getInt("chat-archive.search-max-results", 50);
+    }
+    
+    public String getChatArchiveDefaultSearchWindow() {
+        return config.getString("chat-archive.default-search-window", "7d");
+    }
+    
+    // Social Spy
+    public String getSocialSpyFormat() {
+        return config.getString("social-spy.format", "&8[&7Spy&8] &7{sender} &8-> &7{receiver}&8: &f{message}");
+    }
+    
+    public String getSocialSpyModerationFormat() {
+        return config.getString("social-spy.moderation-format", "&8[&cMod&8] &7{sender} &c{type}&7 {detail}&8: &f{message}");
+    }
+    
+    // Metrics
+    public boolean isMetricsHttpEnabled() {
+        return config.getBoolean("metrics.http.enabled", false);
+    }
+    
+    public String getMetricsBindAddress() {
+        return config.getString("metrics.http.bind-address", "127.0.0.1");
+    }
+    
+    public int getMetricsPort() {
+        return config.getInt("metrics.http.port", 9464);
+    }
+    
+    public String getMetricsPath() {
+        return config.getString("metrics.http.path", "/metrics");
+    }
+    
+    public boolean isMetricsJmxEnabled() {
+        return config.getBoolean("metrics.jmx.enabled", false);
+    }
+    
+    // Shadow Mode
+    public boolean isShadowEnabled() {
+        return config.getBoolean("shadow.enabled", false);
+    }
+    
+    public double getShadowSampleRate() {
+        return config.getDouble("shadow.sample-rate", 0.05);
+    }
+    
+    public int getShadowQueueSize() {
+        return config.getInt("shadow.queue-size", 1000);
+    }
+    
+    public String getShadowBlockedWordsCandidate() {
+        return config.getString("shadow.blocked-words", "folded");
+    }
+    
+    public String getShadowDuplicateCandidate() {
+        return config.getString("shadow.duplicate", "bounded-levenshtein");
+    }
+    
+    // Benchmark
+    public int getBenchPlayers() {
+        return config.getInt("bench.players", 500);
+    }
+    
+    public int getBenchRate() {
+        return config.getInt("bench.rate", 500);
+    }
+    
+    public int getBenchMaxRate() {
+        return config.getInt("bench.max-rate", 20000);
+    }
+    
+    public int getBenchDurationSeconds() {
+        return config.getInt("bench.duration-seconds", 10);
+    }
+    
+    public int getBenchThreads() {
+        return config.getInt("bench.threads", 4);
+    }
+    
+    public int getBenchCleanPercent() {
+        return config.getInt("bench.mix.clean", 80);
+    }
+    
+    public int getBenchSpamPercent() {
+        return config.getInt("bench.mix.spam", 15);
+    }
+    
+    public int getBenchObfuscatedPercent() {
+        return config.getInt("bench.mix.obfuscated", 5);
+    }
+    
     // Chat Colors
     public boolean isChatColorsEnabled() {
         return config.getBoolean("chat-colors.enabled", true);
@@ -201,7 +589,19 @@ public class ConfigManager {
         return "chatmanagement.bypass";
     }
     
+    public String getSocialSpyPermission() {
+        return "chatmanagement.socialspy";
+    }
+    
     public String getReloadPermission() {
         return "chatmanagement.reload";
     }
+    
+    public String getSearchPermission() {
+        return "chatmanagement.search";
+    }
+    
+    public String getBenchPermission() {
+        return "chatmanagement.bench";
+    }
 }
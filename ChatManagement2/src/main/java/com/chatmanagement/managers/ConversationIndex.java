@@ -0,0 +1,84 @@
+package com.chatmanagement.managers;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe reply targets with a reverse lookup.
+ * Alongside player -> last conversation partner, it keeps partner -> players
+ * replying to them, so clearing a player only touches the entries that
+ * reference them instead of scanning every conversation.
+ */
+public class ConversationIndex {
+    
+    private final Map<UUID, UUID> replyTargets; // player -> who /r goes to
+    private final Map<UUID, Set<UUID>> repliers; // player -> who has them as reply target
+    
+    public ConversationIndex() {
+        this.replyTargets = new ConcurrentHashMap<>();
+        this.repliers = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Record that player's replies should go to target
+     */
+    public void setReplyTarget(UUID player, UUID target) {
+        UUID previous = replyTargets.put(player, target);
+        if (target.equals(previous)) {
+            return;
+        }
+        
+        if (previous != null) {
+            unlink(previous, player);
+        }
+        repliers.computeIfAbsent(target, k -> ConcurrentHashMap.newKeySet()).add(player);
+    }
+    
+    /**
+     * Get who this player's replies go to
+     */
+    public UUID getReplyTarget(UUID player) {
+        return replyTargets.get(player);
+    }
+    
+    /**
+     * Forget this player's reply target
+     */
+    public void removeReplyTarget(UUID player) {
+        UUID previous = replyTargets.remove(player);
+        if (previous != null) {
+            unlink(previous, player);
+        }
+    }
+    
+    /**
+     * Remove a player and every reply target pointing at them
+     */
+    public void clear(UUID player) {
+        removeReplyTarget(player);
+        
+        Set<UUID> referencing = repliers.remove(player);
+        if (referencing != null) {
+            for (UUID other : referencing) {
+                // Only drop it if the other player has not moved on to someone else meanwhile
+                replyTargets.remove(other, player);
+            }
+        }
+    }
+    
+    /**
+     * Number of players with a reply target
+     */
+    public int size() {
+        return replyTargets.size();
+    }
+    
+    private void unlink(UUID target, UUID player) {
+        repliers.computeIfPresent(target, (k, set) -> {
+            set.remove(player);
+            return set.isEmpty() ? null : set;
+        });
+    }
+}
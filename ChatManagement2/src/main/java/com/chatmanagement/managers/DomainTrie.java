@@ -0,0 +1,87 @@
+package com.chatmanagement.managers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Allowed hosts, stored as a trie of domain labels from the TLD inwards, so
+ * net -> example -> play. A host is allowed if its walk reaches an entry:
+ * allowing example.net also allows play.example.net. An entry with a path,
+ * like discord.gg/invite, allows only links on that exact host whose path
+ * starts with it.
+ */
+public final class DomainTrie {
+    
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        boolean allowAll;
+        final List<String> paths = new ArrayList<>();
+    }
+    
+    private final Node root = new Node();
+    private int size;
+    
+    /**
+     * Add an entry like example.net or discord.gg/invite
+     */
+    public void add(String entry) {
+        String host = entry.toLowerCase().trim();
+        String path = null;
+        int slash = host.indexOf('/');
+        if (slash >= 0) {
+            path = host.substring(slash + 1);
+            host = host.substring(0, slash);
+        }
+        if (host.startsWith("*.")) {
+            host = host.substring(2);
+        }
+        if (host.isEmpty()) {
+            return;
+        }
+        
+        String[] labels = host.split("\\.");
+        Node node = root;
+        for (int i = labels.length - 1; i >= 0; i--) {
+            node = node.children.computeIfAbsent(labels[i], label -> new Node());
+        }
+        
+        if (path == null || path.isEmpty()) {
+            node.allowAll = true;
+        } else {
+            node.paths.add(path);
+        }
+        size++;
+    }
+    
+    /**
+     * Whether a host, given as lowercase labels in reading order, and the
+     * path after it (empty for none) are allowed
+     */
+    public boolean isAllowed(String[] labels, int count, String path) {
+        Node node = root;
+        for (int i = count - 1; i >= 0; i--) {
+            node = node.children.get(labels[i]);
+            if (node == null) {
+                return false;
+            }
+            if (node.allowAll) {
+                return true;
+            }
+        }
+        
+        String lowerPath = path.toLowerCase();
+        for (String allowed : node.paths) {
+            if (lowerPath.startsWith(allowed)
+                    && (lowerPath.length() == allowed.length() || lowerPath.charAt(allowed.length()) == '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public int size() {
+        return size;
+    }
+}
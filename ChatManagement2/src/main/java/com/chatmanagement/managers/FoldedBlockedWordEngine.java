@@ -0,0 +1,91 @@
+package com.chatmanagement.managers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Candidate blocked-word engine for shadow mode.
+ * Folds look-alike characters (leetspeak, accents) onto one letter and drops
+ * everything that is not a letter or digit, then looks for each folded word
+ * with indexOf. One pass over the message and no regex, but it also matches
+ * across any number of separators, where the active engine allows two.
+ */
+public class FoldedBlockedWordEngine implements BlockedWordEngine {
+    
+    private static final char[] FOLD = new char[0x180];
+    
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            FOLD[c] = c;
+            FOLD[Character.toUpperCase(c)] = c;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            FOLD[c] = c;
+        }
+        
+        // The same look-alikes as BlockedWordsManager's substitutions, with
+        // ambiguous ones (1 for i or l, c/k, s/z, g/q) folded together
+        fold("4@áàâäåÁÀÂÄÅ", 'a');
+        fold("3éèêëÉÈÊË", 'e');
+        fold("1!|líìîïÍÌÎÏL", 'i');
+        fold("0óòôöÓÒÔÖ", 'o');
+        fold("úùûüÚÙÛÜ", 'u');
+        fold("$5zZ", 's');
+        fold("7+", 't');
+        fold("9qQ", 'g');
+        fold("8", 'b');
+        fold("(kK", 'c');
+    }
+    
+    private final String[] words;
+    
+    public FoldedBlockedWordEngine(List<String> blockedWords) {
+        List<String> folded = new ArrayList<>(blockedWords.size());
+        for (String word : blockedWords) {
+            String foldedWord = fold(word);
+            if (!foldedWord.isEmpty()) {
+                folded.add(foldedWord);
+            }
+        }
+        this.words = folded.toArray(new String[0]);
+    }
+    
+    @Override
+    public boolean containsBlockedWord(String message) {
+        if (words.length == 0) {
+            return false;
+        }
+        
+        String folded = fold(message);
+        for (String word : words) {
+            if (folded.indexOf(word) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static void fold(String from, char to) {
+        for (int i = 0; i < from.length(); i++) {
+            FOLD[from.charAt(i)] = to;
+        }
+    }
+    
+    /**
+     * Lowercase, fold look-alikes and drop separators
+     */
+    static String fold(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < FOLD.length) {
+                if (FOLD[c] != 0) {
+                    out.append(FOLD[c]);
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                out.append(Character.toLowerCase(c));
+            }
+        }
+        return out.toString();
+    }
+}
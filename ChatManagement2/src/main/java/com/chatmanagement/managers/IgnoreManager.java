@@ -0,0 +1,241 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.storage.IgnoreStorage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Player ignore lists.
+ * Each list is a sorted long[] of uuid halves (msb, lsb pairs) searched with a
+ * binary search, and a reverse "ignored by" index lets public chat drop only
+ * the viewers who actually ignore the sender.
+ * Arrays are replaced rather than modified, so readers never need a lock.
+ */
+public class IgnoreManager {
+    
+    private static final long[] EMPTY = new long[0];
+    
+    /**
+     * Outcome of adding a player to an ignore list
+     */
+    public enum AddResult {
+        ADDED,
+        ALREADY_IGNORED,
+        LIST_FULL
+    }
+    
+    private final ChatManagement2 plugin;
+    private final Map<UUID, long[]> ignoring; // player -> players they ignore
+    private final Map<UUID, long[]> ignoredBy; // player -> players ignoring them
+    
+    public IgnoreManager(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        this.ignoring = new ConcurrentHashMap<>();
+        this.ignoredBy = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Load all ignore lists from storage
+     */
+    public void loadIgnores() {
+        IgnoreStorage storage = plugin.getIgnoreStorage();
+        if (storage == null) {
+            return;
+        }
+        
+        ignoring.clear();
+        ignoredBy.clear();
+        
+        Map<UUID, List<UUID>> stored = storage.loadIgnores();
+        int count = 0;
+        for (Map.Entry<UUID, List<UUID>> entry : stored.entrySet()) {
+            for (UUID ignored : entry.getValue()) {
+                link(entry.getKey(), ignored);
+                count++;
+            }
+        }
+        
+        if (plugin.getConfigManager().isDebugEnabled()) {
+            plugin.getLogger().info("Loaded " + count + " ignore entries for " + stored.size() + " players");
+        }
+    }
+    
+    /**
+     * Check whether player ignores target
+     */
+    public boolean isIgnoring(UUID player, UUID target) {
+        long[] list = ignoring.get(player);
+        return list != null && indexOf(list, target) >= 0;
+    }
+    
+    /**
+     * Players who ignore this player, or an empty array
+     */
+    public long[] getIgnoredBy(UUID player) {
+        return ignoredBy.getOrDefault(player, EMPTY);
+    }
+    
+    /**
+     * Players this player ignores
+     */
+    public List<UUID> getIgnoring(UUID player) {
+        return toList(ignoring.getOrDefault(player, EMPTY));
+    }
+    
+    /**
+     * Start ignoring a player
+     */
+    public AddResult addIgnore(UUID player, UUID target) {
+        long[] list = ignoring.getOrDefault(player, EMPTY);
+        if (indexOf(list, target) >= 0) {
+            return AddResult.ALREADY_IGNORED;
+        }
+        if (list.length / 2 >= plugin.getConfigManager().getMaxIgnores()) {
+            return AddResult.LIST_FULL;
+        }
+        
+        link(player, target);
+        
+        IgnoreStorage storage = plugin.getIgnoreStorage();
+        if (storage != null) {
+            storage.addIgnore(player, target);
+        }
+        return AddResult.ADDED;
+    }
+    
+    /**
+     * Stop ignoring a player. Returns false if they were not ignored.
+     */
+    public boolean removeIgnore(UUID player, UUID target) {
+        if (!isIgnoring(player, target)) {
+            return false;
+        }
+        
+        ignoring.computeIfPresent(player, (k, list) -> without(list, target));
+        ignoredBy.computeIfPresent(target, (k, list) -> without(list, player));
+        
+        IgnoreStorage storage = plugin.getIgnoreStorage();
+        if (storage != null) {
+            storage.removeIgnore(player, target);
+        }
+        return true;
+    }
+    
+    /**
+     * A copy of every ignore list
+     */
+    public Map<UUID, List<UUID>> getAllIgnores() {
+        Map<UUID, List<UUID>> all = new HashMap<>();
+        for (Map.Entry<UUID, long[]> entry : ignoring.entrySet()) {
+            all.put(entry.getKey(), toList(entry.getValue()));
+        }
+        return all;
+    }
+    
+    private void link(UUID player, UUID target) {
+        ignoring.compute(player, (k, list) -> with(list, target));
+        ignoredBy.compute(target, (k, list) -> with(list, player));
+    }
+    
+    /**
+     * Binary search a sorted msb/lsb pair array, returning the pair index or -1
+     */
+    private static int indexOf(long[] list, UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int low = 0;
+        int high = list.length / 2 - 1;
+        
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(list[mid * 2], list[mid * 2 + 1], msb, lsb);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Position at which a uuid would be inserted to keep the array sorted
+     */
+    private static int insertionPoint(long[] list, long msb, long lsb) {
+        int low = 0;
+        int high = list.length / 2;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(list[mid * 2], list[mid * 2 + 1], msb, lsb) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private static long[] with(long[] list, UUID uuid) {
+        if (list == null) {
+            list = EMPTY;
+        }
+        if (indexOf(list, uuid) >= 0) {
+            return list;
+        }
+        
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int pos = insertionPoint(list, msb, lsb) * 2;
+        
+        long[] result = new long[list.length + 2];
+        System.arraycopy(list, 0, result, 0, pos);
+        result[pos] = msb;
+        result[pos + 1] = lsb;
+        System.arraycopy(list, pos, result, pos + 2, list.length - pos);
+        return result;
+    }
+    
+    private static long[] without(long[] list, UUID uuid) {
+        int index = indexOf(list, uuid);
+        if (index < 0) {
+            return list;
+        }
+        if (list.length == 2) {
+            return null; // Removes the map entry
+        }
+        
+        int pos = index * 2;
+        long[] result = new long[list.length - 2];
+        System.arraycopy(list, 0, result, 0, pos);
+        System.arraycopy(list, pos + 2, result, pos, list.length - pos - 2);
+        return result;
+    }
+    
+    private static int compare(long msb1, long lsb1, long msb2, long lsb2) {
+        int cmp = Long.compare(msb1, msb2);
+        return cmp != 0 ? cmp : Long.compare(lsb1, lsb2);
+    }
+    
+    private static List<UUID> toList(long[] list) {
+        List<UUID> result = new ArrayList<>(list.length / 2);
+        for (int i = 0; i < list.length; i += 2) {
+            result.add(new UUID(list[i], list[i + 1]));
+        }
+        return result;
+    }
+    
+    /**
+     * Decode the uuid at a pair index of an array returned by getIgnoredBy
+     */
+    public static UUID uuidAt(long[] list, int index) {
+        return new UUID(list[index * 2], list[index * 2 + 1]);
+    }
+}
@@ -0,0 +1,192 @@
+package com.chatmanagement.managers;
+
+/**
+ * One pass over a chat message that measures its shape (capitals, runs of
+ * one character, combining marks, symbols) and builds the normalized form
+ * the duplicate check compares. Each thread reuses one instance that
+ * remembers the last message it scanned, so the shape filters and the
+ * duplicate check share a single scan and nothing is allocated for it.
+ * Results are only valid until the same thread scans another message.
+ */
+public final class MessageScan {
+    
+    private static final ThreadLocal<MessageScan> CURRENT = ThreadLocal.withInitial(MessageScan::new);
+    
+    private String source;
+    private char[] buffer = new char[256];
+    private int normalizedStart;
+    private int normalizedEnd;
+    private String normalized;
+    private int letters;
+    private int uppercase;
+    private int visible;
+    private int combiningMarks;
+    private int symbols;
+    private int longestRun;
+    
+    private MessageScan() {
+    }
+    
+    /**
+     * This thread's scan of the message, reusing the last one if it was
+     * the same message
+     */
+    public static MessageScan of(String message) {
+        MessageScan scan = CURRENT.get();
+        if (scan.source != message) {
+            scan.scan(message);
+        }
+        return scan;
+    }
+    
+    private void scan(String message) {
+        source = message;
+        normalized = null;
+        letters = 0;
+        uppercase = 0;
+        visible = 0;
+        combiningMarks = 0;
+        symbols = 0;
+        longestRun = 0;
+        
+        if (buffer.length < message.length()) {
+            buffer = new char[Math.max(message.length(), buffer.length * 2)];
+        }
+        
+        int length = 0;
+        boolean inSpace = false;
+        int previous = -1;
+        int run = 0;
+        for (int i = 0; i < message.length(); ) {
+            int codePoint = message.codePointAt(i);
+            i += Character.charCount(codePoint);
+            
+            // Normalized form: lowercase ASCII letters and digits, whitespace
+            // runs collapsed to one space, everything else dropped
+            if (isRegexSpace(codePoint)) {
+                if (!inSpace) {
+                    buffer[length++] = ' ';
+                    inSpace = true;
+                }
+            } else {
+                inSpace = false;
+                int lower = Character.toLowerCase(codePoint);
+                if ((lower >= 'a' && lower <= 'z') || (lower >= '0' && lower <= '9')) {
+                    buffer[length++] = (char) lower;
+                }
+            }
+            
+            if (Character.isWhitespace(codePoint)) {
+                previous = -1;
+                continue;
+            }
+            if (isJoinerOrSelector(codePoint)) {
+                continue;
+            }
+            if (isCombiningMark(codePoint)) {
+                combiningMarks++;
+                continue;
+            }
+            
+            visible++;
+            if (Character.isLetter(codePoint)) {
+                letters++;
+                if (Character.isUpperCase(codePoint)) {
+                    uppercase++;
+                }
+            } else if (isSymbol(codePoint)) {
+                symbols++;
+            }
+            
+            int folded = Character.toLowerCase(codePoint);
+            run = folded == previous ? run + 1 : 1;
+            previous = folded;
+            longestRun = Math.max(longestRun, run);
+        }
+        
+        // Trim the spaces left at either end
+        normalizedStart = 0;
+        while (normalizedStart < length && buffer[normalizedStart] == ' ') {
+            normalizedStart++;
+        }
+        normalizedEnd = length;
+        while (normalizedEnd > normalizedStart && buffer[normalizedEnd - 1] == ' ') {
+            normalizedEnd--;
+        }
+    }
+    
+    /**
+     * Lowercase letters and digits with whitespace collapsed, as the
+     * duplicate check compares messages
+     */
+    public String normalized() {
+        if (normalized == null) {
+            normalized = new String(buffer, normalizedStart, normalizedEnd - normalizedStart);
+        }
+        return normalized;
+    }
+    
+    public int getLetters() {
+        return letters;
+    }
+    
+    public int getUppercase() {
+        return uppercase;
+    }
+    
+    /**
+     * Characters other than whitespace and combining marks
+     */
+    public int getVisible() {
+        return visible;
+    }
+    
+    public int getCombiningMarks() {
+        return combiningMarks;
+    }
+    
+    /**
+     * Emoji and other symbol characters
+     */
+    public int getSymbols() {
+        return symbols;
+    }
+    
+    /**
+     * Longest run of one character repeated, ignoring case
+     */
+    public int getLongestRun() {
+        return longestRun;
+    }
+    
+    /**
+     * The whitespace a regex \s matches, which duplicate normalization collapses
+     */
+    private static boolean isRegexSpace(int c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+    
+    static boolean isCombiningMark(int codePoint) {
+        // Nothing below the combining diacritics block is a mark
+        if (codePoint < 0x300) {
+            return false;
+        }
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                || type == Character.COMBINING_SPACING_MARK;
+    }
+    
+    /**
+     * Variation selectors and the zero-width joiner, which only shape the
+     * emoji around them
+     */
+    static boolean isJoinerOrSelector(int codePoint) {
+        return codePoint == 0x200D || (codePoint >= 0xFE00 && codePoint <= 0xFE0F)
+                || (codePoint >= 0xE0100 && codePoint <= 0xE01EF);
+    }
+    
+    static boolean isSymbol(int codePoint) {
+        int type = Character.getType(codePoint);
+        return type == Character.OTHER_SYMBOL || type == Character.MATH_SYMBOL || type == Character.MODIFIER_SYMBOL;
+    }
+}
@@ -0,0 +1,406 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.storage.DatabaseManager;
+import com.chatmanagement.storage.MuteStorage;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Optional export of the /cm stats data for outside monitoring.
+ * A local HTTP endpoint serves it in Prometheus text format and JMX MBeans
+ * expose the same values. Both only read StatsManager when scraped, so
+ * nothing extra happens on the chat path.
+ */
+public class MetricsManager {
+    
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String JMX_DOMAIN = "com.chatmanagement";
+    // Histogram buckets exported to Prometheus: powers of two from ~1us to ~17s
+    private static final int MIN_EXPORT_EXPONENT = 10;
+    private static final int MAX_EXPORT_EXPONENT = 34;
+    
+    private final ChatManagement2 plugin;
+    private final List<ObjectName> registered;
+    private HttpServer server;
+    private ExecutorService executor;
+    
+    public MetricsManager(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        this.registered = new ArrayList<>();
+    }
+    
+    /**
+     * Start the HTTP endpoint and register MBeans as configured
+     */
+    public void start() {
+        ConfigManager config = plugin.getConfigManager();
+        
+        if (config.isMetricsHttpEnabled()) {
+            startHttp(config.getMetricsBindAddress(), config.getMetricsPort(), config.getMetricsPath());
+        }
+        
+        if (config.isMetricsJmxEnabled()) {
+            registerMBeans();
+        }
+    }
+    
+    /**
+     * Stop the HTTP endpoint and unregister all MBeans
+     */
+    public void shutdown() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                if (mbeans.isRegistered(name)) {
+                    mbeans.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                plugin.getLogger().warning("Could not unregister MBean " + name + ": " + e.getMessage());
+            }
+        }
+        registered.clear();
+    }
+    
+    /**
+     * Restart so changed settings take effect
+     */
+    public void reload() {
+        shutdown();
+        start();
+    }
+    
+    private void startHttp(String bindAddress, int port, String path) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not start metrics endpoint on " + bindAddress + ":" + port + ": " + e.getMessage());
+            return;
+        }
+        
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ChatManagement2-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(path.startsWith("/") ? path : "/" + path, this::handle);
+        server.start();
+        
+        plugin.getLogger().info("Serving metrics on http://" + bindAddress + ":" + port + path);
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    /**
+     * Render every metric in Prometheus text exposition format
+     */
+    public String scrape() {
+        StatsManager stats = plugin.getStatsManager();
+        StringBuilder out = new StringBuilder(16384);
+        
+        out.append("# HELP chatmanagement_events_total Messages handled and moderation actions taken\n");
+        out.append("# TYPE chatmanagement_events_total counter\n");
+        for (StatsManager.Counter counter : StatsManager.Counter.values()) {
+            out.append("chatmanagement_events_total{event=\"").append(counter.name().toLowerCase(Locale.ROOT))
+                    .append("\"} ").append(stats.get(counter)).append('\n');
+        }
+        
+        out.append("# HELP chatmanagement_stage_latency_seconds Time spent in each stage of message handling\n");
+        out.append("# TYPE chatmanagement_stage_latency_seconds histogram\n");
+        for (StatsManager.Stage stage : StatsManager.Stage.values()) {
+            appendHistogram(out, stage.name().toLowerCase(Locale.ROOT), stats.getHistogram(stage));
+        }
+        
+        gauge(out, "chatmanagement_muted_players", "Players currently muted",
+                plugin.getMuteManager().getMutedCount());
+        gauge(out, "chatmanagement_spam_tracked_players", "Players with spam detection history",
+                plugin.getSpamDetectionManager().getTrackedPlayers());
+        gauge(out, "chatmanagement_storage_pending_writes", "Mute storage writes waiting to be committed",
+                getStoragePendingWrites());
+        gauge(out, "chatmanagement_audit_queue_size", "Audit events waiting to be written",
+                plugin.getAuditManager().getQueueSize());
+        counter(out, "chatmanagement_audit_dropped_total", "Audit events dropped because the buffer was full",
+                plugin.getAuditManager().getDroppedEvents());
+        gauge(out, "chatmanagement_archive_queue_size", "Chat archive lines waiting to be written",
+                plugin.getChatArchiveManager().getQueueSize());
+        counter(out, "chatmanagement_archive_dropped_total", "Chat archive lines dropped because the buffer was full",
+                plugin.getChatArchiveManager().getDroppedLines());
+        
+        return out.toString();
+    }
+    
+    private void appendHistogram(StringBuilder out, String stage, LatencyHistogram histogram) {
+        long[] buckets = histogram.snapshot();
+        long cumulative = 0;
+        
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i];
+            
+            // The last sub-bucket of each power of two ends just below the next power
+            long next = LatencyHistogram.upperBound(i) + 1;
+            if (Long.bitCount(next) != 1) {
+                continue;
+            }
+            int exponent = Long.numberOfTrailingZeros(next);
+            if (exponent < MIN_EXPORT_EXPONENT || exponent > MAX_EXPORT_EXPONENT) {
+                continue;
+            }
+            
+            out.append("chatmanagement_stage_latency_seconds_bucket{stage=\"").append(stage)
+                    .append("\",le=\"").append(next / 1e9).append("\"} ").append(cumulative).append('\n');
+        }
+        
+        out.append("chatmanagement_stage_latency_seconds_bucket{stage=\"").append(stage)
+                .append("\",le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append("chatmanagement_stage_latency_seconds_sum{stage=\"").append(stage).append("\"} ")
+                .append(histogram.getSumNanos() / 1e9).append('\n');
+        out.append("chatmanagement_stage_latency_seconds_count{stage=\"").append(stage).append("\"} ")
+                .append(cumulative).append('\n');
+    }
+    
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+    
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+    
+    private int getStoragePendingWrites() {
+        MuteStorage storage = plugin.getMuteStorage();
+        return storage instanceof DatabaseManager ? ((DatabaseManager) storage).getPendingWrites() : 0;
+    }
+    
+    private void registerMBeans() {
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(mbeans, new ObjectName(JMX_DOMAIN + ":type=Stats"),
+                    new StandardMBean(new Stats(), StatsMBean.class));
+            
+            for (StatsManager.Stage stage : StatsManager.Stage.values()) {
+                ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Latency,stage=" + stage.name().toLowerCase(Locale.ROOT));
+                register(mbeans, name, new StandardMBean(new Latency(stage), LatencyMBean.class));
+            }
+        } catch (JMException e) {
+            plugin.getLogger().warning("Could not register MBeans: " + e.getMessage());
+        }
+    }
+    
+    private void register(MBeanServer mbeans, ObjectName name, Object mbean) throws JMException {
+        // A previous instance of the plugin may not have cleaned up
+        if (mbeans.isRegistered(name)) {
+            mbeans.unregisterMBean(name);
+        }
+        mbeans.registerMBean(mbean, name);
+        registered.add(name);
+    }
+    
+    /**
+     * Counters and queue sizes, as com.chatmanagement:type=Stats
+     */
+    public interface StatsMBean {
+        long getChatMessages();
+        long getPrivateMessages();
+        long getBlockedMuted();
+        long getBlockedWord();
+        long getBlockedDuplicate();
+        long getBlockedPMLimit();
+        long getSpamKicks();
+        long getMutes();
+        int getMutedPlayers();
+        int getStoragePendingWrites();
+        int getAuditQueueSize();
+        long getAuditDropped();
+        int getArchiveQueueSize();
+        long getArchiveDropped();
+        void reset();
+    }
+    
+    /**
+     * Latency of one stage, as com.chatmanagement:type=Latency,stage=...
+     */
+    public interface LatencyMBean {
+        long getCount();
+        double getMeanMicros();
+        double getP50Micros();
+        double getP99Micros();
+        double getP999Micros();
+        double getMaxMicros();
+    }
+    
+    private class Stats implements StatsMBean {
+        private long count(StatsManager.Counter counter) {
+            return plugin.getStatsManager().get(counter);
+        }
+        
+        @Override
+        public long getChatMessages() {
+            return count(StatsManager.Counter.CHAT_MESSAGES);
+        }
+        
+        @Override
+        public long getPrivateMessages() {
+            return count(StatsManager.Counter.PRIVATE_MESSAGES);
+        }
+        
+        @Override
+        public long getBlockedMuted() {
+            return count(StatsManager.Counter.BLOCKED_MUTED);
+        }
+        
+        @Override
+        public long getBlockedWord() {
+            return count(StatsManager.Counter.BLOCKED_WORD);
+        }
+        
+        @Override
+        public long getBlockedDuplicate() {
+            return count(StatsManager.Counter.BLOCKED_DUPLICATE);
+        }
+        
+        @Override
+        public long getBlockedPMLimit() {
+            return count(StatsManager.Counter.BLOCKED_PM_LIMIT);
+        }
+        
+        @Override
+        public long getSpamKicks() {
+            return count(StatsManager.Counter.SPAM_KICKS);
+        }
+        
+        @Override
+        public long getMutes() {
+            return count(StatsManager.Counter.MUTES);
+        }
+        
+        @Override
+        public int getMutedPlayers() {
+            return plugin.getMuteManager().getMutedCount();
+        }
+        
+        @Override
+        public int getStoragePendingWrites() {
+            return MetricsManager.this.getStoragePendingWrites();
+        }
+        
+        @Override
+        public int getAuditQueueSize() {
+            return plugin.getAuditManager().getQueueSize();
+        }
+        
+        @Override
+        public long getAuditDropped() {
+            return plugin.getAuditManager().getDroppedEvents();
+        }
+        
+        @Override
+        public int getArchiveQueueSize() {
+            return plugin.getChatArchiveManager().getQueueSize();
+        }
+        
+        @Override
+        public long getArchiveDropped() {
+            return plugin.getChatArchiveManager().getDroppedLines();
+        }
+        
+        @Override
+        public void reset() {
+            plugin.getStatsManager().reset();
+        }
+    }
+    
+    private class Latency implements LatencyMBean {
+        private final StatsManager.Stage stage;
+        
+        Latency(StatsManager.Stage stage) {
+            this.stage = stage;
+        }
+        
+        private LatencyHistogram histogram() {
+            return plugin.getStatsManager().getHistogram(stage);
+        }
+        
+        @Override
+        public long getCount() {
+            return histogram().getCount();
+        }
+        
+        @Override
+        public double getMeanMicros() {
+            LatencyHistogram histogram = histogram();
+            long count = histogram.getCount();
+            return count > 0 ? histogram.getSumNanos() / 1000.0 / count : 0;
+        }
+        
+        @Override
+        public double getP50Micros() {
+            return histogram().getPercentile(50) / 1000.0;
+        }
+        
+        @Override
+        public double getP99Micros() {
+            return histogram().getPercentile(99) / 1000.0;
+        }
+        
+        @Override
+        public double getP999Micros() {
+            return histogram().getPercentile(99.9) / 1000.0;
+        }
+        
+        @Override
+        public double getMaxMicros() {
+            return histogram().getPercentile(100) / 1000.0;
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package com.chatmanagement.managers;
 
 import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.storage.MuteStorage;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -13,27 +17,52 @@ import java.util.concurrent.TimeUnit;
 public class MuteManager {
     
     private final ChatManagement2 plugin;
+    private final StatsManager stats;
+    private final AuditManager audit;
+    private final boolean persistent;
     private final Map<UUID, MuteData> mutedPlayers;
     private final LegacyComponentSerializer serializer = LegacyComponentSerializer.legacyAmpersand();
     
     public MuteManager(ChatManagement2 plugin) {
+        this(plugin, plugin.getStatsManager(), plugin.getAuditManager(), true);
+    }
+    
+    /**
+     * Mute manager reporting to the given stats and audit log. A manager that
+     * is not persistent keeps its mutes in memory and never touches storage.
+     */
+    public MuteManager(ChatManagement2 plugin, StatsManager stats, AuditManager audit, boolean persistent) {
         this.plugin = plugin;
+        this.stats = stats;
+        this.audit = audit;
+        this.persistent = persistent;
         this.mutedPlayers = new ConcurrentHashMap<>();
         
-        // Load mutes from storage
-        loadMutes();
-        
+        // Mutes are loaded by the plugin's startup task once storage is connected
+    }
+    
+    /**
+     * Start the background tasks. Without them mutes still expire, but only
+     * when the muted player next chats.
+     */
+    public void start() {
         // Start unmute checker task (every second)
         startUnmuteChecker();
+        
+        // Pick up mutes made by other servers sharing the database
+        startChangeSync();
     }
     
     /**
      * Mute a player for a specified duration
      */
     public void mutePlayer(UUID uuid, int durationSeconds) {
-        long endTime = System.currentTimeMillis() + (durationSeconds * 1000L);
+        long endTime = plugin.getClock().millis() + (durationSeconds * 1000L);
         MuteData muteData = new MuteData(endTime, durationSeconds);
-        mutedPlayers.put(uuid, muteData);
+        if (!isServedInPlace()) {
+            mutedPlayers.put(uuid, muteData);
+        }
+        stats.increment(StatsManager.Counter.MUTES);
         
         // Save to storage
         saveMute(uuid, muteData);
@@ -46,6 +75,9 @@ public class MuteManager {
             player.sendMessage(serializer.deserialize(message));
         }
         
+        audit.record(AuditManager.Type.MUTE, uuid, player != null ? player.getName() : null,
+                null, null, null, durationSeconds + "s");
+        
         if (plugin.getConfigManager().isDebugEnabled()) {
             plugin.getLogger().info("Muted player " + uuid + " for " + durationSeconds + " seconds");
         }
@@ -58,11 +90,9 @@ public class MuteManager {
         mutedPlayers.remove(uuid);
         
         // Remove from storage
-        if (plugin.getDatabaseManager() != null && plugin.getDatabaseManager().isConnected()) {
-            plugin.getDatabaseManager().removeMute(uuid);
-        } else if (plugin.getYAMLStorage() != null) {
-            plugin.getYAMLStorage().removeMute(uuid);
-        }
+        removeMute(uuid);
+        
+        audit.record(AuditManager.Type.UNMUTE, uuid, null, null, null, null, null);
         
         if (plugin.getConfigManager().isDebugEnabled()) {
             plugin.getLogger().info("Unmuted player " + uuid);
@@ -73,13 +103,13 @@ public class MuteManager {
      * Check if a player is muted
      */
     public boolean isMuted(UUID uuid) {
-        MuteData muteData = mutedPlayers.get(uuid);
+        MuteData muteData = lookup(uuid);
         if (muteData == null) {
             return false;
         }
         
         // Check if mute has expired
-        if (System.currentTimeMillis() >= muteData.endTime) {
+        if (plugin.getClock().millis() >= muteData.endTime) {
             unmutePlayer(uuid);
             return false;
         }
@@ -91,12 +121,12 @@ public class MuteManager {
      * Get remaining mute time in seconds
      */
     public int getRemainingTime(UUID uuid) {
-        MuteData muteData = mutedPlayers.get(uuid);
+        MuteData muteData = lookup(uuid);
         if (muteData == null) {
             return 0;
         }
         
-        long remaining = muteData.endTime - System.currentTimeMillis();
+        long remaining = muteData.endTime - plugin.getClock().millis();
         return (int) Math.max(0, remaining / 1000);
     }
     
@@ -104,9 +134,9 @@ public class MuteManager {
      * Handle player disconnect - pause mute timer
      */
     public void handleDisconnect(UUID uuid) {
-        MuteData muteData = mutedPlayers.get(uuid);
+        MuteData muteData = lookup(uuid);
         if (muteData != null && !muteData.isPaused) {
-            long remaining = muteData.endTime - System.currentTimeMillis();
+            long remaining = muteData.endTime - plugin.getClock().millis();
             if (remaining > 0) {
                 muteData.pausedTimeRemaining = remaining;
                 muteData.isPaused = true;
@@ -125,9 +155,9 @@ public class MuteManager {
      * Handle player reconnect - resume mute timer
      */
     public void handleReconnect(UUID uuid) {
-        MuteData muteData = mutedPlayers.get(uuid);
+        MuteData muteData = lookup(uuid);
         if (muteData != null && muteData.isPaused) {
-            muteData.endTime = System.currentTimeMillis() + muteData.pausedTimeRemaining;
+            muteData.endTime = plugin.getClock().millis() + muteData.pausedTimeRemaining;
             muteData.isPaused = false;
             muteData.pausedTimeRemaining = 0;
             
@@ -141,69 +171,108 @@ public class MuteManager {
     }
     
     /**
-     * Load mutes from storage
+     * Replace the mutes in memory with those in storage, so mutes removed
+     * there (e.g. by another server) are dropped here too
      */
-    private void loadMutes() {
-        if (plugin.getDatabaseManager() != null && plugin.getDatabaseManager().isConnected()) {
-            loadMutesFromDatabase();
-        } else if (plugin.getYAMLStorage() != null) {
-            loadMutesFromYAML();
+    public void loadMutes() {
+        MuteStorage storage = getStorage();
+        if (storage == null) {
+            return;
         }
-    }
-    
-    /**
-     * Load mutes from database
-     */
-    public void loadMutesFromDatabase() {
-        if (plugin.getDatabaseManager() == null || !plugin.getDatabaseManager().isConnected()) {
+        
+        if (storage.isServedInPlace()) {
+            // Lookups go straight to storage; only move over anything muted before it was ready
+            for (Map.Entry<UUID, MuteData> entry : mutedPlayers.entrySet()) {
+                storage.saveMute(entry.getKey(), entry.getValue());
+            }
+            mutedPlayers.clear();
             return;
         }
         
-        Map<UUID, MuteData> mutes = plugin.getDatabaseManager().loadMutes();
+        Map<UUID, MuteData> mutes = storage.loadMutes();
+        if (mutes == null) {
+            return;
+        }
+        mutedPlayers.keySet().retainAll(mutes.keySet());
         mutedPlayers.putAll(mutes);
         
         if (plugin.getConfigManager().isDebugEnabled()) {
-            plugin.getLogger().info("Loaded " + mutes.size() + " mutes from database");
+            plugin.getLogger().info("Loaded " + mutes.size() + " mutes from " + storage.getName() + " storage");
         }
     }
     
     /**
-     * Load mutes from YAML
+     * Save a single mute to storage
      */
-    public void loadMutesFromYAML() {
-        if (plugin.getYAMLStorage() == null) {
-            return;
+    private void saveMute(UUID uuid, MuteData muteData) {
+        MuteStorage storage = getStorage();
+        if (storage != null) {
+            long start = System.nanoTime();
+            storage.saveMute(uuid, muteData);
+            stats.recordSince(StatsManager.Stage.STORAGE_WRITE, start);
         }
-        
-        Map<UUID, MuteData> mutes = plugin.getYAMLStorage().loadMutes();
-        mutedPlayers.putAll(mutes);
-        
-        if (plugin.getConfigManager().isDebugEnabled()) {
-            plugin.getLogger().info("Loaded " + mutes.size() + " mutes from YAML");
+    }
+    
+    /**
+     * Remove a single mute from storage
+     */
+    private void removeMute(UUID uuid) {
+        MuteStorage storage = getStorage();
+        if (storage != null) {
+            long start = System.nanoTime();
+            storage.removeMute(uuid);
+            stats.recordSince(StatsManager.Stage.STORAGE_WRITE, start);
         }
     }
     
     /**
-     * Save a single mute to storage
+     * Storage to write mutes to, or null if there is none or this manager is not persistent
      */
-    private void saveMute(UUID uuid, MuteData muteData) {
-        if (plugin.getDatabaseManager() != null && plugin.getDatabaseManager().isConnected()) {
-            plugin.getDatabaseManager().saveMute(uuid, muteData);
-        } else if (plugin.getYAMLStorage() != null) {
-            plugin.getYAMLStorage().saveMute(uuid, muteData);
+    private MuteStorage getStorage() {
+        return persistent ? plugin.getMuteStorage() : null;
+    }
+    
+    /**
+     * Whether mutes are read from storage rather than kept in memory
+     */
+    private boolean isServedInPlace() {
+        MuteStorage storage = getStorage();
+        return storage != null && storage.isServedInPlace();
+    }
+    
+    /**
+     * A player's mute from memory or, when served in place, from storage.
+     * A mute read from storage is a copy; changes to it are written back with saveMute.
+     */
+    private MuteData lookup(UUID uuid) {
+        MuteData muteData = mutedPlayers.get(uuid);
+        if (muteData == null && isServedInPlace()) {
+            muteData = getStorage().getMute(uuid);
         }
+        return muteData;
+    }
+    
+    /**
+     * Number of players currently muted
+     */
+    public int getMutedCount() {
+        return isServedInPlace() ? getStorage().getMuteCount() : mutedPlayers.size();
     }
     
     /**
-     * Save all mutes to storage
+     * Every mute, as a read-only view of the live map
+     */
+    public Map<UUID, MuteData> getMutes() {
+        return Collections.unmodifiableMap(mutedPlayers);
+    }
+    
+    /**
+     * Save all mutes to storage, for the file backends that keep a full copy
      */
     public void saveMutes() {
-        if (plugin.getDatabaseManager() != null && plugin.getDatabaseManager().isConnected()) {
-            for (Map.Entry<UUID, MuteData> entry : mutedPlayers.entrySet()) {
-                plugin.getDatabaseManager().saveMute(entry.getKey(), entry.getValue());
-            }
-        } else if (plugin.getYAMLStorage() != null) {
-            plugin.getYAMLStorage().saveMutes(mutedPlayers);
+        MuteStorage storage = getStorage();
+        if (storage != null && !storage.isServedInPlace() && !storage.isWriteThrough()) {
+            storage.saveMutes(mutedPlayers);
         }
     }
     
@@ -212,19 +281,34 @@ public class MuteManager {
      * Uses Folia's async scheduler for compatibility
      */
     private void startUnmuteChecker() {
+        int[] runs = new int[1];
         plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, (task) -> {
-            long now = System.currentTimeMillis();
+            long now = plugin.getClock().millis();
+            
+            // Mutes served from storage are swept once a second rather than every run, since
+            // that walks the whole table; isMuted still expires them the moment the player chats
+            if (isServedInPlace() && runs[0]++ % 20 == 0) {
+                List<UUID> expired = new ArrayList<>();
+                getStorage().forEachMute((uuid, muteData) -> {
+                    if (!muteData.isPaused && now >= muteData.endTime) {
+                        expired.add(uuid);
+                    }
+                });
+                for (UUID uuid : expired) {
+                    removeMute(uuid);
+                    audit.record(AuditManager.Type.UNMUTE, uuid, null, null, null, null, "expired");
+                }
+            }
+            
             mutedPlayers.entrySet().removeIf(entry -> {
                 MuteData muteData = entry.getValue();
                 if (!muteData.isPaused && now >= muteData.endTime) {
                     UUID uuid = entry.getKey();
                     
                     // Remove from storage
-                    if (plugin.getDatabaseManager() != null && plugin.getDatabaseManager().isConnected()) {
-                        plugin.getDatabaseManager().removeMute(uuid);
-                    } else if (plugin.getYAMLStorage() != null) {
-                        plugin.getYAMLStorage().removeMute(uuid);
-                    }
+                    removeMute(uuid);
+                    
+                    audit.record(AuditManager.Type.UNMUTE, uuid, null, null, null, null, "expired");
                     
                     if (plugin.getConfigManager().isDebugEnabled()) {
                         plugin.getLogger().info("Auto-unmuted player " + uuid);
@@ -237,6 +321,47 @@ public class MuteManager {
         }, 50L, 50L, java.util.concurrent.TimeUnit.MILLISECONDS); // Run every second
     }
     
+    /**
+     * Poll the storage change log and apply other servers' mutes to the local cache
+     */
+    private void startChangeSync() {
+        if (!plugin.getConfigManager().isMuteSyncEnabled()) {
+            return;
+        }
+        
+        long interval = Math.max(50L, plugin.getConfigManager().getMuteSyncIntervalMillis());
+        plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, (task) -> {
+            MuteStorage storage = getStorage();
+            if (storage != null) {
+                storage.pollChanges(this::applyRemoteChange);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Apply a mute change from another server without writing it back to storage.
+     * A paused mute is that server pausing the timer as the player left it;
+     * if they are online here they have moved to this server, and the timer runs here.
+     */
+    private void applyRemoteChange(UUID uuid, MuteData muteData) {
+        if (muteData == null) {
+            mutedPlayers.remove(uuid);
+        } else if (muteData.isPaused && Bukkit.getPlayer(uuid) != null) {
+            MuteData local = mutedPlayers.get(uuid);
+            if (local != null && !local.isPaused) {
+                return;
+            }
+            mutedPlayers.put(uuid, new MuteData(plugin.getClock().millis() + muteData.pausedTimeRemaining,
+                    muteData.originalDuration));
+        } else {
+            mutedPlayers.put(uuid, muteData);
+        }
+        
+        if (plugin.getConfigManager().isDebugEnabled()) {
+            plugin.getLogger().info((muteData == null ? "Synced unmute of " : "Synced mute of ") + uuid + " from another server");
+        }
+    }
+    
     /**
      * Data class for mute information
      */
@@ -0,0 +1,207 @@
+package com.chatmanagement.managers;
+
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Case-insensitive trie of online player names.
+ * Updated on join and quit, so resolving or completing a name walks at most
+ * one node per character instead of scanning every online player.
+ */
+public class PlayerNameIndex {
+    
+    private final Node root;
+    private int size;
+    
+    public PlayerNameIndex() {
+        this.root = new Node();
+    }
+    
+    /**
+     * Add an online player, replacing any stale entry with the same name
+     */
+    public synchronized void add(Player player) {
+        String name = player.getName();
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.childOrCreate(fold(name.charAt(i)));
+        }
+        
+        if (node.player == null) {
+            size++;
+        }
+        node.player = player;
+    }
+    
+    /**
+     * Remove a player, pruning branches that no longer lead to any name
+     */
+    public synchronized void remove(Player player) {
+        String name = player.getName();
+        Node[] path = new Node[name.length() + 1];
+        path[0] = root;
+        
+        for (int i = 0; i < name.length(); i++) {
+            path[i + 1] = path[i].child(fold(name.charAt(i)));
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        
+        Node node = path[name.length()];
+        // A newer session under the same name may already have replaced this one
+        if (node.player == null || !node.player.getUniqueId().equals(player.getUniqueId())) {
+            return;
+        }
+        node.player = null;
+        size--;
+        
+        for (int i = name.length(); i > 0 && path[i].player == null && path[i].childCount == 0; i--) {
+            path[i - 1].removeChild(fold(name.charAt(i - 1)));
+        }
+    }
+    
+    /**
+     * Find the online player with exactly this name, ignoring case
+     */
+    public synchronized Player getExact(String name) {
+        Node node = find(name);
+        return node != null ? node.player : null;
+    }
+    
+    /**
+     * Resolve a name the way Bukkit.getPlayer does: an exact match wins,
+     * otherwise the shortest name starting with the given prefix
+     */
+    public synchronized Player getPlayer(String name) {
+        Node node = find(name);
+        if (node == null) {
+            return null;
+        }
+        
+        // Breadth-first, so the first player found has the shortest name
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        queue.add(node);
+        while (!queue.isEmpty()) {
+            Node current = queue.poll();
+            if (current.player != null) {
+                return current.player;
+            }
+            for (int i = 0; i < current.childCount; i++) {
+                queue.add(current.children[i]);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Names starting with the prefix, in alphabetical order, of players accepted by the filter
+     */
+    public synchronized List<String> complete(String prefix, Predicate<Player> filter, int limit) {
+        List<String> names = new ArrayList<>();
+        Node node = find(prefix);
+        if (node != null) {
+            collect(node, filter, limit, names);
+        }
+        return names;
+    }
+    
+    /**
+     * Number of players in the index
+     */
+    public synchronized int size() {
+        return size;
+    }
+    
+    public synchronized void clear() {
+        root.childCount = 0;
+        root.keys = Node.NO_KEYS;
+        root.children = Node.NO_CHILDREN;
+        size = 0;
+    }
+    
+    private Node find(String name) {
+        Node node = root;
+        for (int i = 0; i < name.length() && node != null; i++) {
+            node = node.child(fold(name.charAt(i)));
+        }
+        return node;
+    }
+    
+    private static boolean collect(Node node, Predicate<Player> filter, int limit, List<String> names) {
+        if (node.player != null && filter.test(node.player)) {
+            names.add(node.player.getName());
+            if (names.size() >= limit) {
+                return false;
+            }
+        }
+        
+        for (int i = 0; i < node.childCount; i++) {
+            if (!collect(node.children[i], filter, limit, names)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static char fold(char c) {
+        return Character.toLowerCase(c);
+    }
+    
+    /**
+     * Trie node with children kept in sorted key order for binary search
+     */
+    private static class Node {
+        static final char[] NO_KEYS = new char[0];
+        static final Node[] NO_CHILDREN = new Node[0];
+        
+        char[] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        int childCount;
+        Player player;
+        
+        Node child(char key) {
+            int index = Arrays.binarySearch(keys, 0, childCount, key);
+            return index >= 0 ? children[index] : null;
+        }
+        
+        Node childOrCreate(char key) {
+            int index = Arrays.binarySearch(keys, 0, childCount, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            
+            int pos = -index - 1;
+            if (childCount == keys.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, pos, keys, pos + 1, childCount - pos);
+            System.arraycopy(children, pos, children, pos + 1, childCount - pos);
+            
+            Node node = new Node();
+            keys[pos] = key;
+            children[pos] = node;
+            childCount++;
+            return node;
+        }
+        
+        void removeChild(char key) {
+            int index = Arrays.binarySearch(keys, 0, childCount, key);
+            if (index < 0) {
+                return;
+            }
+            
+            System.arraycopy(keys, index + 1, keys, index, childCount - index - 1);
+            System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+            childCount--;
+            children[childCount] = null;
+        }
+    }
+}
@@ -4,20 +4,19 @@ import com.chatmanagement.ChatManagement2;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
+import org.bukkit.metadata.MetadataValue;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.UUID;
 
 public class PrivateMessageManager {
     
     private final ChatManagement2 plugin;
-    private final Map<UUID, UUID> lastMessaged; // sender -> receiver
+    private final ConversationIndex lastMessaged; // player -> reply target, with reverse lookup
     private final LegacyComponentSerializer serializer = LegacyComponentSerializer.legacyAmpersand();
     
     public PrivateMessageManager(ChatManagement2 plugin) {
         this.plugin = plugin;
-        this.lastMessaged = new HashMap<>();
+        this.lastMessaged = new ConversationIndex();
     }
     
     /**
@@ -25,8 +24,27 @@ public class PrivateMessageManager {
      * Returns true if message was sent successfully
      */
     public boolean sendPrivateMessage(Player sender, Player receiver, String message) {
+        StatsManager stats = plugin.getStatsManager();
+        long start = System.nanoTime();
+        stats.increment(StatsManager.Counter.PRIVATE_MESSAGES);
+        
+        try {
+            return deliver(sender, receiver, message, stats);
+        } finally {
+            stats.recordSince(StatsManager.Stage.PRIVATE_MESSAGE, start);
+        }
+    }
+    
+    private boolean deliver(Player sender, Player receiver, String message, StatsManager stats) {
+        // Fail closed until mutes and filters have loaded
+        if (!plugin.isReady()) {
+            sender.sendMessage(serializer.deserialize(plugin.getConfigManager().getStartingUpMessage()));
+            return false;
+        }
+        
         // Check if sender is muted
         if (plugin.getMuteManager().isMuted(sender.getUniqueId())) {
+            stats.increment(StatsManager.Counter.BLOCKED_MUTED);
             int remaining = plugin.getMuteManager().getRemainingTime(sender.getUniqueId());
             String muteMsg = plugin.getConfigManager().getMuteMessage()
                     .replace("{time}", String.valueOf(remaining));
@@ -36,20 +54,61 @@ public class PrivateMessageManager {
         
         // Check for blocked words
         if (plugin.getBlockedWordsManager().containsBlockedWord(message)) {
+            stats.increment(StatsManager.Counter.BLOCKED_WORD);
+            plugin.getAuditManager().record(AuditManager.Type.BLOCKED_WORD, sender, receiver, message, "private message");
             if (plugin.getConfigManager().shouldNotifyBlocked()) {
                 sender.sendMessage(serializer.deserialize(plugin.getConfigManager().getBlockedMessageNotification()));
             }
             return false;
         }
         
-        // Check for spam (duplicate messages)
-        if (plugin.getSpamDetectionManager().isDuplicateSpam(sender, message)) {
-            if (plugin.getConfigManager().shouldNotifyBlocked()) {
-                sender.sendMessage(serializer.deserialize(plugin.getConfigManager().getBlockedMessageNotification()));
+        // Check for links and server addresses
+        String advertisement = plugin.getAdvertisingManager().findAdvertisement(message);
+        if (advertisement != null) {
+            stats.increment(StatsManager.Counter.BLOCKED_ADVERTISING);
+            plugin.getAuditManager().record(AuditManager.Type.ADVERTISING, sender, receiver, message, advertisement);
+            if (plugin.getConfigManager().shouldNotifyAdvertising()) {
+                sender.sendMessage(serializer.deserialize(plugin.getConfigManager().getAdvertisingMessage()));
             }
             return false;
         }
         
+        // Check if receiver is ignoring the sender, before the spam check so a
+        // PM that is never delivered doesn't use up the sender's PM budget
+        if (plugin.getConfigManager().isIgnoreEnabled()
+                && !sender.hasPermission(plugin.getConfigManager().getBypassPermission())
+                && plugin.getIgnoreManager().isIgnoring(receiver.getUniqueId(), sender.getUniqueId())) {
+            sender.sendMessage(serializer.deserialize("&cThat player is not accepting messages from you."));
+            return false;
+        }
+        
+        // Check for PM spam (rate, new recipients, duplicates to the same receiver)
+        SpamDetectionManager.PMCheck check = plugin.getSpamDetectionManager().checkPrivateMessage(sender, receiver, message);
+        if (check != SpamDetectionManager.PMCheck.ALLOWED) {
+            AuditManager.Type type = check == SpamDetectionManager.PMCheck.KICK ? AuditManager.Type.SPAM_KICK
+                    : check == SpamDetectionManager.PMCheck.DUPLICATE ? AuditManager.Type.DUPLICATE : AuditManager.Type.PM_BLOCKED;
+            plugin.getAuditManager().record(type, sender, receiver, message, check.name().toLowerCase().replace('_', ' '));
+        }
+        switch (check) {
+            case KICK:
+                stats.increment(StatsManager.Counter.SPAM_KICKS);
+                sender.kick(serializer.deserialize(plugin.getConfigManager().getSpamKickMessage()));
+                return false;
+            case RATE_LIMITED:
+            case TOO_MANY_RECIPIENTS:
+                stats.increment(StatsManager.Counter.BLOCKED_PM_LIMIT);
+                sender.sendMessage(serializer.deserialize(plugin.getConfigManager().getPMRateLimitMessage()));
+                return false;
+            case DUPLICATE:
+                stats.increment(StatsManager.Counter.BLOCKED_DUPLICATE);
+                if (plugin.getConfigManager().shouldNotifyBlocked()) {
+                    sender.sendMessage(serializer.deserialize(plugin.getConfigManager().getBlockedMessageNotification()));
+                }
+                return false;
+            default:
+                break;
+        }
+        
         // Format messages
         String senderFormat = plugin.getConfigManager().getPMSentFormat()
                 .replace("{sender}", sender.getName())
@@ -73,10 +132,12 @@ public class PrivateMessageManager {
         }
         
         receiver.sendMessage(serializer.deserialize(receiverFormat));
+        plugin.getAuditManager().record(AuditManager.Type.PRIVATE_MESSAGE, sender, receiver, message, null);
+        plugin.getChatArchiveManager().recordPrivateMessage(sender, receiver, message);
         
         // Track last messaged for reply functionality
-        lastMessaged.put(sender.getUniqueId(), receiver.getUniqueId());
-        lastMessaged.put(receiver.getUniqueId(), sender.getUniqueId());
+        lastMessaged.setReplyTarget(sender.getUniqueId(), receiver.getUniqueId());
+        lastMessaged.setReplyTarget(receiver.getUniqueId(), sender.getUniqueId());
         
         if (plugin.getConfigManager().isVerboseEnabled()) {
             plugin.getLogger().info("PM from " + sender.getName() + " to " + receiver.getName() + ": " + message);
@@ -90,7 +151,7 @@ public class PrivateMessageManager {
      * Returns true if reply was sent successfully
      */
     public boolean sendReply(Player sender, String message) {
-        UUID lastRecipient = lastMessaged.get(sender.getUniqueId());
+        UUID lastRecipient = lastMessaged.getReplyTarget(sender.getUniqueId());
         
         if (lastRecipient == null) {
             sender.sendMessage(serializer.deserialize("&cYou have no one to reply to."));
@@ -101,27 +162,64 @@ public class PrivateMessageManager {
         
         if (receiver == null || !receiver.isOnline()) {
             sender.sendMessage(serializer.deserialize("&cThat player is no longer online."));
-            lastMessaged.remove(sender.getUniqueId());
+            lastMessaged.removeReplyTarget(sender.getUniqueId());
             return false;
         }
         
         return sendPrivateMessage(sender, receiver, message);
     }
     
+    /**
+     * Whether target is hidden from sender by a vanish plugin
+     */
+    public boolean isHidden(Player sender, Player target) {
+        if (!sender.canSee(target)) {
+            return true;
+        }
+        return isVanished(target) && !sender.hasPermission(plugin.getConfigManager().getBypassPermission());
+    }
+    
+    /**
+     * Whether target should be offered to sender in tab completion.
+     * Skips vanished players and players on either side of an ignore.
+     */
+    public boolean isSuggestable(Player sender, Player target) {
+        if (target.equals(sender) || isHidden(sender, target)) {
+            return false;
+        }
+        
+        if (plugin.getConfigManager().isIgnoreEnabled()) {
+            IgnoreManager ignoreManager = plugin.getIgnoreManager();
+            return !ignoreManager.isIgnoring(sender.getUniqueId(), target.getUniqueId())
+                    && !ignoreManager.isIgnoring(target.getUniqueId(), sender.getUniqueId());
+        }
+        return true;
+    }
+    
+    /**
+     * Vanish plugins mark hidden players with "vanished" metadata
+     */
+    private boolean isVanished(Player player) {
+        for (MetadataValue value : player.getMetadata("vanished")) {
+            if (value.asBoolean()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Get the last person this player messaged
      */
     public UUID getLastMessaged(UUID uuid) {
-        return lastMessaged.get(uuid);
+        return lastMessaged.getReplyTarget(uuid);
     }
     
     /**
      * Clear conversation data for a player
      */
     public void clearPlayerData(UUID uuid) {
-        lastMessaged.remove(uuid);
-        
-        // Also remove any references to this player from others
-        lastMessaged.entrySet().removeIf(entry -> entry.getValue().equals(uuid));
+        // Removes the player's own entry and, via the reverse index, only the entries pointing at them
+        lastMessaged.clear(uuid);
     }
 }
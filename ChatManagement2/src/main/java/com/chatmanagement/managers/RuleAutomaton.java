@@ -0,0 +1,675 @@
+package com.chatmanagement.managers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Several regular expressions compiled together into one DFA.
+ * Searching reads each character once with one table lookup, however many
+ * patterns there are, and can never backtrack. Matching is case-insensitive.
+ * <p>
+ * The syntax is the regular part of Java's: literals, ., [classes] with
+ * ranges and negation, \d \w \s and their negations, groups, | and the
+ * quantifiers * + ? {n} {n,} {n,m}. Anchors, lookaround and backreferences
+ * have no DFA equivalent and are rejected.
+ */
+public final class RuleAutomaton {
+    
+    private static final int MAX_STATES = 10_000;
+    private static final int MAX_REPEAT = 100;
+    private static final int MAX_NFA_STATES = 100_000;
+    private static final int ALPHABET = Character.MAX_VALUE + 1;
+    
+    private final char[] classOf;
+    private final int[] transitions;
+    private final int[] accepts;
+    private final int classCount;
+    
+    private RuleAutomaton(char[] classOf, int[] transitions, int[] accepts, int classCount) {
+        this.classOf = classOf;
+        this.transitions = transitions;
+        this.accepts = accepts;
+        this.classCount = classCount;
+    }
+    
+    /**
+     * Compile patterns into one automaton. Throws IllegalArgumentException
+     * naming the pattern and position if a pattern can't be compiled.
+     */
+    public static RuleAutomaton compile(List<String> patterns) {
+        Nfa nfa = new Nfa();
+        int start = nfa.add();
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            Node node = new Parser(pattern).parse();
+            int[] fragment = nfa.build(node);
+            if (nfa.closure(new int[]{fragment[0]}).get(fragment[1])) {
+                throw new IllegalArgumentException("Pattern '" + pattern + "' matches empty text");
+            }
+            nfa.epsilon(start, fragment[0]);
+            nfa.accept.set(fragment[1], i);
+        }
+        return determinize(nfa, start);
+    }
+    
+    /**
+     * Number of DFA states, for reporting
+     */
+    public int getStateCount() {
+        return accepts.length;
+    }
+    
+    /**
+     * Index of the first-listed pattern that matches anywhere in the text,
+     * or -1. The whole text is read unless pattern 0 matches, since a
+     * pattern listed earlier may match later in the text.
+     */
+    public int find(CharSequence text) {
+        int best = -1;
+        int offset = 0;
+        for (int i = 0; i < text.length(); i++) {
+            offset = transitions[offset + classOf[text.charAt(i)]];
+            if (offset < 0) {
+                offset = ~offset;
+                int accept = accepts[offset / classCount];
+                if (best < 0 || accept < best) {
+                    best = accept;
+                    if (best == 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Subset construction over character classes. The start state is added
+     * to every subset, so the DFA finds matches starting anywhere.
+     */
+    private static RuleAutomaton determinize(Nfa nfa, int start) {
+        // Split the alphabet at every range boundary so each class behaves the same in every state
+        TreeSet<Integer> boundaries = new TreeSet<>();
+        boundaries.add(0);
+        for (int[] ranges : nfa.ranges) {
+            if (ranges != null) {
+                for (int i = 0; i < ranges.length; i += 2) {
+                    boundaries.add(ranges[i]);
+                    boundaries.add(ranges[i + 1] + 1);
+                }
+            }
+        }
+        boundaries.remove(ALPHABET);
+        
+        char[] classOf = new char[ALPHABET];
+        int classCount = 0;
+        Integer from = boundaries.first();
+        while (from != null) {
+            Integer to = boundaries.higher(from);
+            Arrays.fill(classOf, from, to != null ? to : ALPHABET, (char) classCount);
+            classCount++;
+            from = to;
+        }
+        
+        // Classes each character transition accepts
+        int stateCount = nfa.ranges.size();
+        BitSet[] accepted = new BitSet[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            int[] ranges = nfa.ranges.get(s);
+            if (ranges != null) {
+                accepted[s] = new BitSet(classCount);
+                for (int i = 0; i < ranges.length; i += 2) {
+                    accepted[s].set(classOf[ranges[i]], classOf[ranges[i + 1]] + 1);
+                }
+            }
+        }
+        
+        BitSet startSet = nfa.closure(new int[]{start});
+        Map<BitSet, Integer> ids = new HashMap<>();
+        List<BitSet> sets = new ArrayList<>();
+        Deque<Integer> pending = new ArrayDeque<>();
+        ids.put(startSet, 0);
+        sets.add(startSet);
+        pending.add(0);
+        
+        int[] transitions = new int[classCount * 16];
+        while (!pending.isEmpty()) {
+            int id = pending.poll();
+            BitSet set = sets.get(id);
+            for (int c = 0; c < classCount; c++) {
+                int[] targets = new int[set.cardinality() + 1];
+                int count = 0;
+                targets[count++] = start;
+                for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                    if (accepted[s] != null && accepted[s].get(c)) {
+                        targets[count++] = nfa.target.get(s);
+                    }
+                }
+                
+                BitSet next = nfa.closure(Arrays.copyOf(targets, count));
+                Integer nextId = ids.get(next);
+                if (nextId == null) {
+                    if (sets.size() >= MAX_STATES) {
+                        throw new IllegalArgumentException("Rules need more than " + MAX_STATES
+                                + " automaton states; simplify them or use fewer large {n,m} repeats");
+                    }
+                    nextId = sets.size();
+                    ids.put(next, nextId);
+                    sets.add(next);
+                    pending.add(nextId);
+                }
+                
+                int index = id * classCount + c;
+                if (index >= transitions.length) {
+                    transitions = Arrays.copyOf(transitions, Math.max(index + 1, transitions.length * 2));
+                }
+                transitions[index] = nextId;
+            }
+        }
+        
+        int[] accepts = new int[sets.size()];
+        for (int id = 0; id < accepts.length; id++) {
+            accepts[id] = -1;
+            BitSet set = sets.get(id);
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                int accept = nfa.accept.get(s);
+                if (accept >= 0 && (accepts[id] < 0 || accept < accepts[id])) {
+                    accepts[id] = accept;
+                }
+            }
+        }
+        
+        // Look up each character by its lowercase form, and store targets
+        // premultiplied by the class count, so a step is two array reads.
+        // A move into an accepting state is stored complemented, so the
+        // search only looks up which pattern accepted when one has.
+        char[] lowerClassOf = new char[ALPHABET];
+        for (int c = 0; c < ALPHABET; c++) {
+            int lower = Character.toLowerCase(c);
+            lowerClassOf[c] = classOf[lower <= Character.MAX_VALUE ? lower : c];
+        }
+        transitions = Arrays.copyOf(transitions, sets.size() * classCount);
+        for (int i = 0; i < transitions.length; i++) {
+            int target = transitions[i] * classCount;
+            transitions[i] = accepts[transitions[i]] >= 0 ? ~target : target;
+        }
+        
+        return new RuleAutomaton(lowerClassOf, transitions, accepts, classCount);
+    }
+    
+    /**
+     * Thompson NFA: each state has either one character transition or any
+     * number of empty transitions
+     */
+    private static final class Nfa {
+        final List<int[]> ranges = new ArrayList<>();
+        final List<Integer> target = new ArrayList<>();
+        final List<int[]> epsilons = new ArrayList<>();
+        final List<Integer> accept = new ArrayList<>();
+        
+        int add() {
+            if (ranges.size() >= MAX_NFA_STATES) {
+                throw new IllegalArgumentException("Rules are too large to compile");
+            }
+            ranges.add(null);
+            target.add(-1);
+            epsilons.add(new int[0]);
+            accept.add(-1);
+            return ranges.size() - 1;
+        }
+        
+        void epsilon(int from, int to) {
+            int[] existing = epsilons.get(from);
+            int[] updated = Arrays.copyOf(existing, existing.length + 1);
+            updated[existing.length] = to;
+            epsilons.set(from, updated);
+        }
+        
+        /**
+         * Build a fragment for a node, returning its start and end states
+         */
+        int[] build(Node node) {
+            if (node instanceof CharSet) {
+                int start = add();
+                int end = add();
+                ranges.set(start, ((CharSet) node).ranges);
+                target.set(start, end);
+                return new int[]{start, end};
+            }
+            
+            if (node instanceof Concat) {
+                int start = add();
+                int end = start;
+                for (Node part : ((Concat) node).parts) {
+                    int[] fragment = build(part);
+                    epsilon(end, fragment[0]);
+                    end = fragment[1];
+                }
+                return new int[]{start, end};
+            }
+            
+            if (node instanceof Alternation) {
+                int start = add();
+                int end = add();
+                for (Node option : ((Alternation) node).options) {
+                    int[] fragment = build(option);
+                    epsilon(start, fragment[0]);
+                    epsilon(fragment[1], end);
+                }
+                return new int[]{start, end};
+            }
+            
+            Repeat repeat = (Repeat) node;
+            int start = add();
+            int end = start;
+            for (int i = 0; i < repeat.min; i++) {
+                int[] fragment = build(repeat.node);
+                epsilon(end, fragment[0]);
+                end = fragment[1];
+            }
+            
+            if (repeat.max < 0) {
+                // Any number more: loop back to a hub that can also leave
+                int hub = add();
+                int[] fragment = build(repeat.node);
+                epsilon(end, hub);
+                epsilon(hub, fragment[0]);
+                epsilon(fragment[1], hub);
+                end = hub;
+            } else {
+                int last = add();
+                for (int i = repeat.min; i < repeat.max; i++) {
+                    int[] fragment = build(repeat.node);
+                    epsilon(end, fragment[0]);
+                    epsilon(end, last);
+                    end = fragment[1];
+                }
+                epsilon(end, last);
+                end = last;
+            }
+            return new int[]{start, end};
+        }
+        
+        /**
+         * States reachable from the given ones through empty transitions
+         */
+        BitSet closure(int[] states) {
+            BitSet seen = new BitSet(ranges.size());
+            Deque<Integer> stack = new ArrayDeque<>();
+            for (int state : states) {
+                if (!seen.get(state)) {
+                    seen.set(state);
+                    stack.push(state);
+                }
+            }
+            while (!stack.isEmpty()) {
+                for (int next : epsilons.get(stack.pop())) {
+                    if (!seen.get(next)) {
+                        seen.set(next);
+                        stack.push(next);
+                    }
+                }
+            }
+            return seen;
+        }
+    }
+    
+    private interface Node {
+    }
+    
+    /**
+     * One character from a set of ranges, stored as sorted inclusive pairs
+     */
+    private static final class CharSet implements Node {
+        final int[] ranges;
+        
+        CharSet(int[] ranges) {
+            this.ranges = ranges;
+        }
+    }
+    
+    private static final class Concat implements Node {
+        final List<Node> parts;
+        
+        Concat(List<Node> parts) {
+            this.parts = parts;
+        }
+    }
+    
+    private static final class Alternation implements Node {
+        final List<Node> options;
+        
+        Alternation(List<Node> options) {
+            this.options = options;
+        }
+    }
+    
+    private static final class Repeat implements Node {
+        final Node node;
+        final int min;
+        final int max;
+        
+        Repeat(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+    }
+    
+    /**
+     * Recursive descent parser for the supported syntax
+     */
+    private static final class Parser {
+        private static final int[] DIGIT = {'0', '9'};
+        private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+        private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+        
+        private final String pattern;
+        private int pos;
+        
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+        
+        Node parse() {
+            Node node = alternation();
+            if (pos < pattern.length()) {
+                throw error("Unmatched )");
+            }
+            return node;
+        }
+        
+        private Node alternation() {
+            List<Node> options = new ArrayList<>();
+            options.add(sequence());
+            while (peek('|')) {
+                pos++;
+                options.add(sequence());
+            }
+            return options.size() == 1 ? options.get(0) : new Alternation(options);
+        }
+        
+        private Node sequence() {
+            List<Node> parts = new ArrayList<>();
+            while (pos < pattern.length() && !peek('|') && !peek(')')) {
+                parts.add(quantified(atom()));
+            }
+            return parts.size() == 1 ? parts.get(0) : new Concat(parts);
+        }
+        
+        private Node quantified(Node node) {
+            while (pos < pattern.length()) {
+                char c = pattern.charAt(pos);
+                int min;
+                int max;
+                if (c == '*') {
+                    pos++;
+                    min = 0;
+                    max = -1;
+                } else if (c == '+') {
+                    pos++;
+                    min = 1;
+                    max = -1;
+                } else if (c == '?') {
+                    pos++;
+                    min = 0;
+                    max = 1;
+                } else if (c == '{') {
+                    pos++;
+                    min = number();
+                    max = min;
+                    if (peek(',')) {
+                        pos++;
+                        max = peek('}') ? -1 : number();
+                    }
+                    expect('}');
+                    if (max >= 0 && max < min) {
+                        throw error("Repeat maximum is below its minimum");
+                    }
+                    if (Math.max(min, max) > MAX_REPEAT) {
+                        throw error("Repeats are limited to " + MAX_REPEAT);
+                    }
+                } else {
+                    return node;
+                }
+                
+                // Lazy quantifiers find the same matches here; possessive ones can't be expressed
+                if (peek('?')) {
+                    pos++;
+                } else if (peek('+')) {
+                    throw error("Possessive quantifiers are not supported");
+                }
+                node = new Repeat(node, min, max);
+            }
+            return node;
+        }
+        
+        private Node atom() {
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case '(':
+                    if (peek('?')) {
+                        if (pos + 1 < pattern.length() && pattern.charAt(pos + 1) == ':') {
+                            pos += 2;
+                        } else {
+                            throw error("Lookaround and inline flags are not supported");
+                        }
+                    }
+                    Node group = alternation();
+                    expect(')');
+                    return group;
+                case '[':
+                    return new CharSet(characterClass());
+                case '.':
+                    return new CharSet(new int[]{0, Character.MAX_VALUE});
+                case '\\':
+                    return new CharSet(escape());
+                case '^':
+                case '$':
+                    throw error("Anchors are not supported, rules match anywhere in the message");
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw error("Nothing to repeat");
+                case ')':
+                    throw error("Unmatched )");
+                default:
+                    return new CharSet(fold(new int[]{c, c}));
+            }
+        }
+        
+        private int[] characterClass() {
+            boolean negated = peek('^');
+            if (negated) {
+                pos++;
+            }
+            
+            List<int[]> parts = new ArrayList<>();
+            boolean first = true;
+            while (pos < pattern.length() && (first || !peek(']'))) {
+                first = false;
+                char c = pattern.charAt(pos++);
+                if (c == '[') {
+                    throw error("Nested classes are not supported");
+                }
+                
+                int[] single;
+                if (c == '\\') {
+                    single = escape();
+                    if (single.length != 2 || single[0] != single[1]) {
+                        parts.add(single);
+                        continue;
+                    }
+                } else {
+                    single = new int[]{c, c};
+                }
+                
+                // A range like a-z, unless the - is the last character
+                if (peek('-') && pos + 1 < pattern.length() && pattern.charAt(pos + 1) != ']') {
+                    pos++;
+                    char high = pattern.charAt(pos++);
+                    int end = high;
+                    if (high == '\\') {
+                        int[] escaped = escape();
+                        if (escaped.length != 2 || escaped[0] != escaped[1]) {
+                            throw error("Invalid range");
+                        }
+                        end = escaped[0];
+                    }
+                    if (end < single[0]) {
+                        throw error("Invalid range");
+                    }
+                    parts.add(new int[]{single[0], end});
+                } else {
+                    parts.add(single);
+                }
+            }
+            expect(']');
+            
+            int[] ranges = fold(union(parts));
+            return negated ? negate(ranges) : ranges;
+        }
+        
+        private int[] escape() {
+            if (pos >= pattern.length()) {
+                throw error("Pattern ends with \\");
+            }
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case 'd':
+                    return DIGIT;
+                case 'D':
+                    return negate(DIGIT);
+                case 'w':
+                    return fold(WORD);
+                case 'W':
+                    return negate(fold(WORD));
+                case 's':
+                    return SPACE;
+                case 'S':
+                    return negate(SPACE);
+                case 't':
+                    return new int[]{'\t', '\t'};
+                case 'n':
+                    return new int[]{'\n', '\n'};
+                case 'r':
+                    return new int[]{'\r', '\r'};
+                case 'f':
+                    return new int[]{'\f', '\f'};
+                case 'u':
+                    if (pos + 4 > pattern.length()) {
+                        throw error("Invalid \\u escape");
+                    }
+                    try {
+                        int code = Integer.parseInt(pattern.substring(pos, pos + 4), 16);
+                        pos += 4;
+                        return fold(new int[]{code, code});
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid \\u escape");
+                    }
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        throw error("\\" + c + " is not supported");
+                    }
+                    return new int[]{c, c};
+            }
+        }
+        
+        private int number() {
+            int start = pos;
+            while (pos < pattern.length() && Character.isDigit(pattern.charAt(pos))) {
+                pos++;
+            }
+            if (start == pos || pos - start > 4) {
+                throw error("Expected a repeat count");
+            }
+            return Integer.parseInt(pattern.substring(start, pos));
+        }
+        
+        private boolean peek(char c) {
+            return pos < pattern.length() && pattern.charAt(pos) == c;
+        }
+        
+        private void expect(char c) {
+            if (!peek(c)) {
+                throw error("Expected " + c);
+            }
+            pos++;
+        }
+        
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos + " in '" + pattern + "'");
+        }
+    }
+    
+    /**
+     * Add the lowercase form of every character, as input is lowercased
+     * before matching. Very wide ranges are only folded for Latin letters.
+     */
+    private static int[] fold(int[] ranges) {
+        List<int[]> parts = new ArrayList<>();
+        parts.add(ranges);
+        for (int i = 0; i < ranges.length; i += 2) {
+            int low = ranges[i];
+            int high = ranges[i + 1] - low > 4096 ? Math.min(ranges[i + 1], 0x24F) : ranges[i + 1];
+            for (int c = low; c <= high; c++) {
+                int lower = Character.toLowerCase(c);
+                if (lower != c && lower <= Character.MAX_VALUE) {
+                    parts.add(new int[]{lower, lower});
+                }
+            }
+        }
+        return union(parts);
+    }
+    
+    /**
+     * Merge range lists into one sorted list without overlaps
+     */
+    private static int[] union(List<int[]> parts) {
+        List<int[]> pairs = new ArrayList<>();
+        for (int[] ranges : parts) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                pairs.add(new int[]{ranges[i], ranges[i + 1]});
+            }
+        }
+        pairs.sort((a, b) -> Integer.compare(a[0], b[0]));
+        
+        int[] merged = new int[pairs.size() * 2];
+        int count = 0;
+        for (int[] pair : pairs) {
+            if (count > 0 && pair[0] <= merged[count - 1] + 1) {
+                merged[count - 1] = Math.max(merged[count - 1], pair[1]);
+            } else {
+                merged[count++] = pair[0];
+                merged[count++] = pair[1];
+            }
+        }
+        return Arrays.copyOf(merged, count);
+    }
+    
+    private static int[] negate(int[] ranges) {
+        int[] negated = new int[ranges.length + 2];
+        int count = 0;
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                negated[count++] = next;
+                negated[count++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            negated[count++] = next;
+            negated[count++] = Character.MAX_VALUE;
+        }
+        return Arrays.copyOf(negated, count);
+    }
+}
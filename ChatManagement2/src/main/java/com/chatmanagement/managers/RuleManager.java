@@ -0,0 +1,203 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.jfr.DetectorEvent;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * User-defined regex rules from the rules section of the config.
+ * Every rule is compiled into one automaton, so a message is scanned once
+ * however many rules there are, and a pathological pattern can't make a
+ * check backtrack.
+ */
+public class RuleManager {
+    
+    /**
+     * What happens to a message that matches a rule
+     */
+    public enum Action {
+        BLOCK(1),
+        WARN(0),
+        KICK(2),
+        MUTE(3);
+        
+        private final int severity;
+        
+        Action(int severity) {
+            this.severity = severity;
+        }
+        
+        /**
+         * Higher is harsher; when a message matches several rules the
+         * harshest applies
+         */
+        public int getSeverity() {
+            return severity;
+        }
+    }
+    
+    /**
+     * One configured rule
+     */
+    public static final class Rule {
+        private final String name;
+        private final String pattern;
+        private final Action action;
+        private final String message;
+        private final int muteSeconds;
+        
+        Rule(String name, String pattern, Action action, String message, int muteSeconds) {
+            this.name = name;
+            this.pattern = pattern;
+            this.action = action;
+            this.message = message;
+            this.muteSeconds = muteSeconds;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public String getPattern() {
+            return pattern;
+        }
+        
+        public Action getAction() {
+            return action;
+        }
+        
+        /**
+         * Message sent to the player, empty for none
+         */
+        public String getMessage() {
+            return message;
+        }
+        
+        public int getMuteSeconds() {
+            return muteSeconds;
+        }
+    }
+    
+    /**
+     * Rules and their automaton, swapped together on reload
+     */
+    private static final class Compiled {
+        final Rule[] rules;
+        final RuleAutomaton automaton;
+        
+        Compiled(Rule[] rules, RuleAutomaton automaton) {
+            this.rules = rules;
+            this.automaton = automaton;
+        }
+    }
+    
+    private static final Compiled NONE = new Compiled(new Rule[0], null);
+    
+    private final ChatManagement2 plugin;
+    private volatile Compiled compiled;
+    
+    public RuleManager(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        this.compiled = NONE;
+        
+        // Rules are compiled by the plugin's startup task, see reload()
+    }
+    
+    /**
+     * Compile the configured rules. A rule that is invalid on its own is
+     * skipped with a warning naming it; the rest still load.
+     */
+    public void reload() {
+        ConfigManager config = plugin.getConfigManager();
+        ConfigurationSection section = config.getRulesSection();
+        if (!config.isRulesEnabled() || section == null) {
+            compiled = NONE;
+            return;
+        }
+        
+        List<Rule> loaded = new ArrayList<>();
+        for (String name : section.getKeys(false)) {
+            ConfigurationSection entry = section.getConfigurationSection(name);
+            if (entry == null) {
+                plugin.getLogger().warning("Rule '" + name + "' has no settings, skipping it");
+                continue;
+            }
+            
+            String pattern = entry.getString("pattern", "");
+            String actionName = entry.getString("action", "block");
+            Action action;
+            try {
+                action = Action.valueOf(actionName.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Rule '" + name + "' has unknown action '" + actionName
+                        + "', expected block, warn, kick or mute; skipping it");
+                continue;
+            }
+            
+            // Compile alone first so an error can be pinned on this rule
+            try {
+                RuleAutomaton.compile(List.of(pattern));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Rule '" + name + "' is invalid, skipping it: " + e.getMessage());
+                continue;
+            }
+            
+            loaded.add(new Rule(name, pattern, action, entry.getString("message", ""),
+                    entry.getInt("mute-seconds", config.getMuteDuration())));
+        }
+        
+        // The automaton reports the first-listed pattern that matches, so list
+        // the harshest rules first; the sort is stable, keeping config order within an action
+        loaded.sort(Comparator.comparingInt((Rule rule) -> rule.getAction().getSeverity()).reversed());
+        List<String> patterns = new ArrayList<>();
+        for (Rule rule : loaded) {
+            patterns.add(rule.getPattern());
+        }
+        
+        RuleAutomaton automaton = null;
+        if (!patterns.isEmpty()) {
+            try {
+                automaton = RuleAutomaton.compile(patterns);
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Rules could not be combined, none are active: " + e.getMessage());
+                loaded.clear();
+            }
+        }
+        
+        compiled = automaton != null ? new Compiled(loaded.toArray(new Rule[0]), automaton) : NONE;
+        
+        if (config.isDebugEnabled()) {
+            plugin.getLogger().info("Loaded " + loaded.size() + " rules"
+                    + (automaton != null ? " (" + automaton.getStateCount() + " states)" : ""));
+        }
+    }
+    
+    /**
+     * The harshest rule the message matches, or null. Among rules with the
+     * same action, the one listed first in the config wins.
+     */
+    public Rule match(String message) {
+        Compiled current = compiled;
+        if (current.automaton == null) {
+            return null;
+        }
+        
+        DetectorEvent event = new DetectorEvent();
+        event.begin();
+        int index = current.automaton.find(message);
+        Rule rule = index >= 0 ? current.rules[index] : null;
+        event.finish("rules", null, rule != null ? rule.getName() : "allowed", message.length());
+        return rule;
+    }
+    
+    /**
+     * Loaded rules, harshest action first and otherwise in config order
+     */
+    public List<Rule> getRules() {
+        return List.of(compiled.rules);
+    }
+}
@@ -0,0 +1,320 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shadow mode: runs a candidate blocked-word or duplicate engine next to the
+ * active one on a sample of chat, to see where they disagree and what each
+ * costs before switching. Chat threads only roll the sample and hand the
+ * message to a single background thread, which runs both engines; the
+ * active engine's verdict is the only one ever acted on.
+ */
+public class ShadowManager {
+    
+    private static final int MAX_EXAMPLES = 10;
+    
+    /**
+     * Checks that can be shadowed
+     */
+    public enum Check {
+        BLOCKED_WORD("Blocked words"),
+        DUPLICATE("Duplicates");
+        
+        private final String label;
+        
+        Check(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    /**
+     * Running comparison of one check's active and candidate engines
+     */
+    public static final class Comparison {
+        private final LongAdder compared = new LongAdder();
+        private final LongAdder activeOnly = new LongAdder();
+        private final LongAdder candidateOnly = new LongAdder();
+        private final LatencyHistogram activeCost = new LatencyHistogram();
+        private final LatencyHistogram candidateCost = new LatencyHistogram();
+        private final Deque<String> examples = new ArrayDeque<>();
+        private volatile String candidate;
+        
+        void record(boolean active, boolean shadow, long activeNanos, long candidateNanos, String message) {
+            compared.increment();
+            activeCost.record(activeNanos);
+            candidateCost.record(candidateNanos);
+            if (active == shadow) {
+                return;
+            }
+            
+            (active ? activeOnly : candidateOnly).increment();
+            synchronized (examples) {
+                if (examples.size() == MAX_EXAMPLES) {
+                    examples.removeFirst();
+                }
+                examples.addLast((active ? "active only: " : "candidate only: ") + message);
+            }
+        }
+        
+        /**
+         * Name of the candidate engine, or null if this check is not shadowed
+         */
+        public String getCandidate() {
+            return candidate;
+        }
+        
+        public long getCompared() {
+            return compared.sum();
+        }
+        
+        /**
+         * Messages the active engine blocked and the candidate allowed
+         */
+        public long getActiveOnly() {
+            return activeOnly.sum();
+        }
+        
+        /**
+         * Messages the candidate engine would block that the active one allowed
+         */
+        public long getCandidateOnly() {
+            return candidateOnly.sum();
+        }
+        
+        public LatencyHistogram getActiveCost() {
+            return activeCost;
+        }
+        
+        public LatencyHistogram getCandidateCost() {
+            return candidateCost;
+        }
+        
+        /**
+         * The most recent disagreements, oldest first
+         */
+        public List<String> getExamples() {
+            synchronized (examples) {
+                return new ArrayList<>(examples);
+            }
+        }
+        
+        void reset() {
+            compared.reset();
+            activeOnly.reset();
+            candidateOnly.reset();
+            activeCost.reset();
+            candidateCost.reset();
+            synchronized (examples) {
+                examples.clear();
+            }
+        }
+    }
+    
+    private final ChatManagement2 plugin;
+    private final Comparison[] comparisons;
+    private final LongAdder dropped;
+    private volatile ThreadPoolExecutor executor;
+    private volatile double sampleRate;
+    private volatile BlockedWordEngine blockedWordCandidate;
+    private volatile SimilarityEngine similarityCandidate;
+    
+    public ShadowManager(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        this.comparisons = new Comparison[Check.values().length];
+        for (int i = 0; i < comparisons.length; i++) {
+            comparisons[i] = new Comparison();
+        }
+        this.dropped = new LongAdder();
+    }
+    
+    /**
+     * Build the configured candidates and start the background thread
+     */
+    public void start() {
+        ConfigManager config = plugin.getConfigManager();
+        if (!config.isShadowEnabled()) {
+            return;
+        }
+        
+        String blockedWordName = config.getShadowBlockedWordsCandidate().toLowerCase();
+        switch (blockedWordName) {
+            case "folded":
+                blockedWordCandidate = new FoldedBlockedWordEngine(config.getBlockedWords());
+                break;
+            case "none":
+                blockedWordCandidate = null;
+                break;
+            default:
+                blockedWordCandidate = null;
+                plugin.getLogger().warning("Unknown shadow blocked-words candidate '" + blockedWordName + "', expected folded or none");
+        }
+        
+        String duplicateName = config.getShadowDuplicateCandidate().toLowerCase();
+        switch (duplicateName) {
+            case "bounded-levenshtein":
+                similarityCandidate = new BoundedLevenshteinEngine(config.getSimilarityThreshold());
+                break;
+            case "bigram":
+                similarityCandidate = new BigramSimilarityEngine(config.getSimilarityThreshold());
+                break;
+            case "none":
+                similarityCandidate = null;
+                break;
+            default:
+                similarityCandidate = null;
+                plugin.getLogger().warning("Unknown shadow duplicate candidate '" + duplicateName
+                        + "', expected bounded-levenshtein, bigram or none");
+        }
+        
+        comparisons[Check.BLOCKED_WORD.ordinal()].candidate = blockedWordCandidate != null ? blockedWordName : null;
+        comparisons[Check.DUPLICATE.ordinal()].candidate = similarityCandidate != null ? duplicateName : null;
+        if (blockedWordCandidate == null && similarityCandidate == null) {
+            return;
+        }
+        
+        sampleRate = Math.max(0.0, Math.min(1.0, config.getShadowSampleRate()));
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getShadowQueueSize())), runnable -> {
+                    Thread thread = new Thread(runnable, "ChatManagement2-Shadow");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+    
+    /**
+     * Stop the background thread, dropping comparisons still queued
+     */
+    public void shutdown() {
+        ThreadPoolExecutor current = executor;
+        if (current == null) {
+            return;
+        }
+        
+        executor = null;
+        current.shutdownNow();
+        try {
+            current.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Restart with the current config; candidates are rebuilt so they see a
+     * changed word list or threshold
+     */
+    public void reload() {
+        shutdown();
+        start();
+    }
+    
+    public boolean isEnabled() {
+        return executor != null;
+    }
+    
+    public double getSampleRate() {
+        return sampleRate;
+    }
+    
+    public Comparison getComparison(Check check) {
+        return comparisons[check.ordinal()];
+    }
+    
+    /**
+     * Samples skipped because the background thread had fallen behind
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+    
+    public void reset() {
+        for (Comparison comparison : comparisons) {
+            comparison.reset();
+        }
+        dropped.reset();
+    }
+    
+    /**
+     * Maybe queue a message for comparison. Called on the chat thread before
+     * the message reaches the content checks, so the duplicate history is
+     * the one the active check is about to see.
+     */
+    public void sample(SpamDetectionManager spamDetection, UUID uuid, String message) {
+        ThreadPoolExecutor current = executor;
+        if (current == null || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        
+        List<String> history = similarityCandidate != null ? spamDetection.getRecentMessages(uuid) : null;
+        try {
+            current.execute(() -> compare(spamDetection, message, history));
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+        }
+    }
+    
+    /**
+     * Run both engines of every shadowed check on one message
+     */
+    private void compare(SpamDetectionManager spamDetection, String message, List<String> history) {
+        BlockedWordEngine blockedWords = blockedWordCandidate;
+        if (blockedWords != null) {
+            long start = System.nanoTime();
+            boolean active = plugin.getBlockedWordsManager().matchesBlockedWord(message);
+            long middle = System.nanoTime();
+            boolean candidate = blockedWords.containsBlockedWord(message);
+            long end = System.nanoTime();
+            comparisons[Check.BLOCKED_WORD.ordinal()].record(active, candidate, middle - start, end - middle, message);
+        }
+        
+        SimilarityEngine similarity = similarityCandidate;
+        if (similarity != null && history != null) {
+            ConfigManager config = plugin.getConfigManager();
+            String normalized = spamDetection.normalizeMessage(message);
+            if (normalized.length() < config.getMinMessageLength()) {
+                return;
+            }
+            
+            int maxRepeats = config.getMaxRepeats();
+            long start = System.nanoTime();
+            boolean active = isDuplicate(spamDetection::isSimilar, normalized, history, maxRepeats);
+            long middle = System.nanoTime();
+            boolean candidate = isDuplicate(similarity, normalized, history, maxRepeats);
+            long end = System.nanoTime();
+            comparisons[Check.DUPLICATE.ordinal()].record(active, candidate, middle - start, end - middle, message);
+        }
+    }
+    
+    /**
+     * The duplicate decision from SpamDetectionManager, with the similarity
+     * test swapped out
+     */
+    private static boolean isDuplicate(SimilarityEngine engine, String normalized, List<String> history, int maxRepeats) {
+        int similarCount = 0;
+        for (String previous : history) {
+            if (engine.isSimilar(normalized, previous)) {
+                similarCount++;
+                if (similarCount >= maxRepeats) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,226 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.jfr.DetectorEvent;
+
+/**
+ * Caps, character-flood, combining-mark (zalgo) and symbol (emoji spam)
+ * filters. All four read the same MessageScan, so a message is scanned once
+ * for all of them and for the duplicate check. Each filter either blocks the
+ * message or rewrites it: lowercasing it, or cutting the excess down to the
+ * configured limit.
+ */
+public class ShapeFilterManager {
+    
+    /**
+     * Marks kept on one character when combining marks are truncated
+     */
+    private static final int KEEP_MARKS = 2;
+    
+    /**
+     * The individual filters
+     */
+    public enum Filter {
+        CAPS("caps"),
+        CHARACTER_FLOOD("character flood"),
+        COMBINING_MARKS("combining marks"),
+        SYMBOLS("symbols");
+        
+        private final String label;
+        
+        Filter(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    /**
+     * What a filter does with a message it fires on
+     */
+    public enum Action {
+        BLOCK,
+        LOWERCASE,
+        TRUNCATE,
+        DETECT
+    }
+    
+    /**
+     * Thresholds and actions, read once per reload
+     */
+    private static final class Settings {
+        final Action[] actions = new Action[Filter.values().length];
+        int capsMinLetters;
+        int capsMaxPercent;
+        int maxRun;
+        int marksMaxPercent;
+        int maxSymbols;
+        int symbolsMaxPercent;
+    }
+    
+    private final ChatManagement2 plugin;
+    private volatile Settings settings;
+    
+    public ShapeFilterManager(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        this.settings = new Settings();
+    }
+    
+    /**
+     * Read thresholds and actions from the config; a filter whose action is
+     * not recognised is turned off with a warning
+     */
+    public void reload() {
+        ConfigManager config = plugin.getConfigManager();
+        Settings loaded = new Settings();
+        if (config.isShapeFiltersEnabled()) {
+            loaded.actions[Filter.CAPS.ordinal()] = action("caps", config.isCapsFilterEnabled(), config.getCapsAction());
+            loaded.actions[Filter.CHARACTER_FLOOD.ordinal()] = action("character-flood",
+                    config.isCharacterFloodFilterEnabled(), config.getCharacterFloodAction());
+            loaded.actions[Filter.COMBINING_MARKS.ordinal()] = action("combining-marks",
+                    config.isCombiningMarksFilterEnabled(), config.getCombiningMarksAction());
+            loaded.actions[Filter.SYMBOLS.ordinal()] = action("symbols", config.isSymbolsFilterEnabled(), config.getSymbolsAction());
+        }
+        loaded.capsMinLetters = config.getCapsMinLetters();
+        loaded.capsMaxPercent = config.getCapsMaxPercent();
+        loaded.maxRun = Math.max(1, config.getCharacterFloodMaxRun());
+        loaded.marksMaxPercent = config.getCombiningMarksMaxPercent();
+        loaded.maxSymbols = Math.max(0, config.getSymbolsMaxCount());
+        loaded.symbolsMaxPercent = config.getSymbolsMaxPercent();
+        settings = loaded;
+    }
+    
+    private Action action(String filter, boolean enabled, String name) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            return Action.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Unknown action '" + name + "' for shape-filters." + filter
+                    + ", expected block, lowercase, truncate or detect; filter disabled");
+            return null;
+        }
+    }
+    
+    /**
+     * The first filter set to block that fires on the message, or null
+     */
+    public Filter findBlocked(String message) {
+        Settings current = settings;
+        DetectorEvent event = new DetectorEvent();
+        event.begin();
+        MessageScan scan = MessageScan.of(message);
+        Filter blocked = null;
+        for (Filter filter : Filter.values()) {
+            if (current.actions[filter.ordinal()] == Action.BLOCK && fires(current, filter, scan)) {
+                blocked = filter;
+                break;
+            }
+        }
+        event.finish("shape", null, blocked != null ? blocked.getLabel() : "allowed", message.length());
+        return blocked;
+    }
+    
+    /**
+     * The message with every lowercase or truncate filter that fires applied,
+     * or the same string if none do
+     */
+    public String rewrite(String message) {
+        Settings current = settings;
+        MessageScan scan = MessageScan.of(message);
+        boolean lowercase = false;
+        boolean truncateRuns = false;
+        boolean truncateMarks = false;
+        boolean truncateSymbols = false;
+        for (Filter filter : Filter.values()) {
+            Action action = current.actions[filter.ordinal()];
+            if (action == null || action == Action.BLOCK || action == Action.DETECT || !fires(current, filter, scan)) {
+                continue;
+            }
+            
+            // Lowercasing is the only way to cut capitals down
+            if (action == Action.LOWERCASE || filter == Filter.CAPS) {
+                lowercase = true;
+            } else if (filter == Filter.CHARACTER_FLOOD) {
+                truncateRuns = true;
+            } else if (filter == Filter.COMBINING_MARKS) {
+                truncateMarks = true;
+            } else {
+                truncateSymbols = true;
+            }
+        }
+        
+        if (!lowercase && !truncateRuns && !truncateMarks && !truncateSymbols) {
+            return message;
+        }
+        
+        StringBuilder out = new StringBuilder(message.length());
+        int previous = -1;
+        int run = 0;
+        int marks = 0;
+        int symbols = 0;
+        boolean dropping = false;
+        for (int i = 0; i < message.length(); ) {
+            int codePoint = message.codePointAt(i);
+            i += Character.charCount(codePoint);
+            
+            if (MessageScan.isJoinerOrSelector(codePoint)) {
+                // Selectors and joiners go with the symbol they follow
+                if (!dropping) {
+                    out.appendCodePoint(codePoint);
+                }
+                continue;
+            }
+            if (MessageScan.isCombiningMark(codePoint)) {
+                marks++;
+                if (!dropping && (!truncateMarks || marks <= KEEP_MARKS)) {
+                    out.appendCodePoint(codePoint);
+                }
+                continue;
+            }
+            marks = 0;
+            
+            if (Character.isWhitespace(codePoint)) {
+                previous = -1;
+                dropping = false;
+                out.appendCodePoint(codePoint);
+                continue;
+            }
+            
+            int folded = Character.toLowerCase(codePoint);
+            run = folded == previous ? run + 1 : 1;
+            previous = folded;
+            dropping = (truncateRuns && run > current.maxRun)
+                    || (truncateSymbols && MessageScan.isSymbol(codePoint) && ++symbols > current.maxSymbols);
+            if (!dropping) {
+                out.appendCodePoint(lowercase ? folded : codePoint);
+            }
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Whether a filter's thresholds are exceeded, whatever its action
+     */
+    public boolean fires(Filter filter, String message) {
+        return fires(settings, filter, MessageScan.of(message));
+    }
+    
+    private static boolean fires(Settings settings, Filter filter, MessageScan scan) {
+        switch (filter) {
+            case CAPS:
+                return scan.getLetters() >= settings.capsMinLetters
+                        && scan.getUppercase() * 100 > scan.getLetters() * settings.capsMaxPercent;
+            case CHARACTER_FLOOD:
+                return scan.getLongestRun() > settings.maxRun;
+            case COMBINING_MARKS:
+                return scan.getCombiningMarks() * 100 > Math.max(1, scan.getVisible()) * settings.marksMaxPercent;
+            default:
+                return scan.getSymbols() > settings.maxSymbols
+                        && scan.getSymbols() * 100 > scan.getVisible() * settings.symbolsMaxPercent;
+        }
+    }
+}
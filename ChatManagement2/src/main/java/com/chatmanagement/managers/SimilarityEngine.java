@@ -0,0 +1,10 @@
+package com.chatmanagement.managers;
+
+/**
+ * A way of deciding whether two normalized messages are near-duplicates.
+ * Implementations must be safe to call from several threads at once.
+ */
+public interface SimilarityEngine {
+    
+    boolean isSimilar(String message, String previous);
+}
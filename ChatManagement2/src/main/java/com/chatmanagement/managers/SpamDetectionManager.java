@@ -1,6 +1,7 @@
 package com.chatmanagement.managers;
 
 import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.jfr.DetectorEvent;
 import org.bukkit.entity.Player;
 
 import java.util.*;
@@ -9,23 +10,49 @@ import java.util.concurrent.ConcurrentHashMap;
 public class SpamDetectionManager {
     
     private final ChatManagement2 plugin;
+    private final MuteManager muteManager;
     private final Map<UUID, LinkedList<MessageData>> messageHistory;
     private final Map<UUID, LinkedList<Long>> messageTimes;
     private final Map<UUID, Integer> spamKickCount;
     private final Map<UUID, Long> lastKickTime;
+    private final Map<UUID, LinkedList<PrivateMessageData>> pmHistory;
+    private final Map<UUID, LinkedList<Long>> pmTimes;
+    
+    /**
+     * Outcome of a private message spam check
+     */
+    public enum PMCheck {
+        ALLOWED,
+        RATE_LIMITED,
+        TOO_MANY_RECIPIENTS,
+        DUPLICATE,
+        KICK
+    }
     
     public SpamDetectionManager(ChatManagement2 plugin) {
+        this(plugin, plugin.getMuteManager());
+    }
+    
+    /**
+     * Spam detection that auto-mutes through the given mute manager
+     */
+    public SpamDetectionManager(ChatManagement2 plugin, MuteManager muteManager) {
         this.plugin = plugin;
+        this.muteManager = muteManager;
         this.messageHistory = new ConcurrentHashMap<>();
         this.messageTimes = new ConcurrentHashMap<>();
         this.spamKickCount = new ConcurrentHashMap<>();
         this.lastKickTime = new ConcurrentHashMap<>();
+        this.pmHistory = new ConcurrentHashMap<>();
+        this.pmTimes = new ConcurrentHashMap<>();
     }
     
     public void reload() {
         // Clear history on reload to prevent issues with changed settings
         messageHistory.clear();
         messageTimes.clear();
+        pmHistory.clear();
+        pmTimes.clear();
     }
     
     /**
@@ -33,6 +60,14 @@ public class SpamDetectionManager {
      * Returns true if the message should be blocked
      */
     public boolean isDuplicateSpam(Player player, String message) {
+        DetectorEvent event = new DetectorEvent();
+        event.begin();
+        boolean duplicate = checkDuplicate(player, message);
+        event.finish("duplicate", player.getName(), duplicate ? "blocked" : "allowed", message.length());
+        return duplicate;
+    }
+    
+    private boolean checkDuplicate(Player player, String message) {
         UUID uuid = player.getUniqueId();
         
         // Bypass permission check
@@ -49,12 +84,18 @@ public class SpamDetectionManager {
             return false; // Too short to be considered spam
         }
         
-        // Get or create message history
+        // Get or create message history. Each list is locked while in use, since
+        // a player's chat can be handled on more than one async thread
         LinkedList<MessageData> history = messageHistory.computeIfAbsent(uuid, k -> new LinkedList<>());
-        
+        synchronized (history) {
+            return checkDuplicate(player, message, normalized, history);
+        }
+    }
+    
+    private boolean checkDuplicate(Player player, String message, String normalized, LinkedList<MessageData> history) {
         // Clean old messages based on cooldown
         long cooldown = plugin.getConfigManager().getDuplicateCooldown() * 1000L;
-        long now = System.currentTimeMillis();
+        long now = plugin.getClock().millis();
         history.removeIf(data -> now - data.timestamp > cooldown);
         
         // Check for duplicates
@@ -90,6 +131,14 @@ public class SpamDetectionManager {
      * Returns true if player should be kicked
      */
     public boolean isRapidSpam(Player player) {
+        DetectorEvent event = new DetectorEvent();
+        event.begin();
+        boolean rapidSpam = checkRapidSpam(player);
+        event.finish("rapid-spam", player.getName(), rapidSpam ? "kick" : "allowed", 0);
+        return rapidSpam;
+    }
+    
+    private boolean checkRapidSpam(Player player) {
         UUID uuid = player.getUniqueId();
         
         // Bypass permission check
@@ -101,10 +150,17 @@ public class SpamDetectionManager {
             return false;
         }
         
-        // Get or create message times list
+        // Get or create message times list; PM commands and chat threads both
+        // land here, so the list is locked while in use
         LinkedList<Long> times = messageTimes.computeIfAbsent(uuid, k -> new LinkedList<>());
-        
-        long now = System.currentTimeMillis();
+        synchronized (times) {
+            return checkRapidSpam(player, times);
+        }
+    }
+    
+    private boolean checkRapidSpam(Player player, LinkedList<Long> times) {
+        UUID uuid = player.getUniqueId();
+        long now = plugin.getClock().millis();
         long timeWindow = plugin.getConfigManager().getSpamTimeWindow() * 1000L;
         
         // Add current message time
@@ -133,14 +189,146 @@ public class SpamDetectionManager {
     }
     
     /**
-     * Track spam kicks for auto-mute system
+     * Check a private message against the PM limits.
+     * PMs keep their own history, so they never evict public chat history,
+     * and duplicates are only counted against the same receiver.
      */
-    private void trackSpamKick(UUID uuid) {
+    public PMCheck checkPrivateMessage(Player sender, Player receiver, String message) {
+        DetectorEvent event = new DetectorEvent();
+        event.begin();
+        PMCheck check = checkPrivateMessageLimits(sender, receiver, message);
+        event.finish("private-message", sender.getName(), check.name().toLowerCase(), message.length());
+        return check;
+    }
+    
+    private PMCheck checkPrivateMessageLimits(Player sender, Player receiver, String message) {
+        UUID uuid = sender.getUniqueId();
+        ConfigManager config = plugin.getConfigManager();
+        
+        // Bypass permission check
+        if (sender.hasPermission(config.getBypassPermission()) || !config.isPMSpamEnabled()) {
+            return PMCheck.ALLOWED;
+        }
+        
+        // PM floods count toward the same kick as public chat floods
+        if (config.shouldPMCountTowardKick() && isRapidSpam(sender)) {
+            return PMCheck.KICK;
+        }
+        
+        long now = plugin.getClock().millis();
+        
+        // Per-sender rate limit; blocked attempts count too so bots stay throttled
+        LinkedList<Long> times = pmTimes.computeIfAbsent(uuid, k -> new LinkedList<>());
+        long rateWindow = config.getPMRateWindow() * 1000L;
+        int sent;
+        synchronized (times) {
+            times.add(now);
+            times.removeIf(time -> now - time > rateWindow);
+            sent = times.size();
+        }
+        if (sent > config.getPMRateLimit()) {
+            if (config.isDebugEnabled()) {
+                plugin.getLogger().info("Rate limited private messages from " + sender.getName() + ": " + sent
+                        + " messages in " + config.getPMRateWindow() + " seconds");
+            }
+            return PMCheck.RATE_LIMITED;
+        }
+        
+        LinkedList<PrivateMessageData> history = pmHistory.computeIfAbsent(uuid, k -> new LinkedList<>());
+        synchronized (history) {
+            return checkPrivateHistory(sender, receiver, message, history, now);
+        }
+    }
+    
+    private PMCheck checkPrivateHistory(Player sender, Player receiver, String message,
+                                        LinkedList<PrivateMessageData> history, long now) {
+        UUID uuid = sender.getUniqueId();
+        ConfigManager config = plugin.getConfigManager();
+        long cooldown = config.getPMDuplicateCooldown() * 1000L;
+        long recipientWindow = config.getPMRecipientWindow() * 1000L;
+        long retention = Math.max(cooldown, recipientWindow);
+        history.removeIf(data -> now - data.timestamp > retention);
+        
+        UUID receiverId = receiver.getUniqueId();
+        
+        // Limit how many different players can be messaged in the window.
+        // Players already in a conversation with the sender do not count as new.
+        // The history is short, so distinct recipients are counted in place
+        boolean knownRecipient = receiverId.equals(plugin.getPrivateMessageManager().getLastMessaged(uuid));
+        int recipients = 0;
+        int index = 0;
+        for (PrivateMessageData data : history) {
+            if (now - data.timestamp <= recipientWindow) {
+                knownRecipient |= data.receiver.equals(receiverId);
+                if (isFirstRecipient(history, index, data.receiver, now - recipientWindow)) {
+                    recipients++;
+                }
+            }
+            index++;
+        }
+        if (!knownRecipient && recipients >= config.getPMMaxRecipients()) {
+            if (config.isDebugEnabled()) {
+                plugin.getLogger().info("Blocked private message from " + sender.getName() + " to a new recipient: "
+                        + recipients + " recipients in " + config.getPMRecipientWindow() + " seconds");
+            }
+            return PMCheck.TOO_MANY_RECIPIENTS;
+        }
+        
+        // Duplicate detection against earlier messages to the same receiver
+        String normalized = normalizeMessage(message);
+        if (normalized.length() >= config.getMinMessageLength()) {
+            int maxRepeats = config.getPMMaxRepeats();
+            int similarCount = 0;
+            
+            for (PrivateMessageData data : history) {
+                if (data.receiver.equals(receiverId) && now - data.timestamp <= cooldown
+                        && isSimilar(normalized, data.normalizedMessage)) {
+                    similarCount++;
+                    if (similarCount >= maxRepeats) {
+                        if (config.isDebugEnabled()) {
+                            plugin.getLogger().info("Blocked duplicate private message from " + sender.getName() + ": " + message);
+                        }
+                        return PMCheck.DUPLICATE;
+                    }
+                }
+            }
+        }
+        
+        // Add message to history
+        history.add(new PrivateMessageData(receiverId, normalized, now));
+        
+        // Limit history size
+        int maxSize = config.getPMHistorySize();
+        while (history.size() > maxSize) {
+            history.removeFirst();
+        }
+        
+        return PMCheck.ALLOWED;
+    }
+    
+    /**
+     * Whether no entry before index, sent after since, went to the same receiver
+     */
+    private static boolean isFirstRecipient(LinkedList<PrivateMessageData> history, int index, UUID receiver, long since) {
+        Iterator<PrivateMessageData> earlier = history.iterator();
+        for (int i = 0; i < index; i++) {
+            PrivateMessageData data = earlier.next();
+            if (data.timestamp >= since && data.receiver.equals(receiver)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Track spam kicks for auto-mute system; also called for spam score kicks
+     */
+    public void trackSpamKick(UUID uuid) {
         if (!plugin.getConfigManager().isAutoMuteEnabled()) {
             return;
         }
         
-        long now = System.currentTimeMillis();
+        long now = plugin.getClock().millis();
         long kickWindow = plugin.getConfigManager().getMuteKickWindow() * 60 * 1000L;
         
         // Check if last kick was outside the window
@@ -155,7 +343,7 @@ public class SpamDetectionManager {
             
             // Check if should auto-mute
             if (count >= plugin.getConfigManager().getMuteKickThreshold()) {
-                plugin.getMuteManager().mutePlayer(uuid, plugin.getConfigManager().getMuteDuration());
+                muteManager.mutePlayer(uuid, plugin.getConfigManager().getMuteDuration());
                 spamKickCount.remove(uuid); // Reset after muting
                 
                 if (plugin.getConfigManager().isDebugEnabled()) {
@@ -167,20 +355,41 @@ public class SpamDetectionManager {
         lastKickTime.put(uuid, now);
     }
     
+    /**
+     * Normalized messages from a player still inside the duplicate cooldown, oldest first
+     */
+    List<String> getRecentMessages(UUID uuid) {
+        LinkedList<MessageData> history = messageHistory.get(uuid);
+        if (history == null) {
+            return Collections.emptyList();
+        }
+        
+        long cooldown = plugin.getConfigManager().getDuplicateCooldown() * 1000L;
+        long now = plugin.getClock().millis();
+        synchronized (history) {
+            List<String> recent = new ArrayList<>(history.size());
+            for (MessageData data : history) {
+                if (now - data.timestamp <= cooldown) {
+                    recent.add(data.normalizedMessage);
+                }
+            }
+            return recent;
+        }
+    }
+    
     /**
      * Normalize message for comparison
      */
-    private String normalizeMessage(String message) {
-        return message.toLowerCase()
-                .replaceAll("\\s+", " ") // Normalize whitespace
-                .replaceAll("[^a-z0-9\\s]", "") // Remove special characters
-                .trim();
+    String normalizeMessage(String message) {
+        // Lowercase, collapse whitespace and drop special characters, in the
+        // scan the shape filters share
+        return MessageScan.of(message).normalized();
     }
     
     /**
      * Check if two messages are similar using improved Levenshtein distance
      */
-    private boolean isSimilar(String msg1, String msg2) {
+    boolean isSimilar(String msg1, String msg2) {
         // Quick exact match check
         if (msg1.equals(msg2)) {
             return true;
@@ -213,7 +422,7 @@ public class SpamDetectionManager {
     /**
      * Calculate Levenshtein distance between two strings
      */
-    private int levenshteinDistance(String s1, String s2) {
+    int levenshteinDistance(String s1, String s2) {
         int len1 = s1.length();
         int len2 = s2.length();
         
@@ -247,9 +456,48 @@ public class SpamDetectionManager {
     public void clearPlayerData(UUID uuid) {
         messageHistory.remove(uuid);
         messageTimes.remove(uuid);
+        pmHistory.remove(uuid);
+        pmTimes.remove(uuid);
         // Don't clear spam kick count - it should persist for auto-mute
     }
     
+    /**
+     * Number of players with spam tracking state
+     */
+    public int getTrackedPlayers() {
+        Set<UUID> tracked = new HashSet<>(messageHistory.keySet());
+        tracked.addAll(messageTimes.keySet());
+        tracked.addAll(pmHistory.keySet());
+        tracked.addAll(pmTimes.keySet());
+        return tracked.size();
+    }
+    
+    /**
+     * Rough heap cost of the tracked history, for /cm stats.
+     * Uses a fixed per-entry cost so it never walks message contents.
+     */
+    public long estimateMemoryBytes() {
+        // Map entry + list header, list node + record + short string, list node + boxed Long
+        final long perList = 96;
+        final long perMessage = 120;
+        final long perTime = 40;
+        
+        long bytes = 0;
+        for (LinkedList<MessageData> history : messageHistory.values()) {
+            bytes += perList + history.size() * perMessage;
+        }
+        for (LinkedList<PrivateMessageData> history : pmHistory.values()) {
+            bytes += perList + history.size() * perMessage;
+        }
+        for (LinkedList<Long> times : messageTimes.values()) {
+            bytes += perList + times.size() * perTime;
+        }
+        for (LinkedList<Long> times : pmTimes.values()) {
+            bytes += perList + times.size() * perTime;
+        }
+        return bytes;
+    }
+    
     /**
      * Data class for storing message information
      */
@@ -262,4 +510,19 @@ public class SpamDetectionManager {
             this.timestamp = timestamp;
         }
     }
+    
+    /**
+     * Data class for storing private message information
+     */
+    private static class PrivateMessageData {
+        UUID receiver;
+        String normalizedMessage;
+        long timestamp;
+        
+        PrivateMessageData(UUID receiver, String message, long timestamp) {
+            this.receiver = receiver;
+            this.normalizedMessage = message;
+            this.timestamp = timestamp;
+        }
+    }
 }
@@ -0,0 +1,108 @@
+package com.chatmanagement.managers;
+
+import com.chatmanagement.ChatManagement2;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A spam score per player that every signal adds to and that halves every
+ * half-life. A player's state is one long: the score as a float in the high
+ * half and the time of the last update, in hundredths of a second, in the low
+ * half, so both change together in a single compare-and-set. Times wrap
+ * after about 248 days; a gap that wraps negative is treated as fully
+ * decayed rather than as no time at all.
+ */
+public class SpamScoreManager {
+    
+    /**
+     * Start time for a new player, so their first message doesn't count as a burst
+     */
+    private static final int LONG_AGO = Integer.MAX_VALUE;
+    
+    private final ChatManagement2 plugin;
+    private final Map<UUID, AtomicLong> scores;
+    
+    public SpamScoreManager(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        this.scores = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Decay the player's score to now and add a message's weight, returning
+     * the new score. The rate weight is added on top, in full for a message
+     * sent as fast as the anti-spam kick allows and less the longer the gap
+     * since the player's previous message.
+     */
+    public double addMessage(UUID uuid, double weight, double rateWeight) {
+        AtomicLong state = scores.computeIfAbsent(uuid, k -> new AtomicLong(pack(0f, now() - LONG_AGO)));
+        double halfLife = halfLifeTicks();
+        double burstGap = burstGapTicks();
+        while (true) {
+            long current = state.get();
+            int now = now();
+            int gap = now - (int) current;
+            double rate = gap < 0 ? 0 : rateWeight * Math.min(1.0, burstGap / Math.max(1, gap));
+            double score = decay(current, now, halfLife) + weight + rate;
+            if (state.compareAndSet(current, pack((float) score, now))) {
+                return score;
+            }
+        }
+    }
+    
+    /**
+     * The player's score decayed to now
+     */
+    public double get(UUID uuid) {
+        AtomicLong state = scores.get(uuid);
+        return state != null ? decay(state.get(), now(), halfLifeTicks()) : 0;
+    }
+    
+    /**
+     * Start the player over from zero, e.g. once they have been muted or have left
+     */
+    public void reset(UUID uuid) {
+        scores.remove(uuid);
+    }
+    
+    /**
+     * Players with a score being tracked
+     */
+    public int getTrackedCount() {
+        return scores.size();
+    }
+    
+    private static double decay(long state, int now, double halfLife) {
+        float score = Float.intBitsToFloat((int) (state >>> 32));
+        int elapsed = now - (int) state;
+        if (elapsed < 0) {
+            return 0;
+        }
+        return score * Math.pow(0.5, elapsed / halfLife);
+    }
+    
+    private static long pack(float score, int time) {
+        return ((long) Float.floatToRawIntBits(score) << 32) | (time & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Current time in hundredths of a second, wrapping
+     */
+    private int now() {
+        return (int) (plugin.getClock().millis() / 10);
+    }
+    
+    /**
+     * Gap between messages at the anti-spam kick's rate, in hundredths of a second
+     */
+    private double burstGapTicks() {
+        ConfigManager config = plugin.getConfigManager();
+        return config.getSpamTimeWindow() * 100.0 / Math.max(1, config.getSpamMessageThreshold());
+    }
+    
+    private double halfLifeTicks() {
+        return Math.max(1, plugin.getConfigManager().getSpamScoreHalfLifeSeconds()) * 100.0;
+    }
+}
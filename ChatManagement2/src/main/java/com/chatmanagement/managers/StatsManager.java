@@ -0,0 +1,124 @@
+package com.chatmanagement.managers;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters and per-stage latency histograms for /cm stats.
+ * Counters are striped LongAdders and histograms are lock-free, so chat
+ * threads never contend with each other or with a reader.
+ */
+public class StatsManager {
+    
+    /**
+     * Things that are counted
+     */
+    public enum Counter {
+        CHAT_MESSAGES("Chat messages"),
+        PRIVATE_MESSAGES("Private messages"),
+        BLOCKED_NOT_READY("Blocked (starting up)"),
+        BLOCKED_MUTED("Blocked (muted)"),
+        BLOCKED_WORD("Blocked (blocked word)"),
+        BLOCKED_DUPLICATE("Blocked (duplicate)"),
+        BLOCKED_ADVERTISING("Blocked (advertising)"),
+        BLOCKED_RULE("Blocked (rule)"),
+        BLOCKED_SHAPE("Blocked (caps/flood/unicode)"),
+        REWRITTEN_SHAPE("Rewritten (caps/flood/unicode)"),
+        BLOCKED_SPAM_SCORE("Blocked (spam score)"),
+        SPAM_SCORE_WARNINGS("Spam score warnings"),
+        BLOCKED_PM_LIMIT("Blocked (PM limit)"),
+        SPAM_KICKS("Spam kicks"),
+        MUTES("Mutes"),
+        NAME_LOOKUP_HITS("Name lookup hits"),
+        NAME_LOOKUP_MISSES("Name lookup misses");
+        
+        private final String label;
+        
+        Counter(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    /**
+     * Timed stages of message handling
+     */
+    public enum Stage {
+        CHAT_TOTAL("Chat total"),
+        MUTE_CHECK("Mute check"),
+        RAPID_SPAM("Rapid spam"),
+        BLOCKED_WORD("Blocked words"),
+        ADVERTISING("Advertising"),
+        RULES("Rules"),
+        SHAPE("Caps/flood/unicode"),
+        DUPLICATE("Duplicates"),
+        PRIVATE_MESSAGE("Private message"),
+        STORAGE_WRITE("Storage write");
+        
+        private final String label;
+        
+        Stage(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    private final LongAdder[] counters;
+    private final LatencyHistogram[] histograms;
+    private volatile long since;
+    
+    public StatsManager() {
+        this.counters = new LongAdder[Counter.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        
+        this.histograms = new LatencyHistogram[Stage.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        
+        this.since = System.currentTimeMillis();
+    }
+    
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+    
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+    
+    /**
+     * Record how long a stage took, given its start from System.nanoTime()
+     */
+    public void recordSince(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+    
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+    
+    /**
+     * Time the counters were last reset
+     */
+    public long getSince() {
+        return since;
+    }
+    
+    public void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        since = System.currentTimeMillis();
+    }
+}
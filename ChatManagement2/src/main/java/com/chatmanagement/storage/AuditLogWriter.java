@@ -0,0 +1,206 @@
+package com.chatmanagement.storage;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.managers.AuditManager.AuditEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes audit events as gzip-compressed NDJSON, one JSON object per line.
+ * Files are named audit-YYYY-MM-DD-N.ndjson.gz and roll over at midnight UTC
+ * or once they reach the size limit. Each batch ends with a sync flush so
+ * everything written so far can be read with zcat even before the file is closed.
+ * Only ever called from the audit writer thread.
+ */
+public class AuditLogWriter {
+    
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".ndjson.gz";
+    
+    private final ChatManagement2 plugin;
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int retentionDays;
+    private final StringBuilder line;
+    private OutputStream out;
+    private LocalDate fileDate;
+    private long fileBytes;
+    
+    public AuditLogWriter(ChatManagement2 plugin, long maxFileBytes, int retentionDays) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), "audit").toPath();
+        this.maxFileBytes = Math.max(1024 * 1024, maxFileBytes);
+        this.retentionDays = retentionDays;
+        this.line = new StringBuilder(256);
+    }
+    
+    /**
+     * Append a batch of events and flush them to disk
+     */
+    public void write(List<AuditEvent> batch) {
+        try {
+            for (AuditEvent event : batch) {
+                LocalDate date = Instant.ofEpochMilli(event.timestamp).atZone(ZoneOffset.UTC).toLocalDate();
+                if (out == null || !date.equals(fileDate) || fileBytes >= maxFileBytes) {
+                    rotate(date);
+                }
+                
+                encode(event);
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                out.write(bytes);
+                fileBytes += bytes.length;
+            }
+            
+            if (out != null) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not write audit log: " + e.getMessage());
+            closeQuietly();
+        }
+    }
+    
+    /**
+     * Finish the current file so it ends with a complete gzip trailer
+     */
+    public void close() {
+        if (out == null) {
+            return;
+        }
+        
+        try {
+            out.close();
+        } catch (IOException e) {
+            plugin.getLogger().severe("Error closing audit log: " + e.getMessage());
+        }
+        out = null;
+    }
+    
+    /**
+     * Close the current file and start the next one for this date
+     */
+    private void rotate(LocalDate date) throws IOException {
+        close();
+        Files.createDirectories(directory);
+        
+        // Never append to an earlier file, so each file is a single gzip stream
+        int index = 0;
+        Path file;
+        do {
+            file = directory.resolve(PREFIX + date + "-" + index + SUFFIX);
+            index++;
+        } while (Files.exists(file));
+        
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        out = new GZIPOutputStream(Channels.newOutputStream(channel), 64 * 1024, true);
+        fileDate = date;
+        fileBytes = 0;
+        
+        deleteExpired(date);
+    }
+    
+    /**
+     * Remove audit files older than the retention period
+     */
+    private void deleteExpired(LocalDate today) {
+        if (retentionDays <= 0) {
+            return;
+        }
+        
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().startsWith(PREFIX + today)
+                        && Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not clean up old audit logs: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Encode one event as a JSON line into the reusable builder
+     */
+    private void encode(AuditEvent event) {
+        line.setLength(0);
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(event.timestamp)).append('"');
+        line.append(",\"type\":\"").append(event.type.name().toLowerCase(Locale.ROOT)).append('"');
+        appendField("actor", event.actor);
+        appendField("actor_name", event.actorName);
+        appendField("target", event.target);
+        appendField("target_name", event.targetName);
+        appendField("message", event.message);
+        appendField("detail", event.detail);
+        line.append("}\n");
+    }
+    
+    private void appendField(String name, UUID value) {
+        if (value != null) {
+            line.append(",\"").append(name).append("\":\"").append(value).append('"');
+        }
+    }
+    
+    private void appendField(String name, String value) {
+        if (value == null) {
+            return;
+        }
+        
+        line.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+    
+    private void closeQuietly() {
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+}
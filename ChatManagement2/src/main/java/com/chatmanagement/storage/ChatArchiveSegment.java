@@ -0,0 +1,441 @@
+package com.chatmanagement.storage;
+
+import com.chatmanagement.managers.ChatArchiveManager.ArchiveEntry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * One hour of archived chat.
+ * Lines are appended to a .cma data file; when the hour closes a .cmi index
+ * is written next to it holding the record offsets of every player and a
+ * bloom filter of the words used, so a search can skip the whole segment or
+ * jump straight to one player's lines.
+ *
+ * Data file: magic, epoch hour, then records of
+ *   int length, long time, byte kind, sender uuid, receiver uuid,
+ *   sender name, receiver name, message (each a short length + UTF-8)
+ *
+ * Index file: magic, record count, bloom word count, bloom words,
+ *   player count, then per player: uuid, offset count, offsets
+ */
+public class ChatArchiveSegment {
+    
+    public static final String DATA_SUFFIX = ".cma";
+    public static final String INDEX_SUFFIX = ".cmi";
+    
+    private static final int MAGIC = 0x434D4131; // "CMA1"
+    private static final int INDEX_MAGIC = 0x434D4931; // "CMI1"
+    private static final int HEADER_SIZE = 12;
+    private static final int BLOOM_HASHES = 7;
+    private static final int BLOOM_BITS_PER_TOKEN = 10;
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+    
+    private final Path dataFile;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final Map<UUID, Offsets> players;
+    private final Set<Long> tokens;
+    private long position;
+    private int count;
+    
+    private ChatArchiveSegment(Path dataFile, FileChannel channel) {
+        this.dataFile = dataFile;
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(64 * 1024);
+        this.players = new HashMap<>();
+        this.tokens = new HashSet<>();
+    }
+    
+    /**
+     * Open the segment for an hour, continuing it if the file already exists
+     */
+    public static ChatArchiveSegment open(Path dataFile, long hour) throws IOException {
+        FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ChatArchiveSegment segment = new ChatArchiveSegment(dataFile, channel);
+        
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putLong(hour).flip();
+            channel.write(header, 0);
+            segment.position = HEADER_SIZE;
+        } else {
+            // Rebuild the in-memory index from what is already there
+            segment.position = scan(channel, null, (offset, entry) -> segment.index(offset, entry));
+            channel.truncate(segment.position);
+        }
+        
+        // Any index written for this segment is now out of date
+        Files.deleteIfExists(indexFile(dataFile));
+        return segment;
+    }
+    
+    /**
+     * Append one line; it reaches the file on the next flush
+     */
+    public void append(ArchiveEntry entry) throws IOException {
+        byte[] sender = bytes(entry.senderName);
+        byte[] receiver = bytes(entry.receiverName);
+        byte[] message = bytes(entry.message);
+        int length = 8 + 1 + 32 + 6 + sender.length + receiver.length + message.length;
+        
+        if (buffer.remaining() < length + 4) {
+            flush();
+        }
+        
+        long offset = position + buffer.position();
+        ByteBuffer target = buffer.remaining() >= length + 4 ? buffer : ByteBuffer.allocate(length + 4);
+        target.putInt(length);
+        target.putLong(entry.timestamp);
+        target.put(entry.kind);
+        putUuid(target, entry.sender);
+        putUuid(target, entry.receiver);
+        putString(target, sender);
+        putString(target, receiver);
+        putString(target, message);
+        
+        if (target != buffer) {
+            target.flip();
+            writeFully(target);
+        }
+        
+        index(offset, entry);
+    }
+    
+    /**
+     * Write buffered lines to the file
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+    
+    /**
+     * Flush, write the index and close the data file
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+            writeIndex();
+        } finally {
+            channel.close();
+        }
+    }
+    
+    public Path getDataFile() {
+        return dataFile;
+    }
+    
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+    
+    private void index(long offset, ArchiveEntry entry) {
+        count++;
+        players.computeIfAbsent(entry.sender, k -> new Offsets()).add((int) offset);
+        if (entry.receiver != null) {
+            players.computeIfAbsent(entry.receiver, k -> new Offsets()).add((int) offset);
+        }
+        tokenize(entry.message, tokens::add);
+    }
+    
+    /**
+     * Write the player offsets and a bloom filter sized for this hour's words
+     */
+    private void writeIndex() throws IOException {
+        long bits = Math.max(64L, (long) tokens.size() * BLOOM_BITS_PER_TOKEN);
+        int words = (int) Math.min(Integer.MAX_VALUE, Long.highestOneBit(bits - 1) << 1) / 64;
+        long[] bloom = new long[Math.max(1, words)];
+        for (long token : tokens) {
+            bloomAdd(bloom, token);
+        }
+        
+        int size = 12 + bloom.length * 8 + 4;
+        for (Offsets offsets : players.values()) {
+            size += 20 + offsets.size * 4;
+        }
+        
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(INDEX_MAGIC).putInt(count).putInt(bloom.length);
+        for (long word : bloom) {
+            out.putLong(word);
+        }
+        out.putInt(players.size());
+        for (Map.Entry<UUID, Offsets> player : players.entrySet()) {
+            putUuid(out, player.getKey());
+            Offsets offsets = player.getValue();
+            out.putInt(offsets.size);
+            for (int i = 0; i < offsets.size; i++) {
+                out.putInt(offsets.values[i]);
+            }
+        }
+        out.flip();
+        
+        // Write beside and rename, so a half-written index is never read
+        Path index = indexFile(dataFile);
+        Path temp = index.resolveSibling(index.getFileName() + ".tmp");
+        try (FileChannel indexChannel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                indexChannel.write(out);
+            }
+        }
+        Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Load the index of a closed segment, rebuilding it if it is missing or damaged
+     */
+    public static Index loadIndex(Path dataFile) throws IOException {
+        Path index = indexFile(dataFile);
+        if (Files.exists(index)) {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(index));
+            if (in.remaining() >= 12 && in.getInt() == INDEX_MAGIC) {
+                try {
+                    in.getInt();
+                    long[] bloom = new long[in.getInt()];
+                    for (int i = 0; i < bloom.length; i++) {
+                        bloom[i] = in.getLong();
+                    }
+                    
+                    int playerCount = in.getInt();
+                    Map<UUID, int[]> players = new HashMap<>(playerCount * 2);
+                    for (int i = 0; i < playerCount; i++) {
+                        UUID uuid = new UUID(in.getLong(), in.getLong());
+                        int[] offsets = new int[in.getInt()];
+                        for (int j = 0; j < offsets.length; j++) {
+                            offsets[j] = in.getInt();
+                        }
+                        players.put(uuid, offsets);
+                    }
+                    return new Index(bloom, players);
+                } catch (RuntimeException ignored) {
+                    // Fall through and rebuild
+                }
+            }
+        }
+        
+        // Left open by a crash, or the index was lost: rebuild it from the data
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ChatArchiveSegment segment = new ChatArchiveSegment(dataFile, channel);
+            segment.position = scan(channel, null, segment::index);
+            segment.writeIndex();
+        }
+        return loadIndex(dataFile);
+    }
+    
+    /**
+     * Read records from a data file; all of them when offsets is null
+     */
+    public static void read(Path dataFile, int[] offsets, Consumer<ArchiveEntry> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            scan(channel, offsets, (offset, entry) -> consumer.accept(entry));
+        }
+    }
+    
+    /**
+     * Walk records in file order, returning the end of the last complete record
+     */
+    private static long scan(FileChannel channel, int[] offsets, RecordConsumer consumer) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("not a chat archive segment");
+        }
+        
+        long size = channel.size();
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        ByteBuffer record = ByteBuffer.allocate(1024);
+        long position = HEADER_SIZE;
+        int next = 0;
+        
+        while (true) {
+            if (offsets != null) {
+                if (next >= offsets.length) {
+                    break;
+                }
+                position = offsets[next++];
+            }
+            if (position + 4 > size) {
+                break;
+            }
+            
+            lengthBuffer.clear();
+            readFully(channel, lengthBuffer, position);
+            int length = lengthBuffer.getInt(0);
+            if (length <= 0 || position + 4 + length > size) {
+                break; // Torn write at the end of the file
+            }
+            
+            if (record.capacity() < length) {
+                record = ByteBuffer.allocate(length);
+            }
+            record.clear().limit(length);
+            readFully(channel, record, position + 4);
+            record.flip();
+            
+            consumer.accept(position, decode(record));
+            position += 4 + length;
+        }
+        return position;
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position + target.position());
+            if (read < 0) {
+                throw new IOException("unexpected end of chat archive segment");
+            }
+        }
+    }
+    
+    private static ArchiveEntry decode(ByteBuffer in) {
+        long time = in.getLong();
+        byte kind = in.get();
+        UUID sender = getUuid(in);
+        UUID receiver = getUuid(in);
+        return new ArchiveEntry(time, kind, sender, getString(in), receiver, getString(in), getString(in));
+    }
+    
+    /**
+     * Split text into lowercase words and pass the hash of each one
+     */
+    public static void tokenize(String text, LongConsumer consumer) {
+        long hash = 0xcbf29ce484222325L;
+        int length = 0;
+        
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? Character.toLowerCase(text.charAt(i)) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                hash = (hash ^ c) * 0x100000001b3L;
+                length++;
+                continue;
+            }
+            
+            if (length >= MIN_TOKEN_LENGTH) {
+                consumer.accept(hash);
+            }
+            hash = 0xcbf29ce484222325L;
+            length = 0;
+        }
+    }
+    
+    private static void bloomAdd(long[] bloom, long token) {
+        long bits = (long) bloom.length * 64;
+        long h2 = (token >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = ((token + i * h2) & Long.MAX_VALUE) % bits;
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+    
+    private static boolean bloomContains(long[] bloom, long token) {
+        long bits = (long) bloom.length * 64;
+        long h2 = (token >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = ((token + i * h2) & Long.MAX_VALUE) % bits;
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public static Path indexFile(Path dataFile) {
+        String name = dataFile.getFileName().toString();
+        return dataFile.resolveSibling(name.substring(0, name.length() - DATA_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+    
+    private static byte[] bytes(String value) {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_STRING_BYTES ? bytes : Arrays.copyOf(bytes, MAX_STRING_BYTES);
+    }
+    
+    private static void putString(ByteBuffer target, byte[] bytes) {
+        target.putShort((short) bytes.length);
+        target.put(bytes);
+    }
+    
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+    
+    private static void putUuid(ByteBuffer target, UUID uuid) {
+        target.putLong(uuid != null ? uuid.getMostSignificantBits() : 0L);
+        target.putLong(uuid != null ? uuid.getLeastSignificantBits() : 0L);
+    }
+    
+    private static UUID getUuid(ByteBuffer in) {
+        long msb = in.getLong();
+        long lsb = in.getLong();
+        return msb == 0L && lsb == 0L ? null : new UUID(msb, lsb);
+    }
+    
+    /**
+     * Player offsets and word filter of a closed segment
+     */
+    public static class Index {
+        private final long[] bloom;
+        private final Map<UUID, int[]> players;
+        
+        Index(long[] bloom, Map<UUID, int[]> players) {
+            this.bloom = bloom;
+            this.players = players;
+        }
+        
+        /**
+         * Offsets of every line sent or received by a player, or null if they have none here
+         */
+        public int[] getOffsets(UUID player) {
+            return players.get(player);
+        }
+        
+        /**
+         * False if the word definitely does not appear in this segment
+         */
+        public boolean mightContain(long token) {
+            return bloomContains(bloom, token);
+        }
+    }
+    
+    private interface RecordConsumer {
+        void accept(long offset, ArchiveEntry entry);
+    }
+    
+    private static class Offsets {
+        int[] values = new int[8];
+        int size;
+        
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.chatmanagement.storage;
+
+/**
+ * Tracks consecutive database failures.
+ * Trips open after a run of failures so callers stop hitting a dead database,
+ * and hands out an exponentially growing delay between recovery probes.
+ */
+public class CircuitBreaker {
+    
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+    
+    private static final long INITIAL_BACKOFF_MS = 1000L;
+    
+    private final int failureThreshold;
+    private final long maxBackoffMillis;
+    private State state;
+    private int consecutiveFailures;
+    private long backoffMillis;
+    
+    public CircuitBreaker(int failureThreshold, long maxBackoffMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.maxBackoffMillis = Math.max(INITIAL_BACKOFF_MS, maxBackoffMillis);
+        this.state = State.CLOSED;
+        this.backoffMillis = INITIAL_BACKOFF_MS;
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+    
+    public synchronized boolean isOpen() {
+        return state == State.OPEN;
+    }
+    
+    /**
+     * Record a successful operation, closing the breaker if it was probing
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            backoffMillis = INITIAL_BACKOFF_MS;
+        }
+    }
+    
+    /**
+     * Record a failed operation.
+     * Returns true if this failure tripped the breaker open.
+     */
+    public synchronized boolean recordFailure() {
+        consecutiveFailures++;
+        
+        if (state == State.HALF_OPEN) {
+            // Recovery probe failed, wait longer before the next one
+            state = State.OPEN;
+            backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+            return true;
+        }
+        
+        if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Move from open to half-open so a recovery attempt can run
+     */
+    public synchronized void attemptReset() {
+        if (state == State.OPEN) {
+            state = State.HALF_OPEN;
+        }
+    }
+    
+    /**
+     * Give up on a probe that could not reach the database at all
+     */
+    public synchronized void probeFailed() {
+        state = State.OPEN;
+        backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+    }
+    
+    /**
+     * Delay before the next recovery probe
+     */
+    public synchronized long getBackoffMillis() {
+        return backoffMillis;
+    }
+}
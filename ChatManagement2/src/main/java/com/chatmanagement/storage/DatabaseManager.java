@@ -1,23 +1,75 @@
 package com.chatmanagement.storage;
 
 import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.jfr.StorageEvent;
 import com.chatmanagement.managers.MuteManager.MuteData;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
-public class DatabaseManager {
+public class DatabaseManager implements MuteStorage, IgnoreStorage {
+    
+    // Rows per multi-row upsert statement (5 params each, stays under SQLite's 999 variable limit)
+    private static final int BATCH_ROWS = 100;
+    
+    private static final int SCHEMA_VERSION = 4;
+    private static final int MIGRATION_BATCH_SIZE = 5000;
+    
+    // Change-log rows read per poll, and how long to wait for a missing sequence number to commit
+    private static final int CHANGE_POLL_LIMIT = 1000;
+    private static final long CHANGE_GAP_WAIT_MS = 2000;
     
     private final ChatManagement2 plugin;
-    private Connection connection;
+    private volatile Connection connection;
+    private volatile Connection readConnection;
+    private SQLiteWriter writer;
     private final String type;
+    private final boolean syncEnabled;
+    private final String serverId;
+    private long lastChangeSeq;
+    private long gapSince;
+    private long lastChangePrune;
+    
+    // Most entries remembered for replay after buffered writes are dropped
+    private static final int MAX_DIRTY_KEYS = 100_000;
+    
+    // Circuit breaker state for the direct (MySQL) write path
+    private final CircuitBreaker breaker;
+    private final Deque<PendingWrite> pendingWrites;
+    private final Map<String, PendingWrite> pendingByKey;
+    private final Set<String> dirtyKeys;
+    private final Object writeLock;
+    private final Object drainLock;
+    private int queuedWrites;
+    private int droppedWrites;
+    private int untrackedWrites;
+    private boolean probeScheduled;
+    private boolean drainScheduled;
     
     public DatabaseManager(ChatManagement2 plugin) {
         this.plugin = plugin;
         this.type = plugin.getConfigManager().getDatabaseType().toLowerCase();
+        this.syncEnabled = plugin.getConfigManager().isMuteSyncEnabled();
+        this.serverId = UUID.randomUUID().toString();
+        this.breaker = new CircuitBreaker(plugin.getConfigManager().getBreakerFailureThreshold(),
+                plugin.getConfigManager().getBreakerMaxBackoffSeconds() * 1000L);
+        this.pendingWrites = new ArrayDeque<>();
+        this.pendingByKey = new HashMap<>();
+        this.dirtyKeys = new LinkedHashSet<>();
+        this.writeLock = new Object();
+        this.drainLock = new Object();
     }
     
     /**
@@ -49,10 +101,26 @@ public class DatabaseManager {
             dataFolder.mkdirs();
         }
         
-        String url = "jdbc:sqlite:" + dataFolder.getAbsolutePath() + "/chatmanagement.db";
+        // Relative paths live in the plugin folder, an absolute path lets several servers share one file
+        File databaseFile = new File(plugin.getConfigManager().getSQLiteFile());
+        if (!databaseFile.isAbsolute()) {
+            databaseFile = new File(dataFolder, databaseFile.getPath());
+        }
+        
+        String url = "jdbc:sqlite:" + databaseFile.getAbsolutePath();
         connection = DriverManager.getConnection(url);
         
+        // WAL lets loads run on their own connection while the writer commits
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("PRAGMA synchronous=NORMAL");
+            stmt.execute("PRAGMA busy_timeout=5000");
+        }
+        
         createTables();
+        
+        readConnection = DriverManager.getConnection(url);
+        writer = new SQLiteWriter(plugin, connection, plugin.getConfigManager().getSQLiteGroupCommitMillis());
         return true;
     }
     
@@ -60,6 +128,16 @@ public class DatabaseManager {
      * Connect to MySQL database
      */
     private boolean connectMySQL() throws SQLException {
+        connection = openMySQLConnection();
+        
+        createTables();
+        
+        // Loads and change polling get their own connection so they never share one with the drain task
+        readConnection = openMySQLConnection();
+        return true;
+    }
+    
+    private Connection openMySQLConnection() throws SQLException {
         String host = plugin.getConfigManager().getDatabaseHost();
         int port = plugin.getConfigManager().getDatabasePort();
         String database = plugin.getConfigManager().getDatabaseName();
@@ -67,45 +145,296 @@ public class DatabaseManager {
         String password = plugin.getConfigManager().getDatabasePassword();
         
         String url = "jdbc:mysql://" + host + ":" + port + "/" + database + "?useSSL=false&autoReconnect=true";
-        connection = DriverManager.getConnection(url, username, password);
-        
-        createTables();
-        return true;
+        return DriverManager.getConnection(url, username, password);
     }
     
     /**
-     * Create necessary tables
+     * Create necessary tables and bring an older schema up to date
      */
     private void createTables() throws SQLException {
-        String createMutesTable = "CREATE TABLE IF NOT EXISTS mutes (" +
-                "uuid VARCHAR(36) PRIMARY KEY," +
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (version INT NOT NULL)");
+        }
+        
+        int version = getSchemaVersion();
+        if (version >= SCHEMA_VERSION) {
+            lastChangeSeq = getLatestChangeSeq();
+            return;
+        }
+        
+        if (version < 2) {
+            recoverInterruptedSwap();
+            if (!tableExists("mutes")) {
+                createMutesTable("mutes");
+            } else if (hasLegacyUuidColumn()) {
+                // Pre-versioning layout with VARCHAR(36) uuids
+                migrateLegacyMutes();
+            }
+            
+            if (!type.equals("mysql")) {
+                // SQLite index names are database-wide, so the index is added once the final table is in place
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_mutes_expiry ON mutes (is_paused, end_time)");
+                }
+            }
+        }
+        
+        if (version < 3) {
+            createChangesTable();
+        }
+        
+        if (version < 4) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS ignores (" +
+                        "player BINARY(16) NOT NULL," +
+                        "ignored BINARY(16) NOT NULL," +
+                        "PRIMARY KEY (player, ignored))");
+            }
+        }
+        
+        setSchemaVersion(SCHEMA_VERSION);
+        lastChangeSeq = getLatestChangeSeq();
+    }
+    
+    /**
+     * Create the change log other servers poll to keep their mute caches in sync
+     */
+    private void createChangesTable() throws SQLException {
+        String columns = "uuid BINARY(16) NOT NULL," +
+                "server_id VARCHAR(36) NOT NULL," +
+                "removed BOOLEAN NOT NULL," +
                 "end_time BIGINT NOT NULL," +
                 "original_duration INT NOT NULL," +
                 "is_paused BOOLEAN NOT NULL," +
-                "paused_time_remaining BIGINT NOT NULL" +
-                ")";
+                "paused_time_remaining BIGINT NOT NULL," +
+                "created_at BIGINT NOT NULL";
         
         try (Statement stmt = connection.createStatement()) {
-            stmt.executeUpdate(createMutesTable);
+            if (type.equals("mysql")) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS mute_changes (seq BIGINT AUTO_INCREMENT PRIMARY KEY, " + columns +
+                        ", INDEX idx_mute_changes_created (created_at))");
+            } else {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS mute_changes (seq INTEGER PRIMARY KEY AUTOINCREMENT, " + columns + ")");
+                stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_mute_changes_created ON mute_changes (created_at)");
+            }
         }
     }
     
     /**
-     * Check if connected to database
+     * Create the mutes table with binary uuids and an expiry index
      */
-    public boolean isConnected() {
-        try {
-            return connection != null && !connection.isClosed();
+    private void createMutesTable(String table) throws SQLException {
+        String columns = "uuid BINARY(16) PRIMARY KEY," +
+                "end_time BIGINT NOT NULL," +
+                "original_duration INT NOT NULL," +
+                "is_paused BOOLEAN NOT NULL," +
+                "paused_time_remaining BIGINT NOT NULL";
+        
+        try (Statement stmt = connection.createStatement()) {
+            if (type.equals("mysql")) {
+                stmt.executeUpdate("CREATE TABLE " + table + " (" + columns + ", INDEX idx_mutes_expiry (is_paused, end_time))");
+            } else {
+                stmt.executeUpdate("CREATE TABLE " + table + " (" + columns + ")");
+            }
+        }
+    }
+    
+    /**
+     * Copy the legacy mutes table into the new layout in batches, then swap the tables.
+     * Each batch commits on its own so the old table stays usable while copying.
+     */
+    private void migrateLegacyMutes() throws SQLException {
+        plugin.getLogger().info("Migrating mutes table to binary uuids...");
+        
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DROP TABLE IF EXISTS mutes_migration");
+        }
+        createMutesTable("mutes_migration");
+        
+        String select = "SELECT uuid, end_time, original_duration, is_paused, paused_time_remaining FROM mutes " +
+                "WHERE uuid > ? ORDER BY uuid LIMIT " + MIGRATION_BATCH_SIZE;
+        String insert = "INSERT INTO mutes_migration (uuid, end_time, original_duration, is_paused, paused_time_remaining) VALUES (?, ?, ?, ?, ?)";
+        
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        String lastKey = "";
+        int migrated = 0;
+        
+        try (PreparedStatement selectStmt = connection.prepareStatement(select);
+             PreparedStatement insertStmt = connection.prepareStatement(insert)) {
+            while (true) {
+                selectStmt.setString(1, lastKey);
+                int rows = 0;
+                
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    while (rs.next()) {
+                        lastKey = rs.getString("uuid");
+                        rows++;
+                        
+                        UUID uuid;
+                        try {
+                            uuid = UUID.fromString(lastKey);
+                        } catch (IllegalArgumentException e) {
+                            plugin.getLogger().warning("Skipping invalid UUID in mutes table: " + lastKey);
+                            continue;
+                        }
+                        
+                        insertStmt.setBytes(1, toBytes(uuid));
+                        insertStmt.setLong(2, rs.getLong("end_time"));
+                        insertStmt.setInt(3, rs.getInt("original_duration"));
+                        insertStmt.setBoolean(4, rs.getBoolean("is_paused"));
+                        insertStmt.setLong(5, rs.getLong("paused_time_remaining"));
+                        insertStmt.addBatch();
+                    }
+                }
+                
+                if (rows == 0) {
+                    break;
+                }
+                
+                insertStmt.executeBatch();
+                connection.commit();
+                migrated += rows;
+            }
         } catch (SQLException e) {
-            return false;
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        
+        // MySQL renames both tables atomically; SQLite DDL is transactional, so
+        // its two renames commit together and a crash can't leave no mutes table
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            if (type.equals("mysql")) {
+                stmt.executeUpdate("RENAME TABLE mutes TO mutes_legacy, mutes_migration TO mutes");
+            } else {
+                stmt.executeUpdate("ALTER TABLE mutes RENAME TO mutes_legacy");
+                stmt.executeUpdate("ALTER TABLE mutes_migration RENAME TO mutes");
+            }
+            stmt.executeUpdate("DROP TABLE mutes_legacy");
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        
+        plugin.getLogger().info("Migrated " + migrated + " mutes to the new schema");
+    }
+    
+    /**
+     * Finish or undo a table swap that an earlier version left half done,
+     * when its renames ran one at a time and the server stopped between them
+     */
+    private void recoverInterruptedSwap() throws SQLException {
+        boolean mutes = tableExists("mutes");
+        boolean legacy = tableExists("mutes_legacy");
+        boolean copy = tableExists("mutes_migration");
+        if (!legacy) {
+            return;
+        }
+        
+        try (Statement stmt = connection.createStatement()) {
+            if (mutes) {
+                // The copy was swapped in, only dropping the old table was left
+                stmt.executeUpdate("DROP TABLE mutes_legacy");
+            } else if (copy) {
+                // The copy is complete once the swap starts, so put it in place
+                plugin.getLogger().warning("Finishing an interrupted mutes table migration");
+                stmt.executeUpdate("ALTER TABLE mutes_migration RENAME TO mutes");
+                stmt.executeUpdate("DROP TABLE mutes_legacy");
+            } else {
+                // Nothing to swap in, restore the old table and migrate it again
+                plugin.getLogger().warning("Restoring the mutes table from an interrupted migration");
+                stmt.executeUpdate("ALTER TABLE mutes_legacy RENAME TO mutes");
+            }
+        }
+    }
+    
+    /**
+     * Read the stored schema version, 0 if none has been recorded
+     */
+    private int getSchemaVersion() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
+    private void setSchemaVersion(int version) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM schema_version");
+            stmt.executeUpdate("INSERT INTO schema_version (version) VALUES (" + version + ")");
+        }
+        
+    }
+    
+    private boolean tableExists(String table) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getTables(connection.getCatalog(), null, table, null)) {
+            return rs.next();
         }
     }
     
+    /**
+     * Check whether the mutes table still stores uuids as text
+     */
+    private boolean hasLegacyUuidColumn() throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getColumns(connection.getCatalog(), null, "mutes", "uuid")) {
+            return rs.next() && rs.getString("TYPE_NAME").toUpperCase().contains("CHAR");
+        }
+    }
+    
+    /**
+     * Pack a uuid into the 16-byte form stored in the uuid column
+     */
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+    
+    private static UUID fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+    
+    /**
+     * Check if connected to database
+     */
+    public boolean isConnected() {
+        // Failures are tracked by the circuit breaker, so no round trip is needed here
+        return connection != null && !breaker.isOpen();
+    }
+    
     /**
      * Disconnect from database
      */
     public void disconnect() {
+        if (writer == null && connection != null) {
+            // Writes are applied asynchronously, so apply what is still queued before closing
+            if (!breaker.isOpen()) {
+                drainPendingWrites();
+            }
+            synchronized (writeLock) {
+                if (queuedWrites > 0) {
+                    plugin.getLogger().warning("Database unavailable on shutdown, " + queuedWrites + " mute changes were not saved");
+                }
+            }
+        }
+        
+        if (writer != null) {
+            writer.shutdown();
+            writer = null;
+        }
+        
         try {
+            if (readConnection != null && !readConnection.isClosed()) {
+                readConnection.close();
+            }
             if (connection != null && !connection.isClosed()) {
                 connection.close();
             }
@@ -114,50 +443,703 @@ public class DatabaseManager {
         }
     }
     
+    @Override
+    public void close() {
+        disconnect();
+    }
+    
+    @Override
+    public void reload() {
+        // Make sure queued writes are visible to the reload that follows
+        if (writer != null) {
+            writer.flush();
+        } else if (!breaker.isOpen()) {
+            drainPendingWrites();
+        }
+    }
+    
+    @Override
+    public boolean isWriteThrough() {
+        return true;
+    }
+    
+    @Override
+    public String getName() {
+        return type;
+    }
+    
+    /**
+     * Number of writes queued but not yet committed
+     */
+    public int getPendingWrites() {
+        if (writer != null) {
+            return writer.getQueueSize();
+        }
+        synchronized (writeLock) {
+            return queuedWrites;
+        }
+    }
+    
+    /**
+     * Run a write on the SQLite writer thread, or queue it for the MySQL drain task
+     */
+    private void write(String action, SQLWrite write) {
+        write(action, null, write);
+    }
+    
+    /**
+     * Run a write that replaces any write with the same key still queued for
+     * MySQL, so the buffer holds at most one write per mute or ignore entry and
+     * a delete is never lost behind the save it undoes
+     */
+    private void write(String action, String key, SQLWrite write) {
+        if (writer != null) {
+            writer.submit(action, write);
+            return;
+        }
+        
+        boolean drainNow = false;
+        synchronized (writeLock) {
+            enqueue(new PendingWrite(action, key, write));
+            
+            // Only unrelated writes can be dropped here; their entries are
+            // rewritten from memory on recovery
+            int capacity = Math.max(1, plugin.getConfigManager().getBreakerBufferSize());
+            while (queuedWrites > capacity) {
+                PendingWrite oldest = pendingWrites.pollFirst();
+                if (!oldest.superseded) {
+                    forget(oldest);
+                    droppedWrites++;
+                    markDirty(oldest.key);
+                }
+            }
+            
+            if (!breaker.isOpen()) {
+                drainNow = !plugin.isEnabled();
+                if (!drainNow) {
+                    scheduleDrain();
+                }
+            }
+        }
+        
+        // The scheduler refuses tasks once the plugin is disabling, so shutdown
+        // writes are applied on this thread, outside writeLock
+        if (drainNow) {
+            drainPendingWrites();
+        }
+    }
+    
+    /**
+     * Add a write behind everything queued, superseding an older write with
+     * the same key. Must be called while holding writeLock.
+     */
+    private void enqueue(PendingWrite pending) {
+        if (pending.key != null) {
+            PendingWrite previous = pendingByKey.put(pending.key, pending);
+            if (previous != null) {
+                previous.superseded = true;
+                queuedWrites--;
+            }
+        }
+        pendingWrites.addLast(pending);
+        queuedWrites++;
+    }
+    
+    /**
+     * Remember the entry a dropped write was for, so recovery can rewrite it.
+     * Unkeyed writes are housekeeping that runs again on its own schedule.
+     * Must be called while holding writeLock.
+     */
+    private void markDirty(String key) {
+        if (key == null || !(key.startsWith("mute:") || key.startsWith("ignore:"))) {
+            return;
+        }
+        if (dirtyKeys.size() < MAX_DIRTY_KEYS || dirtyKeys.contains(key)) {
+            dirtyKeys.add(key);
+        } else {
+            untrackedWrites++;
+        }
+    }
+    
+    /**
+     * Queue a write of an entry's current state: saved if it exists in memory,
+     * deleted if this server removed it
+     */
+    private void replayKey(String key) {
+        String[] parts = key.split(":");
+        if (parts[0].equals("mute")) {
+            UUID uuid = UUID.fromString(parts[1]);
+            MuteData data = plugin.getMuteManager().getMutes().get(uuid);
+            if (data != null) {
+                saveMute(uuid, data);
+            } else {
+                removeMute(uuid);
+            }
+        } else {
+            UUID player = UUID.fromString(parts[1]);
+            UUID target = UUID.fromString(parts[2]);
+            if (plugin.getIgnoreManager().isIgnoring(player, target)) {
+                addIgnore(player, target);
+            } else {
+                removeIgnore(player, target);
+            }
+        }
+    }
+    
+    /**
+     * Account for a write taken off the queue. Must be called while holding writeLock.
+     */
+    private void forget(PendingWrite pending) {
+        if (pending.key != null) {
+            pendingByKey.remove(pending.key, pending);
+        }
+        queuedWrites--;
+    }
+    
+    /**
+     * Drain the buffer on the async scheduler, so chat, command and quit
+     * threads never wait on the database. Must be called while holding writeLock.
+     */
+    private void scheduleDrain() {
+        if (drainScheduled) {
+            return;
+        }
+        drainScheduled = true;
+        
+        plugin.getServer().getAsyncScheduler().runNow(plugin, (task) -> {
+            synchronized (writeLock) {
+                drainScheduled = false;
+            }
+            drainPendingWrites();
+        });
+    }
+    
+    /**
+     * Apply buffered writes in order until the buffer is empty or the database
+     * fails, returning how many were applied. Only one thread drains at a time,
+     * and writeLock is only held between writes so callers can keep queueing.
+     */
+    private int drainPendingWrites() {
+        synchronized (drainLock) {
+            int applied = 0;
+            while (true) {
+                PendingWrite pending;
+                synchronized (writeLock) {
+                    if (breaker.isOpen()) {
+                        return applied;
+                    }
+                    pending = pendingWrites.pollFirst();
+                    while (pending != null && pending.superseded) {
+                        pending = pendingWrites.pollFirst();
+                    }
+                    if (pending == null) {
+                        return applied;
+                    }
+                    forget(pending);
+                }
+                
+                try {
+                    pending.write.apply(connection);
+                    breaker.recordSuccess();
+                    applied++;
+                } catch (SQLException e) {
+                    if (!isConnectionFailure(e)) {
+                        // The database answered but rejected this write, retrying will not help
+                        plugin.getLogger().severe("Error " + pending.action + ": " + e.getMessage());
+                        continue;
+                    }
+                    
+                    plugin.getLogger().severe("Error " + pending.action + " (will retry): " + e.getMessage());
+                    synchronized (writeLock) {
+                        // Put it back in front unless a newer write for the same entry has been queued
+                        if (pending.key == null || !pendingByKey.containsKey(pending.key)) {
+                            pendingWrites.addFirst(pending);
+                            if (pending.key != null) {
+                                pendingByKey.put(pending.key, pending);
+                            }
+                            queuedWrites++;
+                        }
+                        if (breaker.recordFailure()) {
+                            plugin.getLogger().warning("Database unavailable, buffering mute changes (" + queuedWrites + " pending)");
+                            scheduleProbe();
+                        }
+                    }
+                    return applied;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Schedule a recovery probe after the breaker's current backoff
+     */
+    private void scheduleProbe() {
+        // No probes once the plugin is disabling; what is left is reported on disconnect
+        if (probeScheduled || !plugin.isEnabled()) {
+            return;
+        }
+        probeScheduled = true;
+        
+        plugin.getServer().getAsyncScheduler().runDelayed(plugin, (task) -> probe(),
+                breaker.getBackoffMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Check the database is reachable again and replay buffered writes
+     */
+    private void probe() {
+        synchronized (writeLock) {
+            probeScheduled = false;
+        }
+        
+        // Validate or reopen the connection outside the lock so writers only ever queue behind it briefly
+        Connection current = connection;
+        try {
+            if (current == null || !current.isValid(2)) {
+                Connection replacement = openMySQLConnection();
+                connection = replacement;
+                closeQuietly(current);
+            }
+            
+            Connection reader = readConnection;
+            if (reader == null || !reader.isValid(2)) {
+                readConnection = openMySQLConnection();
+                closeQuietly(reader);
+            }
+        } catch (SQLException e) {
+            synchronized (writeLock) {
+                breaker.probeFailed();
+                scheduleProbe();
+            }
+            return;
+        }
+        
+        int dropped;
+        int untracked;
+        List<String> replay;
+        synchronized (writeLock) {
+            breaker.attemptReset();
+            dropped = droppedWrites;
+            droppedWrites = 0;
+            untracked = untrackedWrites;
+            untrackedWrites = 0;
+            replay = new ArrayList<>(dirtyKeys);
+            dirtyKeys.clear();
+        }
+        
+        // Writes were dropped while the database was down; rewrite just those
+        // entries from their current state, leaving other servers' rows alone
+        for (String key : replay) {
+            replayKey(key);
+        }
+        
+        int replayed = drainPendingWrites();
+        synchronized (writeLock) {
+            // Not recovered after all; the replayed entries wait in the buffer
+            if (breaker.isOpen()) {
+                return;
+            }
+            
+            // An empty buffer means nothing needed replaying, so close the breaker explicitly
+            breaker.recordSuccess();
+        }
+        
+        if (dropped > 0) {
+            plugin.getLogger().warning("Database connection recovered; " + dropped + " buffered changes had been dropped, so "
+                    + replay.size() + " mutes and ignores were rewritten from memory");
+        } else {
+            plugin.getLogger().info("Database connection recovered, replayed " + replayed + " buffered mute changes");
+        }
+        if (untracked > 0) {
+            plugin.getLogger().severe(untracked + " dropped changes could not be tracked for replay and may be missing from the database");
+        }
+    }
+    
+    private static void closeQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+    
+    /**
+     * Whether an exception means the database could not be reached, as opposed to rejecting the statement
+     */
+    private static boolean isConnectionFailure(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientException
+                || e instanceof SQLRecoverableException
+                || e instanceof SQLNonTransientConnectionException
+                || (state != null && state.startsWith("08"));
+    }
+    
     /**
      * Save a mute to database
      */
+    @Override
     public void saveMute(UUID uuid, MuteData muteData) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
         String sql = "REPLACE INTO mutes (uuid, end_time, original_duration, is_paused, paused_time_remaining) VALUES (?, ?, ?, ?, ?)";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, uuid.toString());
-            stmt.setLong(2, muteData.endTime);
-            stmt.setInt(3, muteData.originalDuration);
-            stmt.setBoolean(4, muteData.isPaused);
-            stmt.setLong(5, muteData.pausedTimeRemaining);
-            stmt.executeUpdate();
+        // Capture the values now, the writer may run after the mute changes again
+        byte[] key = toBytes(uuid);
+        long endTime = muteData.endTime;
+        int originalDuration = muteData.originalDuration;
+        boolean isPaused = muteData.isPaused;
+        long pausedTimeRemaining = muteData.pausedTimeRemaining;
+        
+        write("saving mute to database", "mute:" + uuid, conn -> inTransaction(conn, () -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setBytes(1, key);
+                stmt.setLong(2, endTime);
+                stmt.setInt(3, originalDuration);
+                stmt.setBoolean(4, isPaused);
+                stmt.setLong(5, pausedTimeRemaining);
+                stmt.executeUpdate();
+            }
+            logChange(conn, key, false, endTime, originalDuration, isPaused, pausedTimeRemaining);
+        }));
+        event.finish(type, "saveMute", uuid, 1);
+    }
+    
+    /**
+     * Save many mutes in a single transaction using batched multi-row upserts
+     */
+    @Override
+    public void saveMutes(Map<UUID, MuteData> mutes) {
+        if (mutes.isEmpty()) {
+            return;
+        }
+        
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        
+        // Snapshot the entries so the writer thread sees a consistent copy
+        List<Map.Entry<UUID, MuteData>> entries = new ArrayList<>(mutes.size());
+        for (Map.Entry<UUID, MuteData> entry : mutes.entrySet()) {
+            MuteData data = entry.getValue();
+            entries.add(Map.entry(entry.getKey(), new MuteData(data.endTime, data.originalDuration, data.isPaused, data.pausedTimeRemaining)));
+        }
+        
+        write("bulk saving mutes to database", conn -> {
+            inTransaction(conn, () -> upsertAll(conn, entries));
+            
+            if (plugin.getConfigManager().isDebugEnabled()) {
+                plugin.getLogger().info("Saved " + entries.size() + " mutes to database in one transaction");
+            }
+        });
+        event.finish(type, "saveMutes", null, mutes.size());
+    }
+    
+    /**
+     * Write all entries as batched multi-row upserts
+     */
+    private void upsertAll(Connection conn, List<Map.Entry<UUID, MuteData>> entries) throws SQLException {
+        int fullChunks = entries.size() / BATCH_ROWS;
+        int remainder = entries.size() % BATCH_ROWS;
+        
+        if (fullChunks > 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(buildUpsert(BATCH_ROWS))) {
+                for (int chunk = 0; chunk < fullChunks; chunk++) {
+                    bindRows(stmt, entries, chunk * BATCH_ROWS, BATCH_ROWS);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+        
+        if (remainder > 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(buildUpsert(remainder))) {
+                bindRows(stmt, entries, fullChunks * BATCH_ROWS, remainder);
+                stmt.executeUpdate();
+            }
+        }
+    }
+    
+    /**
+     * Run work in a transaction, or inside the caller's transaction if one is already open
+     */
+    private void inTransaction(Connection conn, SQLAction work) throws SQLException {
+        if (!conn.getAutoCommit()) {
+            work.run();
+            return;
+        }
+        
+        conn.setAutoCommit(false);
+        try {
+            work.run();
+            conn.commit();
         } catch (SQLException e) {
-            plugin.getLogger().severe("Error saving mute to database: " + e.getMessage());
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+    
+    /**
+     * Build a multi-row upsert statement for the current dialect
+     */
+    private String buildUpsert(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO mutes (uuid, end_time, original_duration, is_paused, paused_time_remaining) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(?, ?, ?, ?, ?)");
+        }
+        
+        if (type.equals("mysql")) {
+            sql.append(" ON DUPLICATE KEY UPDATE end_time = VALUES(end_time), original_duration = VALUES(original_duration), " +
+                    "is_paused = VALUES(is_paused), paused_time_remaining = VALUES(paused_time_remaining)");
+        } else {
+            sql.append(" ON CONFLICT(uuid) DO UPDATE SET end_time = excluded.end_time, original_duration = excluded.original_duration, " +
+                    "is_paused = excluded.is_paused, paused_time_remaining = excluded.paused_time_remaining");
+        }
+        
+        return sql.toString();
+    }
+    
+    /**
+     * Bind a run of mute entries to a multi-row upsert statement
+     */
+    private void bindRows(PreparedStatement stmt, List<Map.Entry<UUID, MuteData>> entries, int offset, int rows) throws SQLException {
+        int index = 1;
+        for (int i = offset; i < offset + rows; i++) {
+            Map.Entry<UUID, MuteData> entry = entries.get(i);
+            MuteData muteData = entry.getValue();
+            stmt.setBytes(index++, toBytes(entry.getKey()));
+            stmt.setLong(index++, muteData.endTime);
+            stmt.setInt(index++, muteData.originalDuration);
+            stmt.setBoolean(index++, muteData.isPaused);
+            stmt.setLong(index++, muteData.pausedTimeRemaining);
         }
     }
     
     /**
      * Remove a mute from database
      */
+    @Override
     public void removeMute(UUID uuid) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
         String sql = "DELETE FROM mutes WHERE uuid = ?";
+        byte[] key = toBytes(uuid);
+        
+        write("removing mute from database", "mute:" + uuid, conn -> inTransaction(conn, () -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setBytes(1, key);
+                stmt.executeUpdate();
+            }
+            logChange(conn, key, true, 0L, 0, false, 0L);
+        }));
+        event.finish(type, "removeMute", uuid, 1);
+    }
+    
+    /**
+     * Load every ignore list
+     */
+    @Override
+    public Map<UUID, List<UUID>> loadIgnores() {
+        Map<UUID, List<UUID>> ignores = new HashMap<>();
+        if (breaker.isOpen()) {
+            return ignores;
+        }
+        
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        
+        Connection conn = readConnection != null ? readConnection : connection;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT player, ignored FROM ignores")) {
+            while (rs.next()) {
+                ignores.computeIfAbsent(fromBytes(rs.getBytes("player")), k -> new ArrayList<>())
+                        .add(fromBytes(rs.getBytes("ignored")));
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Error loading ignore lists from database: " + e.getMessage());
+        }
+        
+        event.finish(type, "loadIgnores", null, ignores.size());
+        return ignores;
+    }
+    
+    @Override
+    public void addIgnore(UUID player, UUID target) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        String sql = type.equals("mysql")
+                ? "INSERT IGNORE INTO ignores (player, ignored) VALUES (?, ?)"
+                : "INSERT OR IGNORE INTO ignores (player, ignored) VALUES (?, ?)";
+        byte[] playerKey = toBytes(player);
+        byte[] targetKey = toBytes(target);
+        
+        write("saving ignore to database", "ignore:" + player + ":" + target, conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setBytes(1, playerKey);
+                stmt.setBytes(2, targetKey);
+                stmt.executeUpdate();
+            }
+        });
+        event.finish(type, "addIgnore", player, 1);
+    }
+    
+    @Override
+    public void removeIgnore(UUID player, UUID target) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        String sql = "DELETE FROM ignores WHERE player = ? AND ignored = ?";
+        byte[] playerKey = toBytes(player);
+        byte[] targetKey = toBytes(target);
+        
+        write("removing ignore from database", "ignore:" + player + ":" + target, conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setBytes(1, playerKey);
+                stmt.setBytes(2, targetKey);
+                stmt.executeUpdate();
+            }
+        });
+        event.finish(type, "removeIgnore", player, 1);
+    }
+    
+    /**
+     * Record a mute change for other servers sharing this database
+     */
+    private void logChange(Connection conn, byte[] key, boolean removed, long endTime, int originalDuration,
+                           boolean isPaused, long pausedTimeRemaining) throws SQLException {
+        if (!syncEnabled) {
+            return;
+        }
+        
+        String sql = "INSERT INTO mute_changes (uuid, server_id, removed, end_time, original_duration, is_paused, paused_time_remaining, created_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, uuid.toString());
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setBytes(1, key);
+            stmt.setString(2, serverId);
+            stmt.setBoolean(3, removed);
+            stmt.setLong(4, endTime);
+            stmt.setInt(5, originalDuration);
+            stmt.setBoolean(6, isPaused);
+            stmt.setLong(7, pausedTimeRemaining);
+            stmt.setLong(8, System.currentTimeMillis());
             stmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * Apply mute changes made by other servers since the last poll.
+     * The callback receives null data for an unmute. Returns the number of changes applied.
+     */
+    @Override
+    public synchronized int pollChanges(BiConsumer<UUID, MuteData> apply) {
+        if (!syncEnabled || breaker.isOpen()) {
+            return 0;
+        }
+        
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        
+        String sql = "SELECT seq, uuid, server_id, removed, end_time, original_duration, is_paused, paused_time_remaining, created_at " +
+                "FROM mute_changes WHERE seq > ? ORDER BY seq LIMIT " + CHANGE_POLL_LIMIT;
+        Connection conn = readConnection != null ? readConnection : connection;
+        long now = System.currentTimeMillis();
+        int applied = 0;
+        
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, lastChangeSeq);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    long seq = rs.getLong("seq");
+                    
+                    // A gap may be a transaction that has not committed yet, give it a moment before skipping it.
+                    // The wait is timed from when this server first saw the gap, so other servers' clocks don't matter
+                    if (seq != lastChangeSeq + 1) {
+                        if (gapSince == 0) {
+                            gapSince = now;
+                        }
+                        if (now - gapSince < CHANGE_GAP_WAIT_MS) {
+                            break;
+                        }
+                    }
+                    gapSince = 0;
+                    lastChangeSeq = seq;
+                    
+                    if (serverId.equals(rs.getString("server_id"))) {
+                        continue;
+                    }
+                    
+                    UUID uuid = fromBytes(rs.getBytes("uuid"));
+                    if (rs.getBoolean("removed")) {
+                        apply.accept(uuid, null);
+                    } else {
+                        apply.accept(uuid, new MuteData(rs.getLong("end_time"), rs.getInt("original_duration"),
+                                rs.getBoolean("is_paused"), rs.getLong("paused_time_remaining")));
+                    }
+                    applied++;
+                }
+            }
         } catch (SQLException e) {
-            plugin.getLogger().severe("Error removing mute from database: " + e.getMessage());
+            plugin.getLogger().severe("Error polling mute changes: " + e.getMessage());
+        }
+        
+        pruneChanges(now);
+        event.finish(type, "pollChanges", null, applied);
+        return applied;
+    }
+    
+    /**
+     * Drop change-log rows older than the configured retention, at most once a minute
+     */
+    private void pruneChanges(long now) {
+        if (now - lastChangePrune < 60000L) {
+            return;
+        }
+        lastChangePrune = now;
+        
+        String sql = "DELETE FROM mute_changes WHERE created_at < ?";
+        long cutoff = now - plugin.getConfigManager().getMuteSyncRetentionMinutes() * 60000L;
+        
+        write("pruning mute changes", "prune", conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, cutoff);
+                stmt.executeUpdate();
+            }
+        });
+    }
+    
+    private long getLatestChangeSeq() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(seq) FROM mute_changes")) {
+            return rs.next() ? rs.getLong(1) : 0L;
         }
     }
     
     /**
      * Load all mutes from database
      */
+    @Override
     public Map<UUID, MuteData> loadMutes() {
+        if (breaker.isOpen()) {
+            plugin.getLogger().warning("Database unavailable, keeping mutes already in memory");
+            return null;
+        }
+        
+        StorageEvent event = new StorageEvent();
+        event.begin();
         Map<UUID, MuteData> mutes = new HashMap<>();
-        String sql = "SELECT * FROM mutes";
+        String sql = "SELECT uuid, end_time, original_duration, is_paused, paused_time_remaining FROM mutes";
         
-        try (Statement stmt = connection.createStatement();
+        Connection conn = readConnection != null ? readConnection : connection;
+        try (Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
             while (rs.next()) {
-                UUID uuid = UUID.fromString(rs.getString("uuid"));
+                UUID uuid = fromBytes(rs.getBytes("uuid"));
                 long endTime = rs.getLong("end_time");
                 int originalDuration = rs.getInt("original_duration");
                 boolean isPaused = rs.getBoolean("is_paused");
@@ -167,9 +1149,11 @@ public class DatabaseManager {
                 mutes.put(uuid, muteData);
             }
         } catch (SQLException e) {
-            plugin.getLogger().severe("Error loading mutes from database: " + e.getMessage());
+            plugin.getLogger().severe("Error loading mutes from database, keeping mutes already in memory: " + e.getMessage());
+            return null;
         }
         
+        event.finish(type, "loadMutes", null, mutes.size());
         return mutes;
     }
     
@@ -177,17 +1161,51 @@ public class DatabaseManager {
      * Clean up expired mutes from database
      */
     public void cleanupExpiredMutes() {
-        String sql = "DELETE FROM mutes WHERE end_time < ? AND is_paused = false";
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        String sql = "DELETE FROM mutes WHERE is_paused = false AND end_time < ?";
+        long now = System.currentTimeMillis();
         
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setLong(1, System.currentTimeMillis());
-            int deleted = stmt.executeUpdate();
-            
-            if (deleted > 0 && plugin.getConfigManager().isDebugEnabled()) {
-                plugin.getLogger().info("Cleaned up " + deleted + " expired mutes from database");
+        write("cleaning up expired mutes", "cleanup", conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, now);
+                int deleted = stmt.executeUpdate();
+                
+                if (deleted > 0 && plugin.getConfigManager().isDebugEnabled()) {
+                    plugin.getLogger().info("Cleaned up " + deleted + " expired mutes from database");
+                }
             }
-        } catch (SQLException e) {
-            plugin.getLogger().severe("Error cleaning up expired mutes: " + e.getMessage());
+        });
+        event.finish(type, "cleanupExpiredMutes", null, 0);
+    }
+    
+    /**
+     * A database write, run either directly or on the SQLite writer thread
+     */
+    @FunctionalInterface
+    interface SQLWrite {
+        void apply(Connection connection) throws SQLException;
+    }
+    
+    /**
+     * A write waiting in the circuit breaker buffer. The key names the row it
+     * writes, or is null for writes that touch many rows.
+     */
+    private static class PendingWrite {
+        final String action;
+        final String key;
+        final SQLWrite write;
+        boolean superseded;
+        
+        PendingWrite(String action, String key, SQLWrite write) {
+            this.action = action;
+            this.key = key;
+            this.write = write;
         }
     }
+    
+    @FunctionalInterface
+    private interface SQLAction {
+        void run() throws SQLException;
+    }
 }
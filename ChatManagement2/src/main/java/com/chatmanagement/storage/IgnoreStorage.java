@@ -0,0 +1,26 @@
+package com.chatmanagement.storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Persistence backend for player ignore lists
+ */
+public interface IgnoreStorage {
+    
+    /**
+     * Load every ignore list, keyed by the player doing the ignoring
+     */
+    Map<UUID, List<UUID>> loadIgnores();
+    
+    /**
+     * Record that player ignores target
+     */
+    void addIgnore(UUID player, UUID target);
+    
+    /**
+     * Remove target from player's ignore list
+     */
+    void removeIgnore(UUID player, UUID target);
+}
@@ -0,0 +1,401 @@
+package com.chatmanagement.storage;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.managers.MuteManager.MuteData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Append-only binary mute journal.
+ * Every change is one fixed-size record appended to mutes.journal, so a mute
+ * costs a small sequential write instead of rewriting a whole YAML file.
+ * The journal is replayed on startup and compacted in the background once
+ * it holds far more records than live mutes.
+ *
+ * Record layout (40 bytes):
+ *   0  op (1 = put, 2 = remove)
+ *   1  paused flag
+ *   2  reserved
+ *   4  original duration (int)
+ *   8  uuid most significant bits
+ *   16 uuid least significant bits
+ *   24 end time
+ *   32 paused time remaining
+ */
+public class JournalStorage implements MuteStorage {
+    
+    private static final int MAGIC = 0x434D4A31; // "CMJ1"
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 40;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    
+    // Compact once the journal holds this many records and at least 4x the live mutes
+    private static final int MIN_COMPACT_RECORDS = 1024;
+    private static final int COMPACT_RATIO = 4;
+    
+    private final ChatManagement2 plugin;
+    private final Path journalFile;
+    private final Map<UUID, MuteData> live;
+    private final ByteBuffer recordBuffer;
+    private final AtomicBoolean compacting;
+    private final AtomicBoolean syncing;
+    private FileChannel channel;
+    private long recordCount;
+    
+    public JournalStorage(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        this.live = new HashMap<>();
+        this.recordBuffer = ByteBuffer.allocateDirect(RECORD_SIZE);
+        this.compacting = new AtomicBoolean(false);
+        this.syncing = new AtomicBoolean(false);
+        
+        File dataFolder = plugin.getDataFolder();
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+        }
+        this.journalFile = new File(dataFolder, "mutes.journal").toPath();
+        
+        open();
+    }
+    
+    /**
+     * Open the journal and replay it into the live map. A journal that can't
+     * be read stops startup rather than being skipped, since every later
+     * write would otherwise be silently dropped.
+     */
+    private synchronized void open() {
+        try {
+            channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            live.clear();
+            recordCount = 0;
+            
+            if (channel.size() < HEADER_SIZE) {
+                writeHeader(channel);
+            } else {
+                replay();
+            }
+            
+            channel.position(HEADER_SIZE + recordCount * RECORD_SIZE);
+        } catch (IOException e) {
+            closeQuietly();
+            throw new IllegalStateException("Could not open mutes.journal (" + e.getMessage()
+                    + "); move it aside or fix it to start with journal storage", e);
+        }
+    }
+    
+    /**
+     * Replay every record in the journal, truncating a torn trailing write
+     */
+    private void replay() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("mutes.journal has an unknown format");
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 1024);
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        
+        while (position + RECORD_SIZE <= size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            buffer.flip();
+            
+            while (buffer.remaining() >= RECORD_SIZE) {
+                applyRecord(buffer);
+                recordCount++;
+                position += RECORD_SIZE;
+            }
+        }
+        
+        if (position < size) {
+            plugin.getLogger().warning("Discarding incomplete record at the end of mutes.journal");
+            channel.truncate(position);
+        }
+    }
+    
+    /**
+     * Apply one record from the buffer to the live map
+     */
+    private void applyRecord(ByteBuffer buffer) {
+        int start = buffer.position();
+        byte op = buffer.get(start);
+        boolean paused = buffer.get(start + 1) != 0;
+        int originalDuration = buffer.getInt(start + 4);
+        UUID uuid = new UUID(buffer.getLong(start + 8), buffer.getLong(start + 16));
+        long endTime = buffer.getLong(start + 24);
+        long pausedTimeRemaining = buffer.getLong(start + 32);
+        buffer.position(start + RECORD_SIZE);
+        
+        if (op == OP_PUT) {
+            live.put(uuid, new MuteData(endTime, originalDuration, paused, pausedTimeRemaining));
+        } else if (op == OP_REMOVE) {
+            live.remove(uuid);
+        }
+    }
+    
+    @Override
+    public synchronized Map<UUID, MuteData> loadMutes() {
+        Map<UUID, MuteData> mutes = new HashMap<>();
+        for (Map.Entry<UUID, MuteData> entry : live.entrySet()) {
+            MuteData data = entry.getValue();
+            mutes.put(entry.getKey(), new MuteData(data.endTime, data.originalDuration, data.isPaused, data.pausedTimeRemaining));
+        }
+        return mutes;
+    }
+    
+    @Override
+    public synchronized void saveMute(UUID uuid, MuteData muteData) {
+        live.put(uuid, new MuteData(muteData.endTime, muteData.originalDuration, muteData.isPaused, muteData.pausedTimeRemaining));
+        append(OP_PUT, uuid, muteData);
+    }
+    
+    @Override
+    public synchronized void saveMutes(Map<UUID, MuteData> mutes) {
+        // The journal is always current, so a full save is just a compaction
+        live.clear();
+        for (Map.Entry<UUID, MuteData> entry : mutes.entrySet()) {
+            MuteData data = entry.getValue();
+            live.put(entry.getKey(), new MuteData(data.endTime, data.originalDuration, data.isPaused, data.pausedTimeRemaining));
+        }
+        compact();
+    }
+    
+    @Override
+    public synchronized void removeMute(UUID uuid) {
+        if (live.remove(uuid) != null) {
+            append(OP_REMOVE, uuid, null);
+        }
+    }
+    
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            plugin.getLogger().severe("Error closing mutes.journal: " + e.getMessage());
+        }
+        channel = null;
+    }
+    
+    @Override
+    public String getName() {
+        return "journal";
+    }
+    
+    /**
+     * Append a single record to the end of the journal
+     */
+    private void append(byte op, UUID uuid, MuteData muteData) {
+        if (channel == null) {
+            return;
+        }
+        
+        fillRecord(recordBuffer, op, uuid, muteData);
+        try {
+            while (recordBuffer.hasRemaining()) {
+                channel.write(recordBuffer);
+            }
+            recordCount++;
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not append to mutes.journal: " + e.getMessage());
+            return;
+        }
+        scheduleSync();
+        
+        if (recordCount >= MIN_COMPACT_RECORDS && recordCount >= (long) live.size() * COMPACT_RATIO) {
+            scheduleCompaction();
+        }
+    }
+    
+    /**
+     * Encode one record into the buffer, leaving it ready for writing
+     */
+    private static void fillRecord(ByteBuffer buffer, byte op, UUID uuid, MuteData muteData) {
+        buffer.clear();
+        buffer.put(op);
+        buffer.put((byte) (muteData != null && muteData.isPaused ? 1 : 0));
+        buffer.putShort((short) 0);
+        buffer.putInt(muteData != null ? muteData.originalDuration : 0);
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        buffer.putLong(muteData != null ? muteData.endTime : 0L);
+        buffer.putLong(muteData != null ? muteData.pausedTimeRemaining : 0L);
+        buffer.flip();
+    }
+    
+    /**
+     * Force appended records to disk off the calling thread. Appends made
+     * while a force is running are covered by the next one, so a burst of
+     * mutes costs one disk sync per batch rather than one each.
+     */
+    private void scheduleSync() {
+        // The scheduler refuses tasks once the plugin is disabling, so sync here
+        if (!plugin.isEnabled()) {
+            forceQuietly();
+            return;
+        }
+        if (!syncing.compareAndSet(false, true)) {
+            return;
+        }
+        
+        plugin.getServer().getAsyncScheduler().runNow(plugin, (task) -> {
+            // Clear the flag first so an append during the force schedules another
+            syncing.set(false);
+            FileChannel current;
+            synchronized (this) {
+                current = channel;
+            }
+            if (current == null) {
+                return;
+            }
+            
+            try {
+                current.force(false);
+            } catch (ClosedChannelException e) {
+                // Compaction or shutdown swapped the channel and forced the new file itself
+            } catch (IOException e) {
+                plugin.getLogger().severe("Could not sync mutes.journal: " + e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * Run a compaction off the calling thread
+     */
+    private void scheduleCompaction() {
+        // Left for the next start while disabling; the journal is still complete
+        if (!plugin.isEnabled() || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        
+        plugin.getServer().getAsyncScheduler().runNow(plugin, (task) -> {
+            try {
+                compact();
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+    
+    /**
+     * Rewrite the journal with one record per live mute and swap it in atomically
+     */
+    private synchronized void compact() {
+        if (channel == null) {
+            return;
+        }
+        
+        Path tempFile = journalFile.resolveSibling("mutes.journal.tmp");
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out);
+            out.position(HEADER_SIZE);
+            
+            ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 1024);
+            for (Map.Entry<UUID, MuteData> entry : live.entrySet()) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                
+                ByteBuffer slice = buffer.slice();
+                fillRecord(slice, OP_PUT, entry.getKey(), entry.getValue());
+                buffer.position(buffer.position() + RECORD_SIZE);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not compact mutes.journal: " + e.getMessage());
+            return;
+        }
+        
+        try {
+            channel.close();
+            Files.move(tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not replace mutes.journal: " + e.getMessage());
+        }
+        
+        try {
+            channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // If the swap failed this is still the old journal, so derive the count from its size
+            recordCount = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+            channel.position(HEADER_SIZE + recordCount * RECORD_SIZE);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not reopen mutes.journal: " + e.getMessage());
+            closeQuietly();
+        }
+        
+        if (plugin.getConfigManager().isDebugEnabled()) {
+            plugin.getLogger().info("Compacted mutes.journal to " + recordCount + " records");
+        }
+    }
+    
+    /**
+     * Force the current channel on the calling thread, logging a failure
+     */
+    private synchronized void forceQuietly() {
+        if (channel == null) {
+            return;
+        }
+        
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not sync mutes.journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Drop the channel after an I/O failure so later writes are skipped
+     */
+    private void closeQuietly() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        channel = null;
+    }
+    
+    /**
+     * Write the file header at the start of a journal
+     */
+    private static void writeHeader(FileChannel target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(RECORD_SIZE);
+        header.flip();
+        target.write(header, 0);
+    }
+}
@@ -0,0 +1,412 @@
+package com.chatmanagement.storage;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.managers.MuteManager.MuteData;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Memory-mapped mute store.
+ * mutes.dat is an open-addressing hash table of fixed-width records that is
+ * read and updated in place through a MappedByteBuffer, so there is nothing
+ * to parse on startup. MuteManager looks mutes up here instead of loading
+ * them, so the mutes never have a copy on the heap.
+ *
+ * Header (32 bytes): magic, record size, capacity, live count, tombstones
+ *
+ * Record layout (40 bytes):
+ *   0  uuid most significant bits
+ *   8  uuid least significant bits
+ *   16 end time
+ *   24 paused time remaining
+ *   32 original duration (int)
+ *   36 flags (used, paused, tombstone)
+ */
+public class MappedStorage implements MuteStorage {
+    
+    private static final int MAGIC = 0x434D4D31; // "CMM1"
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 40;
+    private static final int INITIAL_CAPACITY = 1024;
+    
+    private static final int FLAG_USED = 1;
+    private static final int FLAG_PAUSED = 2;
+    private static final int FLAG_TOMBSTONE = 4;
+    
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_SIZE_FIELD = 12;
+    private static final int HEADER_TOMBSTONES = 16;
+    
+    private final ChatManagement2 plugin;
+    private final Path dataFile;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+    private int tombstones;
+    
+    public MappedStorage(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        
+        File dataFolder = plugin.getDataFolder();
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+        }
+        this.dataFile = new File(dataFolder, "mutes.dat").toPath();
+        
+        open();
+    }
+    
+    /**
+     * Map mutes.dat, creating an empty table if it does not exist yet. A file
+     * that can't be mapped stops startup rather than leaving mutes in memory only.
+     */
+    private synchronized void open() {
+        try {
+            boolean exists = Files.exists(dataFile) && Files.size(dataFile) >= HEADER_SIZE;
+            channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            
+            if (!exists) {
+                capacity = INITIAL_CAPACITY;
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity));
+                writeHeader(buffer, capacity, 0, 0);
+                size = 0;
+                tombstones = 0;
+                return;
+            }
+            
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != RECORD_SIZE) {
+                throw new IOException("mutes.dat has an unknown format");
+            }
+            
+            capacity = header.getInt(HEADER_CAPACITY);
+            unmap(header);
+            if (Integer.bitCount(capacity) != 1 || channel.size() < fileSize(capacity)) {
+                throw new IOException("mutes.dat is truncated or corrupt");
+            }
+            
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity));
+            size = buffer.getInt(HEADER_SIZE_FIELD);
+            tombstones = buffer.getInt(HEADER_TOMBSTONES);
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Could not map mutes.dat (" + e.getMessage()
+                    + "); move it aside or fix it to start with mapped storage", e);
+        }
+    }
+    
+    @Override
+    public synchronized boolean isServedInPlace() {
+        return buffer != null;
+    }
+    
+    @Override
+    public synchronized Map<UUID, MuteData> loadMutes() {
+        if (buffer == null) {
+            return null;
+        }
+        
+        Map<UUID, MuteData> mutes = new HashMap<>();
+        
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offset(slot);
+            if ((buffer.getInt(offset + 36) & FLAG_USED) != 0) {
+                mutes.put(readUuid(offset), readMute(offset));
+            }
+        }
+        return mutes;
+    }
+    
+    /**
+     * Look up a single mute directly in the mapped table
+     */
+    @Override
+    public synchronized MuteData getMute(UUID uuid) {
+        if (buffer == null) {
+            return null;
+        }
+        
+        int slot = findSlot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        return slot >= 0 ? readMute(offset(slot)) : null;
+    }
+    
+    @Override
+    public synchronized void forEachMute(BiConsumer<UUID, MuteData> action) {
+        if (buffer == null) {
+            return;
+        }
+        
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offset(slot);
+            if ((buffer.getInt(offset + 36) & FLAG_USED) != 0) {
+                action.accept(readUuid(offset), readMute(offset));
+            }
+        }
+    }
+    
+    @Override
+    public synchronized int getMuteCount() {
+        return buffer != null ? size : 0;
+    }
+    
+    @Override
+    public synchronized void saveMute(UUID uuid, MuteData muteData) {
+        if (buffer == null) {
+            plugin.getLogger().severe("Could not save mute for " + uuid + ": mutes.dat is not mapped");
+            return;
+        }
+        
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int slot = findSlot(msb, lsb);
+        if (slot >= 0) {
+            writeRecord(buffer, offset(slot), msb, lsb, muteData);
+            return;
+        }
+        
+        if ((size + tombstones + 1) * 4L > capacity * 3L) {
+            // Grow only when live records fill the table, otherwise just clear tombstones
+            int newCapacity = (size + 1) * 2L > capacity ? capacity * 2 : capacity;
+            rebuild(newCapacity);
+            if (buffer == null || size + 1 >= capacity) {
+                plugin.getLogger().severe("Could not save mute for " + uuid + ": mutes.dat could not be grown");
+                return;
+            }
+        }
+        
+        if (insert(buffer, capacity, msb, lsb, muteData)) {
+            tombstones--;
+            buffer.putInt(HEADER_TOMBSTONES, tombstones);
+        }
+        size++;
+        buffer.putInt(HEADER_SIZE_FIELD, size);
+    }
+    
+    @Override
+    public synchronized void saveMutes(Map<UUID, MuteData> mutes) {
+        if (buffer == null) {
+            plugin.getLogger().severe("Could not save " + mutes.size() + " mutes: mutes.dat is not mapped");
+            return;
+        }
+        
+        // Reconcile in place: write every record, then drop the ones no longer muted
+        for (Map.Entry<UUID, MuteData> entry : mutes.entrySet()) {
+            saveMute(entry.getKey(), entry.getValue());
+        }
+        for (int slot = 0; buffer != null && slot < capacity; slot++) {
+            int offset = offset(slot);
+            if ((buffer.getInt(offset + 36) & FLAG_USED) != 0 && !mutes.containsKey(readUuid(offset))) {
+                tombstone(slot);
+            }
+        }
+    }
+    
+    @Override
+    public synchronized void removeMute(UUID uuid) {
+        if (buffer == null) {
+            plugin.getLogger().severe("Could not remove mute for " + uuid + ": mutes.dat is not mapped");
+            return;
+        }
+        
+        int slot = findSlot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        if (slot >= 0) {
+            tombstone(slot);
+        }
+    }
+    
+    private void tombstone(int slot) {
+        buffer.putInt(offset(slot) + 36, FLAG_TOMBSTONE);
+        size--;
+        tombstones++;
+        buffer.putInt(HEADER_SIZE_FIELD, size);
+        buffer.putInt(HEADER_TOMBSTONES, tombstones);
+    }
+    
+    @Override
+    public synchronized void close() {
+        if (buffer != null) {
+            buffer.force();
+            unmap(buffer);
+            buffer = null;
+        }
+        
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("Error closing mutes.dat: " + e.getMessage());
+        }
+        channel = null;
+    }
+    
+    @Override
+    public String getName() {
+        return "mapped";
+    }
+    
+    /**
+     * Find the slot holding a uuid, or -1 if it is not stored
+     */
+    private int findSlot(long msb, long lsb) {
+        int mask = capacity - 1;
+        int slot = hash(msb, lsb) & mask;
+        
+        for (int probes = 0; probes < capacity; probes++) {
+            int offset = offset(slot);
+            int flags = buffer.getInt(offset + 36);
+            if (flags == 0) {
+                return -1;
+            }
+            if ((flags & FLAG_USED) != 0 && buffer.getLong(offset) == msb && buffer.getLong(offset + 8) == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    /**
+     * Insert a record into the first free or tombstoned slot of its probe
+     * sequence, returning whether it took a tombstone's place
+     */
+    private static boolean insert(MappedByteBuffer target, int targetCapacity, long msb, long lsb, MuteData muteData) {
+        int mask = targetCapacity - 1;
+        int slot = hash(msb, lsb) & mask;
+        
+        while ((target.getInt(offset(slot) + 36) & FLAG_USED) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        boolean reused = (target.getInt(offset(slot) + 36) & FLAG_TOMBSTONE) != 0;
+        writeRecord(target, offset(slot), msb, lsb, muteData);
+        return reused;
+    }
+    
+    /**
+     * Copy the live records into a fresh file with the given capacity and swap it in
+     */
+    private void rebuild(int newCapacity) {
+        Path tempFile = dataFile.resolveSibling("mutes.dat.tmp");
+        int newSize = 0;
+        
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(newCapacity));
+            
+            for (int slot = 0; slot < capacity; slot++) {
+                int offset = offset(slot);
+                if ((buffer.getInt(offset + 36) & FLAG_USED) != 0) {
+                    insert(target, newCapacity, buffer.getLong(offset), buffer.getLong(offset + 8), readMute(offset));
+                    newSize++;
+                }
+            }
+            
+            writeHeader(target, newCapacity, newSize, 0);
+            target.force();
+            unmap(target);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not rebuild mutes.dat: " + e.getMessage());
+            return;
+        }
+        
+        // Both files must be unmapped before one replaces the other, or Windows refuses
+        // the move and other systems keep serving the old file through the stale mapping
+        close();
+        try {
+            Files.move(tempFile, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not replace mutes.dat: " + e.getMessage());
+        }
+        try {
+            open();
+        } catch (IllegalStateException e) {
+            // Already running, so report it here; later writes log that they were dropped
+            plugin.getLogger().severe(e.getMessage());
+            return;
+        }
+        
+        if (plugin.getConfigManager().isDebugEnabled()) {
+            plugin.getLogger().info("Rebuilt mutes.dat with capacity " + capacity + " (" + size + " mutes)");
+        }
+    }
+    
+    /**
+     * Release a mapping now rather than whenever the buffer is garbage
+     * collected. There is no public API for this before the foreign memory
+     * API, so it goes through Unsafe.invokeCleaner; if that is unavailable
+     * the mapping is left for the collector.
+     */
+    private void unmap(MappedByteBuffer mapped) {
+        try {
+            Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe, mapped);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            if (plugin.getConfigManager().isDebugEnabled()) {
+                plugin.getLogger().info("Could not unmap mutes.dat, leaving it to the garbage collector: " + e);
+            }
+        }
+    }
+    
+    private MuteData readMute(int offset) {
+        int flags = buffer.getInt(offset + 36);
+        return new MuteData(buffer.getLong(offset + 16), buffer.getInt(offset + 32),
+                (flags & FLAG_PAUSED) != 0, buffer.getLong(offset + 24));
+    }
+    
+    private UUID readUuid(int offset) {
+        return new UUID(buffer.getLong(offset), buffer.getLong(offset + 8));
+    }
+    
+    private static void writeRecord(MappedByteBuffer target, int offset, long msb, long lsb, MuteData muteData) {
+        target.putLong(offset, msb);
+        target.putLong(offset + 8, lsb);
+        target.putLong(offset + 16, muteData.endTime);
+        target.putLong(offset + 24, muteData.pausedTimeRemaining);
+        target.putInt(offset + 32, muteData.originalDuration);
+        // Flags last so a half-written record is never seen as used
+        target.putInt(offset + 36, FLAG_USED | (muteData.isPaused ? FLAG_PAUSED : 0));
+    }
+    
+    private static void writeHeader(MappedByteBuffer target, int capacity, int size, int tombstones) {
+        target.putInt(0, MAGIC);
+        target.putInt(4, RECORD_SIZE);
+        target.putInt(HEADER_CAPACITY, capacity);
+        target.putInt(HEADER_SIZE_FIELD, size);
+        target.putInt(HEADER_TOMBSTONES, tombstones);
+    }
+    
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+    
+    private static long fileSize(int capacity) {
+        return HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    }
+    
+    /**
+     * Mix both uuid halves so sequential or version-4 uuids spread evenly
+     */
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,97 @@
+package com.chatmanagement.storage;
+
+import com.chatmanagement.managers.MuteManager.MuteData;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Persistence backend for mutes.
+ * MuteManager keeps the live state in memory and mirrors every change here.
+ */
+public interface MuteStorage {
+    
+    /**
+     * Load all stored mutes, or null if the storage can't be read right now
+     * and the mutes already in memory should be kept
+     */
+    Map<UUID, MuteData> loadMutes();
+    
+    /**
+     * Save or update a single mute
+     */
+    void saveMute(UUID uuid, MuteData muteData);
+    
+    /**
+     * Save all mutes (used on shutdown)
+     */
+    void saveMutes(Map<UUID, MuteData> mutes);
+    
+    /**
+     * Remove a mute
+     */
+    void removeMute(UUID uuid);
+    
+    /**
+     * Whether this storage answers lookups itself without parsing, so
+     * MuteManager reads mutes through getMute and forEachMute instead of
+     * copying them all onto the heap
+     */
+    default boolean isServedInPlace() {
+        return false;
+    }
+    
+    /**
+     * Whether every change is written as it happens, so a full save from
+     * memory is never needed and, on shared storage, would bring back
+     * mutes other servers have removed
+     */
+    default boolean isWriteThrough() {
+        return false;
+    }
+    
+    /**
+     * A copy of one stored mute, or null; only needed when served in place
+     */
+    default MuteData getMute(UUID uuid) {
+        return null;
+    }
+    
+    /**
+     * Visit a copy of every stored mute; only needed when served in place
+     */
+    default void forEachMute(BiConsumer<UUID, MuteData> action) {
+    }
+    
+    /**
+     * Number of stored mutes; only needed when served in place
+     */
+    default int getMuteCount() {
+        return 0;
+    }
+    
+    /**
+     * Apply changes made by other servers sharing this storage since the last poll.
+     * The callback receives null data for an unmute. Returns the number of changes applied.
+     */
+    default int pollChanges(BiConsumer<UUID, MuteData> apply) {
+        return 0;
+    }
+    
+    /**
+     * Re-read any cached state from disk before a reload
+     */
+    default void reload() {
+    }
+    
+    /**
+     * Flush and release resources
+     */
+    void close();
+    
+    /**
+     * Short name used in log messages
+     */
+    String getName();
+}
@@ -0,0 +1,190 @@
+package com.chatmanagement.storage;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.jfr.StorageEvent;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single writer thread for SQLite.
+ * Writes from any thread are queued and applied in order by one thread that
+ * owns the write connection. Everything queued within the group-commit window
+ * shares one transaction, so a burst of mutes costs one fsync instead of one each.
+ * A write that fails is rolled back to its savepoint and the others still commit.
+ */
+public class SQLiteWriter {
+    
+    // Upper bound on writes folded into a single transaction
+    private static final int MAX_BATCH = 512;
+    
+    private final ChatManagement2 plugin;
+    private final Connection connection;
+    private final BlockingQueue<PendingWrite> queue;
+    private final long groupCommitNanos;
+    private final Thread thread;
+    private volatile boolean running;
+    
+    public SQLiteWriter(ChatManagement2 plugin, Connection connection, int groupCommitMillis) {
+        this.plugin = plugin;
+        this.connection = connection;
+        this.queue = new LinkedBlockingQueue<>();
+        this.groupCommitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, groupCommitMillis));
+        this.running = true;
+        this.thread = new Thread(this::run, "ChatManagement2-SQLite-Writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+    
+    /**
+     * Queue a write; action describes it in error messages
+     */
+    public void submit(String action, DatabaseManager.SQLWrite write) {
+        queue.add(new PendingWrite(action, write, null));
+    }
+    
+    /**
+     * Block until every write queued before this call has been committed
+     */
+    public void flush() {
+        if (Thread.currentThread() == thread || !thread.isAlive()) {
+            return;
+        }
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.add(new PendingWrite(null, null, latch));
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Number of writes waiting to be committed
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+    
+    /**
+     * Commit everything still queued and stop the writer thread
+     */
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        if (thread.isAlive()) {
+            plugin.getLogger().warning("SQLite writer did not finish, " + queue.size() + " writes were not saved");
+        }
+    }
+    
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>();
+        
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = running ? queue.take() : queue.poll();
+                if (first == null) {
+                    break;
+                }
+                batch.add(first);
+                
+                // Gather whatever else arrives within the group-commit window
+                long deadline = System.nanoTime() + groupCommitNanos;
+                while (batch.size() < MAX_BATCH) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0 && running ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Interrupted by shutdown, drain what is left without waiting
+                queue.drainTo(batch, MAX_BATCH - batch.size());
+            }
+            
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+    
+    /**
+     * Apply a batch of writes in one transaction
+     */
+    private void commit(List<PendingWrite> batch) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        try {
+            connection.setAutoCommit(false);
+            
+            for (PendingWrite pending : batch) {
+                if (pending.write == null) {
+                    continue;
+                }
+                
+                // Each write gets a savepoint so one that fails partway leaves nothing
+                // behind, while the rest of the batch still commits
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    pending.write.apply(connection);
+                    connection.releaseSavepoint(savepoint);
+                } catch (SQLException e) {
+                    plugin.getLogger().severe("Error " + pending.action + ": " + e.getMessage());
+                    connection.rollback(savepoint);
+                    connection.releaseSavepoint(savepoint);
+                }
+            }
+            
+            connection.commit();
+        } catch (SQLException e) {
+            plugin.getLogger().severe("Error committing SQLite batch of " + batch.size() + " writes: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+            }
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignored) {
+            }
+            
+            for (PendingWrite pending : batch) {
+                if (pending.latch != null) {
+                    pending.latch.countDown();
+                }
+            }
+        }
+        event.finish("sqlite", "commit", null, batch.size());
+    }
+    
+    /**
+     * A queued write, or a flush marker when latch is set
+     */
+    private static class PendingWrite {
+        final String action;
+        final DatabaseManager.SQLWrite write;
+        final CountDownLatch latch;
+        
+        PendingWrite(String action, DatabaseManager.SQLWrite write, CountDownLatch latch) {
+            this.action = action;
+            this.write = write;
+            this.latch = latch;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.chatmanagement.storage;
+
+import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.jfr.StorageEvent;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Ignore lists in ignores.yml, used whenever mutes are not kept in a database
+ */
+public class YAMLIgnoreStorage implements IgnoreStorage {
+    
+    private final ChatManagement2 plugin;
+    private final File ignoresFile;
+    private final FileConfiguration ignoresConfig;
+    
+    public YAMLIgnoreStorage(ChatManagement2 plugin) {
+        this.plugin = plugin;
+        
+        File dataFolder = plugin.getDataFolder();
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+        }
+        
+        this.ignoresFile = new File(dataFolder, "ignores.yml");
+        this.ignoresConfig = YamlConfiguration.loadConfiguration(ignoresFile);
+    }
+    
+    @Override
+    public synchronized Map<UUID, List<UUID>> loadIgnores() {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        Map<UUID, List<UUID>> ignores = new HashMap<>();
+        
+        for (String key : ignoresConfig.getKeys(false)) {
+            try {
+                List<UUID> targets = new ArrayList<>();
+                for (String target : ignoresConfig.getStringList(key)) {
+                    targets.add(UUID.fromString(target));
+                }
+                ignores.put(UUID.fromString(key), targets);
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Invalid UUID in ignores.yml under: " + key);
+            }
+        }
+        
+        event.finish("yaml", "loadIgnores", null, ignores.size());
+        return ignores;
+    }
+    
+    @Override
+    public synchronized void addIgnore(UUID player, UUID target) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        List<String> targets = new ArrayList<>(ignoresConfig.getStringList(player.toString()));
+        if (!targets.contains(target.toString())) {
+            targets.add(target.toString());
+            ignoresConfig.set(player.toString(), targets);
+            save();
+        }
+        event.finish("yaml", "addIgnore", player, 1);
+    }
+    
+    @Override
+    public synchronized void removeIgnore(UUID player, UUID target) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
+        List<String> targets = new ArrayList<>(ignoresConfig.getStringList(player.toString()));
+        if (targets.remove(target.toString())) {
+            ignoresConfig.set(player.toString(), targets.isEmpty() ? null : targets);
+            save();
+        }
+        event.finish("yaml", "removeIgnore", player, 1);
+    }
+    
+    private void save() {
+        try {
+            ignoresConfig.save(ignoresFile);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not save ignores.yml: " + e.getMessage());
+        }
+    }
+}
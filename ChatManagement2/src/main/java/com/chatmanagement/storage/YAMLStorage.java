@@ -1,6 +1,7 @@
 package com.chatmanagement.storage;
 
 import com.chatmanagement.ChatManagement2;
+import com.chatmanagement.jfr.StorageEvent;
 import com.chatmanagement.managers.MuteManager.MuteData;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
@@ -11,7 +12,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
-public class YAMLStorage {
+public class YAMLStorage implements MuteStorage {
     
     private final ChatManagement2 plugin;
     private File mutesFile;
@@ -46,7 +47,10 @@ public class YAMLStorage {
     /**
      * Save a single mute
      */
+    @Override
     public void saveMute(UUID uuid, MuteData muteData) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
         String path = uuid.toString();
         mutesConfig.set(path + ".end_time", muteData.endTime);
         mutesConfig.set(path + ".original_duration", muteData.originalDuration);
@@ -54,12 +58,16 @@ public class YAMLStorage {
         mutesConfig.set(path + ".paused_time_remaining", muteData.pausedTimeRemaining);
         
         saveMutesFile();
+        event.finish(getName(), "saveMute", uuid, 1);
     }
     
     /**
      * Save all mutes
      */
+    @Override
     public void saveMutes(Map<UUID, MuteData> mutes) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
         // Clear existing data
         for (String key : mutesConfig.getKeys(false)) {
             mutesConfig.set(key, null);
@@ -77,20 +85,28 @@ public class YAMLStorage {
         }
         
         saveMutesFile();
+        event.finish(getName(), "saveMutes", null, mutes.size());
     }
     
     /**
      * Remove a mute
      */
+    @Override
     public void removeMute(UUID uuid) {
+        StorageEvent event = new StorageEvent();
+        event.begin();
         mutesConfig.set(uuid.toString(), null);
         saveMutesFile();
+        event.finish(getName(), "removeMute", uuid, 1);
     }
     
     /**
      * Load all mutes
      */
+    @Override
     public Map<UUID, MuteData> loadMutes() {
+        StorageEvent event = new StorageEvent();
+        event.begin();
         Map<UUID, MuteData> mutes = new HashMap<>();
         
         for (String key : mutesConfig.getKeys(false)) {
@@ -108,6 +124,7 @@ public class YAMLStorage {
             }
         }
         
+        event.finish(getName(), "loadMutes", null, mutes.size());
         return mutes;
     }
     
@@ -125,7 +142,18 @@ public class YAMLStorage {
     /**
      * Reload mutes from disk
      */
+    @Override
     public void reload() {
         mutesConfig = YamlConfiguration.loadConfiguration(mutesFile);
     }
+    
+    @Override
+    public void close() {
+        // Every change is already written through to mutes.yml
+    }
+    
+    @Override
+    public String getName() {
+        return "yaml";
+    }
 }